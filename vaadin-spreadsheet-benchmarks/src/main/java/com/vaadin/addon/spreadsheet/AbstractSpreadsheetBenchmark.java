@@ -0,0 +1,67 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base class for the Spreadsheet benchmarks. The size of the generated
+ * workbook can be changed from the command line, e.g.
+ * <code>-p rows=100000 -p columns=50</code>.
+ * <p>
+ * The benchmarks are in the same package as the component, so that the
+ * protected and package private hot paths can be measured directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public abstract class AbstractSpreadsheetBenchmark {
+
+    /** Number of filled rows in the generated sheet */
+    @Param("1000")
+    protected int rows;
+
+    /** Number of filled columns in the generated sheet */
+    @Param("20")
+    protected int columns;
+
+    protected Spreadsheet spreadsheet;
+
+    /**
+     * Creates a Spreadsheet showing a new generated workbook.
+     *
+     * @return the new Spreadsheet
+     */
+    protected Spreadsheet createSpreadsheet() {
+        return new Spreadsheet(BenchmarkWorkbooks.createWorkbook(rows,
+                columns));
+    }
+}
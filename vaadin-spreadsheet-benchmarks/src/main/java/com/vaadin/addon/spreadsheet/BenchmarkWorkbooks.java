@@ -0,0 +1,138 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.apache.poi.ss.usermodel.ComparisonOperator;
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.PatternFormatting;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Generates the workbooks used by the benchmarks.
+ */
+final class BenchmarkWorkbooks {
+
+    /** Every n:th column contains formulas referring to the cells on the left */
+    private static final int FORMULA_COLUMN_INTERVAL = 4;
+
+    private BenchmarkWorkbooks() {
+    }
+
+    /**
+     * Creates a workbook with one sheet filled with numbers, where every
+     * fourth column contains formulas summing up the previous columns of the
+     * row.
+     *
+     * @param rows
+     *            Number of rows to fill
+     * @param columns
+     *            Number of columns to fill
+     * @return the new workbook
+     */
+    static Workbook createWorkbook(int rows, int columns) {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < columns; c++) {
+                if (c % FORMULA_COLUMN_INTERVAL == FORMULA_COLUMN_INTERVAL - 1) {
+                    String first = new CellReference(r, c
+                            - (FORMULA_COLUMN_INTERVAL - 1)).formatAsString();
+                    String last = new CellReference(r, c - 1).formatAsString();
+                    row.createCell(c).setCellFormula(
+                            "SUM(" + first + ":" + last + ")");
+                } else {
+                    row.createCell(c).setCellValue(r * columns + c);
+                }
+            }
+        }
+        return workbook;
+    }
+
+    /**
+     * Creates a workbook like {@link #createWorkbook(int, int)}, with a cell
+     * value rule and a formula rule covering all of the filled cells.
+     *
+     * @param rows
+     *            Number of rows to fill
+     * @param columns
+     *            Number of columns to fill
+     * @return the new workbook
+     */
+    static Workbook createConditionallyFormattedWorkbook(int rows,
+            int columns) {
+        Workbook workbook = createWorkbook(rows, columns);
+        SheetConditionalFormatting formatting = workbook.getSheetAt(0)
+                .getSheetConditionalFormatting();
+        CellRangeAddress[] ranges = { new CellRangeAddress(0, rows - 1, 0,
+                columns - 1) };
+
+        ConditionalFormattingRule valueRule = formatting
+                .createConditionalFormattingRule(ComparisonOperator.GT,
+                        String.valueOf(rows * columns / 2));
+        setFill(valueRule, IndexedColors.LIGHT_GREEN);
+        formatting.addConditionalFormatting(ranges, valueRule);
+
+        ConditionalFormattingRule formulaRule = formatting
+                .createConditionalFormattingRule("MOD(ROW(A1)+COLUMN(A1),2)=0");
+        setFill(formulaRule, IndexedColors.LIGHT_YELLOW);
+        formatting.addConditionalFormatting(ranges, formulaRule);
+        return workbook;
+    }
+
+    /**
+     * Creates tab separated text like the client sends when pasting cells.
+     *
+     * @param rows
+     *            Number of lines
+     * @param columns
+     *            Number of values on each line
+     * @return the clipboard text
+     */
+    static String createPasteText(int rows, int columns) {
+        StringBuilder text = new StringBuilder();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    text.append('\t');
+                }
+                if (c % 2 == 0) {
+                    text.append(r * columns + c);
+                } else {
+                    text.append("text ").append(r);
+                }
+            }
+            text.append("\r\n");
+        }
+        return text.toString();
+    }
+
+    private static void setFill(ConditionalFormattingRule rule,
+            IndexedColors color) {
+        PatternFormatting fill = rule.createPatternFormatting();
+        fill.setFillBackgroundColor(color.getIndex());
+        fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+    }
+}
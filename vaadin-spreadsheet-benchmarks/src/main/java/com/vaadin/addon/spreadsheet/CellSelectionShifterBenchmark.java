@@ -0,0 +1,52 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures filling down the first row of the sheet over all rows with
+ * {@link CellSelectionShifter#onSelectionIncreasePainted(int, int, int, int)},
+ * like when the user drags the fill handle. A new workbook is generated
+ * before each fill.
+ */
+public class CellSelectionShifterBenchmark extends
+        AbstractSpreadsheetBenchmark {
+
+    private CellSelectionShifter cellShifter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spreadsheet = createSpreadsheet();
+        cellShifter = spreadsheet.getCellShifter();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetWorkbook() {
+        spreadsheet.setWorkbook(BenchmarkWorkbooks.createWorkbook(rows,
+                columns));
+        spreadsheet.setSelectionRange(0, 0, 0, columns - 1);
+    }
+
+    @Benchmark
+    public void fillDown() {
+        cellShifter.onSelectionIncreasePainted(1, 1, rows, columns);
+    }
+}
@@ -0,0 +1,59 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.vaadin.addon.spreadsheet.client.CellData;
+
+/**
+ * Measures loading the cell data of a viewport with
+ * {@link CellValueManager#loadCellDataForRowAndColumnRange(int, int, int, int)}
+ * . The client side cache is cleared before each call, so every cell of the
+ * viewport is sent again.
+ */
+public class CellValueManagerBenchmark extends AbstractSpreadsheetBenchmark {
+
+    /** Number of rows in the loaded viewport */
+    @Param("100")
+    private int viewportRows;
+
+    private CellValueManager valueManager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spreadsheet = createSpreadsheet();
+        valueManager = spreadsheet.getCellValueManager();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearClientCache() {
+        valueManager.clearCachedContent();
+    }
+
+    @Benchmark
+    public ArrayList<CellData> loadCellDataForRowAndColumnRange() {
+        return valueManager.loadCellDataForRowAndColumnRange(1, 1,
+                Math.min(viewportRows, rows), columns);
+    }
+}
@@ -0,0 +1,47 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures evaluating all conditional formatting rules of a sheet with
+ * {@link ConditionalFormatter#createConditionalFormatterRules()}. The sheet
+ * has a cell value rule and a formula rule covering every filled cell.
+ */
+public class ConditionalFormatterBenchmark extends
+        AbstractSpreadsheetBenchmark {
+
+    private ConditionalFormatter conditionalFormatter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spreadsheet = new Spreadsheet(
+                BenchmarkWorkbooks.createConditionallyFormattedWorkbook(rows,
+                        columns));
+        conditionalFormatter = spreadsheet.getConditionalFormatter();
+    }
+
+    @Benchmark
+    public ConditionalFormatter createConditionalFormatterRules() {
+        conditionalFormatter.createConditionalFormatterRules();
+        return conditionalFormatter;
+    }
+}
@@ -0,0 +1,53 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures pasting tab separated text over the whole generated sheet with
+ * {@link SpreadsheetHandlerImpl#onPaste(String)}. A new workbook is generated
+ * before each paste.
+ */
+public class PasteBenchmark extends AbstractSpreadsheetBenchmark {
+
+    private SpreadsheetHandlerImpl handler;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spreadsheet = createSpreadsheet();
+        handler = new SpreadsheetHandlerImpl(spreadsheet);
+        text = BenchmarkWorkbooks.createPasteText(rows, columns);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetWorkbook() {
+        spreadsheet.setWorkbook(BenchmarkWorkbooks.createWorkbook(rows,
+                columns));
+        spreadsheet.setSelection(0, 0);
+    }
+
+    @Benchmark
+    public void onPaste() {
+        handler.onPaste(text);
+    }
+}
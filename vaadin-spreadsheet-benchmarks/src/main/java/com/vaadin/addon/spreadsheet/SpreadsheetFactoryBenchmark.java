@@ -0,0 +1,44 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures loading a workbook into the component with
+ * {@link SpreadsheetFactory#loadSpreadsheetWith(Spreadsheet, Workbook, int, int)}.
+ */
+public class SpreadsheetFactoryBenchmark extends AbstractSpreadsheetBenchmark {
+
+    private Workbook workbook;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        workbook = BenchmarkWorkbooks.createWorkbook(rows, columns);
+        spreadsheet = new Spreadsheet();
+    }
+
+    @Benchmark
+    public Spreadsheet loadSpreadsheetWith() {
+        SpreadsheetFactory.loadSpreadsheetWith(spreadsheet, workbook, 0, 0);
+        return spreadsheet;
+    }
+}
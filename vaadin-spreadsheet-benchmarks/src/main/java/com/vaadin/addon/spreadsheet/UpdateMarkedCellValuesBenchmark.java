@@ -0,0 +1,66 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures {@link CellValueManager#updateMarkedCellValues()} after a single
+ * cell has been edited, either with the known formula dependencies or with a
+ * full pass over the sheet.
+ */
+public class UpdateMarkedCellValuesBenchmark extends
+        AbstractSpreadsheetBenchmark {
+
+    /** true to drop the formula dependencies before each update */
+    @Param({ "false", "true" })
+    private boolean fullUpdate;
+
+    private CellValueManager valueManager;
+
+    private Cell editedCell;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spreadsheet = createSpreadsheet();
+        valueManager = spreadsheet.getCellValueManager();
+        valueManager.loadCellData(1, 1, rows, columns);
+        editedCell = spreadsheet.getCell(0, 0);
+        // builds the formula dependencies
+        valueManager.updateMarkedCellValues();
+    }
+
+    @Setup(Level.Invocation)
+    public void editCell() {
+        editedCell.setCellValue(editedCell.getNumericCellValue() + 1);
+        valueManager.getFormulaEvaluator().notifyUpdateCell(editedCell);
+        valueManager.markCellForUpdate(editedCell);
+        if (fullUpdate) {
+            valueManager.invalidateFormulaDependencies();
+        }
+    }
+
+    @Benchmark
+    public void updateMarkedCellValues() {
+        valueManager.updateMarkedCellValues();
+    }
+}
@@ -0,0 +1,178 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A set of cells of a single sheet, stored as one column bitset per row. Used
+ * for tracking which cells have already been sent to the client, where the
+ * cells are probed a viewport at a time.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class CellBitmap implements Serializable {
+
+    private static final int DEFAULT_ROWS = 64;
+
+    /** Row index, 0-based -> column bits, 0-based; null for empty rows */
+    private BitSet[] rows = new BitSet[DEFAULT_ROWS];
+
+    /** 0-based index of the last row that may have bits set */
+    private int lastRow = -1;
+
+    /**
+     * Adds the given cell to this set.
+     *
+     * @param col
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     */
+    void add(int col, int row) {
+        final int r = row - 1;
+        if (r >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, r + 1));
+        }
+        BitSet columns = rows[r];
+        if (columns == null) {
+            columns = new BitSet();
+            rows[r] = columns;
+        }
+        columns.set(col - 1);
+        if (r > lastRow) {
+            lastRow = r;
+        }
+    }
+
+    /**
+     * Checks whether the given cell is in this set.
+     *
+     * @param col
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     * @return true if the cell is in the set
+     */
+    boolean contains(int col, int row) {
+        final BitSet columns = getRow(row);
+        return columns != null && columns.get(col - 1);
+    }
+
+    /**
+     * Removes the given cell from this set.
+     *
+     * @param col
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     * @return true if the cell was in the set
+     */
+    boolean remove(int col, int row) {
+        final BitSet columns = getRow(row);
+        if (columns == null || !columns.get(col - 1)) {
+            return false;
+        }
+        columns.clear(col - 1);
+        return true;
+    }
+
+    /**
+     * Returns the columns of the given row that are in this set. The returned
+     * bitset must not be modified.
+     *
+     * @param row
+     *            Row index, 1-based
+     * @return bitset of 0-based column indexes, or <code>null</code> if the
+     *         row has no cells in this set
+     */
+    BitSet getRow(int row) {
+        final int r = row - 1;
+        if (r < 0 || r > lastRow) {
+            return null;
+        }
+        return rows[r];
+    }
+
+    /**
+     * Removes the given row from this set.
+     *
+     * @param row
+     *            Row index, 1-based
+     * @return bitset of the 0-based column indexes that were removed, or
+     *         <code>null</code> if the row had no cells in this set
+     */
+    BitSet removeRow(int row) {
+        final BitSet columns = getRow(row);
+        if (columns != null) {
+            rows[row - 1] = null;
+        }
+        return columns == null || columns.isEmpty() ? null : columns;
+    }
+
+    /**
+     * Removes all cells within the given bounds from this set.
+     *
+     * @param firstCol
+     *            Starting column index, 1-based
+     * @param firstRow
+     *            Starting row index, 1-based
+     * @param lastCol
+     *            Ending column index, 1-based
+     * @param lastRow
+     *            Ending row index, 1-based
+     */
+    void removeRange(int firstCol, int firstRow, int lastCol, int lastRow) {
+        for (int r = Math.max(firstRow - 1, 0); r <= Math.min(lastRow - 1,
+                this.lastRow); r++) {
+            if (rows[r] != null) {
+                rows[r].clear(firstCol - 1, lastCol);
+            }
+        }
+    }
+
+    /**
+     * Removes all cells of the given column from this set.
+     *
+     * @param col
+     *            Column index, 1-based
+     */
+    void removeColumn(int col) {
+        for (int r = 0; r <= lastRow; r++) {
+            if (rows[r] != null) {
+                rows[r].clear(col - 1);
+            }
+        }
+    }
+
+    /**
+     * Removes all cells from this set.
+     */
+    void clear() {
+        if (rows.length > DEFAULT_ROWS * 4) {
+            // don't keep the row table of a huge sheet around
+            rows = new BitSet[DEFAULT_ROWS];
+        } else {
+            Arrays.fill(rows, null);
+        }
+        lastRow = -1;
+    }
+}
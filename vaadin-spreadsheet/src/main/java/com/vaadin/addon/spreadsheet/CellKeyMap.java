@@ -0,0 +1,277 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from packed cell keys created with
+ * {@link SpreadsheetUtil#toLongKey(int, int)} to values. Keys are stored in an
+ * open-addressing table of primitive longs, so no key objects are created
+ * when putting or probing values.
+ *
+ * @param <V>
+ *            Type of the values
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+public class CellKeyMap<V> implements Serializable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The key used for marking empty slots in the table */
+    private static final long FREE = 0;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+    private Object freeValue;
+
+    /**
+     * Creates a new empty map.
+     */
+    public CellKeyMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     *
+     * @param key
+     *            Packed cell key
+     * @return the value, or <code>null</code> if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE) {
+            return (V) freeValue;
+        }
+        int pos = hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                return (V) values[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the given key is mapped in this map.
+     *
+     * @param key
+     *            Packed cell key
+     * @return true if the key is mapped
+     */
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        int pos = hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the given key to the given value.
+     *
+     * @param key
+     *            Packed cell key
+     * @param value
+     *            Value to map
+     * @return the previous value, or <code>null</code> if the key was not
+     *         mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == FREE) {
+            V old = (V) freeValue;
+            containsFree = true;
+            freeValue = value;
+            return old;
+        }
+        int pos = hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                V old = (V) values[pos];
+                values[pos] = value;
+                return old;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > keys.length / 2) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping of the given key.
+     *
+     * @param key
+     *            Packed cell key
+     * @return the removed value, or <code>null</code> if the key was not
+     *         mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE) {
+            V old = (V) freeValue;
+            containsFree = false;
+            freeValue = null;
+            return old;
+        }
+        int pos = hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                V old = (V) values[pos];
+                size--;
+                shiftKeys(pos);
+                return old;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     *
+     * @return number of mappings
+     */
+    public int size() {
+        return containsFree ? size + 1 : size;
+    }
+
+    /**
+     * Returns whether this map is empty.
+     *
+     * @return true if there are no mappings
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+        if (size > 0) {
+            if (keys.length > DEFAULT_CAPACITY * 4) {
+                allocate(DEFAULT_CAPACITY);
+            } else {
+                Arrays.fill(keys, FREE);
+                Arrays.fill(values, null);
+            }
+        }
+        size = 0;
+        containsFree = false;
+        freeValue = null;
+    }
+
+    /**
+     * Returns the mapped keys in no particular order. The returned array is a
+     * copy, so the map can be modified while iterating it.
+     *
+     * @return array of packed cell keys
+     */
+    public long[] keys() {
+        long[] result = new long[size()];
+        int i = 0;
+        if (containsFree) {
+            result[i++] = FREE;
+        }
+        for (long key : keys) {
+            if (key != FREE) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    private void shiftKeys(int pos) {
+        // backward shift deletion, see CellKeySet
+        int last;
+        long current;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((current = keys[pos]) == FREE) {
+                    keys[last] = FREE;
+                    values[last] = null;
+                    return;
+                }
+                int slot = hash(current) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot
+                        && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int pos = hash(oldKeys[i]) & mask;
+                while (keys[pos] != FREE) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Spreads the bits of a packed key, since rows and columns are stored in
+     * the high and low halves of the key.
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+}
@@ -0,0 +1,296 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * A set of packed cell keys created with
+ * {@link SpreadsheetUtil#toLongKey(int, int)}. Keys are stored in an
+ * open-addressing table of primitive longs, so no objects are created when
+ * adding or probing keys.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+public class CellKeySet implements Serializable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The key used for marking empty slots in the table */
+    private static final long FREE = 0;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+
+    /**
+     * Creates a new empty set.
+     */
+    public CellKeySet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty set that can hold the given amount of keys without
+     * resizing.
+     *
+     * @param expectedSize
+     *            Expected number of keys
+     */
+    public CellKeySet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Creates a new set containing the keys of the given set.
+     *
+     * @param other
+     *            Set to copy
+     */
+    public CellKeySet(CellKeySet other) {
+        keys = other.keys.clone();
+        mask = other.mask;
+        size = other.size;
+        containsFree = other.containsFree;
+    }
+
+    /**
+     * Adds the given key to this set.
+     *
+     * @param key
+     *            Packed cell key
+     * @return true if the key was not in the set already
+     */
+    public boolean add(long key) {
+        if (key == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            return true;
+        }
+        int pos = CellKeyMap.hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        if (++size > maxFill()) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all keys of the given set to this set.
+     *
+     * @param other
+     *            Set of keys to add
+     */
+    public void addAll(CellKeySet other) {
+        if (other.containsFree) {
+            add(FREE);
+        }
+        for (long key : other.keys) {
+            if (key != FREE) {
+                add(key);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given key is in this set.
+     *
+     * @param key
+     *            Packed cell key
+     * @return true if the key is in the set
+     */
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        int pos = CellKeyMap.hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the given key from this set.
+     *
+     * @param key
+     *            Packed cell key
+     * @return true if the key was in the set
+     */
+    public boolean remove(long key) {
+        if (key == FREE) {
+            boolean removed = containsFree;
+            containsFree = false;
+            return removed;
+        }
+        int pos = CellKeyMap.hash(key) & mask;
+        long current;
+        while ((current = keys[pos]) != FREE) {
+            if (current == key) {
+                size--;
+                shiftKeys(pos);
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all keys matching the given filter from this set.
+     *
+     * @param filter
+     *            Filter returning true for the keys to remove
+     * @return true if any key was removed
+     */
+    public boolean removeIf(LongPredicate filter) {
+        boolean removed = false;
+        for (long key : toArray()) {
+            if (filter.test(key)) {
+                remove(key);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of keys in this set.
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return containsFree ? size + 1 : size;
+    }
+
+    /**
+     * Returns whether this set is empty.
+     *
+     * @return true if the set contains no keys
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all keys from this set.
+     */
+    public void clear() {
+        if (size > 0) {
+            if (keys.length > DEFAULT_CAPACITY * 4) {
+                // don't keep a huge table around after a big update
+                allocate(DEFAULT_CAPACITY);
+            } else {
+                Arrays.fill(keys, FREE);
+            }
+        }
+        size = 0;
+        containsFree = false;
+    }
+
+    /**
+     * Returns the keys of this set in no particular order. The returned array
+     * is a copy, so the set can be modified while iterating it.
+     *
+     * @return array of packed cell keys
+     */
+    public long[] toArray() {
+        long[] result = new long[size()];
+        int i = 0;
+        if (containsFree) {
+            result[i++] = FREE;
+        }
+        for (long key : keys) {
+            if (key != FREE) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    private void shiftKeys(int pos) {
+        // backward shift deletion, keeps the probe sequences intact without
+        // tombstones
+        int last;
+        long current;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((current = keys[pos]) == FREE) {
+                    keys[last] = FREE;
+                    return;
+                }
+                int slot = CellKeyMap.hash(current) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot
+                        && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+        }
+    }
+
+    private int maxFill() {
+        return keys.length / 2;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        allocate(newCapacity);
+        for (long key : oldKeys) {
+            if (key != FREE) {
+                int pos = CellKeyMap.hash(key) & mask;
+                while (keys[pos] != FREE) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
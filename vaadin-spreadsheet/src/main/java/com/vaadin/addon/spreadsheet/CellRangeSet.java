@@ -0,0 +1,330 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * An unmodifiable set of cells described by a list of cell ranges. The cells
+ * are not expanded into separate {@link CellReference} objects: membership
+ * checks and the size are computed from the ranges, and the references are
+ * created only while iterating. Overlapping ranges are allowed, each cell is
+ * still included only once.
+ * <p>
+ * Cells are compared by their row and column only, the sheet name and the
+ * absolute flags of a {@link CellReference} are ignored.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+public class CellRangeSet extends AbstractSet<CellReference> implements
+        Serializable {
+
+    private final List<CellRangeAddress> ranges;
+
+    /**
+     * Number of ranges at the start of {@link #ranges} that were given as
+     * ranges. The single cells after them never overlap any other range.
+     */
+    private final int rangeCount;
+
+    /**
+     * For each range, whether it overlaps any of the ranges before it; cells
+     * of such ranges are checked for duplicates while iterating.
+     */
+    private boolean[] overlapsPrevious;
+
+    private int size = -1;
+
+    /**
+     * Creates a new set containing the given cell ranges.
+     *
+     * @param ranges
+     *            Cell ranges, may be <code>null</code>
+     */
+    public CellRangeSet(List<CellRangeAddress> ranges) {
+        this(null, null, ranges);
+    }
+
+    /**
+     * Creates a new set containing the cells of a selection.
+     *
+     * @param selectedCellReference
+     *            The selected cell, may be <code>null</code>
+     * @param individualSelectedCells
+     *            Individually selected cells, may be <code>null</code>
+     * @param cellRangeAddresses
+     *            Selected cell ranges, may be <code>null</code>
+     */
+    public CellRangeSet(CellReference selectedCellReference,
+            List<CellReference> individualSelectedCells,
+            List<CellRangeAddress> cellRangeAddresses) {
+        List<CellRangeAddress> all = new ArrayList<CellRangeAddress>();
+        if (cellRangeAddresses != null) {
+            for (CellRangeAddress range : cellRangeAddresses) {
+                all.add(new CellRangeAddress(Math.min(range.getFirstRow(),
+                        range.getLastRow()), Math.max(range.getFirstRow(),
+                        range.getLastRow()), Math.min(range.getFirstColumn(),
+                        range.getLastColumn()), Math.max(
+                        range.getFirstColumn(), range.getLastColumn())));
+            }
+        }
+        rangeCount = all.size();
+        final CellKeySet addedCells = new CellKeySet();
+        if (selectedCellReference != null) {
+            addCell(all, addedCells, selectedCellReference);
+        }
+        if (individualSelectedCells != null) {
+            for (CellReference cell : individualSelectedCells) {
+                addCell(all, addedCells, cell);
+            }
+        }
+        ranges = Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Adds the given cell as a range of one cell, unless it has been added
+     * already or is within one of the given ranges. Only the ranges are
+     * scanned, the single cells are found from the added cells.
+     */
+    private void addCell(List<CellRangeAddress> all, CellKeySet addedCells,
+            CellReference cell) {
+        if (!addedCells.add(SpreadsheetUtil.toLongKey(cell.getCol() + 1,
+                cell.getRow() + 1))) {
+            return;
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            if (all.get(i).isInRange(cell.getRow(), cell.getCol())) {
+                return;
+            }
+        }
+        all.add(new CellRangeAddress(cell.getRow(), cell.getRow(), cell
+                .getCol(), cell.getCol()));
+    }
+
+    private boolean[] getOverlapsPrevious() {
+        if (overlapsPrevious == null) {
+            overlapsPrevious = new boolean[ranges.size()];
+            // the single cells don't overlap anything
+            for (int i = 0; i < rangeCount; i++) {
+                for (int j = 0; j < i; j++) {
+                    if (intersects(ranges.get(i), ranges.get(j))) {
+                        overlapsPrevious[i] = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return overlapsPrevious;
+    }
+
+    private static boolean intersects(CellRangeAddress a, CellRangeAddress b) {
+        return a.getFirstRow() <= b.getLastRow()
+                && b.getFirstRow() <= a.getLastRow()
+                && a.getFirstColumn() <= b.getLastColumn()
+                && b.getFirstColumn() <= a.getLastColumn();
+    }
+
+    /**
+     * Gets the ranges of this set. Single cells are included as ranges of one
+     * cell. The ranges may overlap.
+     *
+     * @return unmodifiable list of ranges
+     */
+    public List<CellRangeAddress> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Returns whether the cell at the given coordinates is in this set.
+     *
+     * @param row
+     *            Row index, 0-based
+     * @param col
+     *            Column index, 0-based
+     * @return <code>true</code> if the cell is in this set
+     */
+    public boolean contains(int row, int col) {
+        for (CellRangeAddress range : ranges) {
+            if (range.isInRange(row, col)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof CellReference) {
+            CellReference cell = (CellReference) o;
+            return contains(cell.getRow(), cell.getCol());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * Returns the amount of cells in this set, or
+     * {@link Integer#MAX_VALUE} if there are more cells than that.
+     */
+    @Override
+    public int size() {
+        if (size < 0) {
+            size = (int) Math.min(Integer.MAX_VALUE, getCellCount());
+        }
+        return size;
+    }
+
+    /**
+     * Returns the amount of cells in this set. The area of the union of the
+     * ranges is computed one band of rows at a time, without visiting the
+     * cells.
+     *
+     * @return amount of cells
+     */
+    public long getCellCount() {
+        int[] rowBounds = new int[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            rowBounds[2 * i] = ranges.get(i).getFirstRow();
+            rowBounds[2 * i + 1] = ranges.get(i).getLastRow() + 1;
+        }
+        Arrays.sort(rowBounds);
+
+        long count = 0;
+        int[][] columns = new int[ranges.size()][];
+        for (int b = 0; b + 1 < rowBounds.length; b++) {
+            int bandStart = rowBounds[b];
+            int bandEnd = rowBounds[b + 1];
+            if (bandStart == bandEnd) {
+                continue;
+            }
+            int n = 0;
+            for (CellRangeAddress range : ranges) {
+                if (range.getFirstRow() <= bandStart
+                        && range.getLastRow() >= bandEnd - 1) {
+                    columns[n++] = new int[] { range.getFirstColumn(),
+                            range.getLastColumn() };
+                }
+            }
+            Arrays.sort(columns, 0, n, (x, y) -> Integer.compare(x[0], y[0]));
+            long width = 0;
+            int end = -1;
+            for (int i = 0; i < n; i++) {
+                int first = Math.max(columns[i][0], end + 1);
+                if (columns[i][1] >= first) {
+                    width += columns[i][1] - first + 1;
+                    end = columns[i][1];
+                }
+            }
+            count += width * (bandEnd - bandStart);
+        }
+        return count;
+    }
+
+    /**
+     * Iterates the cells range by range, each range row by row. A new
+     * {@link CellReference} is created for each cell.
+     */
+    @Override
+    public Iterator<CellReference> iterator() {
+        return new CellIterator(getOverlapsPrevious());
+    }
+
+    private class CellIterator implements Iterator<CellReference>,
+            Serializable {
+        private final boolean[] overlaps;
+        private int rangeIndex;
+        private int row;
+        private int col;
+        private boolean hasNext;
+
+        private CellIterator(boolean[] overlaps) {
+            this.overlaps = overlaps;
+            if (!ranges.isEmpty()) {
+                row = ranges.get(0).getFirstRow();
+                col = ranges.get(0).getFirstColumn();
+                hasNext = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public CellReference next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            CellReference next = new CellReference(row, col);
+            advance();
+            return next;
+        }
+
+        private void advance() {
+            do {
+                CellRangeAddress range = ranges.get(rangeIndex);
+                if (col < range.getLastColumn()) {
+                    col++;
+                } else if (row < range.getLastRow()) {
+                    row++;
+                    col = range.getFirstColumn();
+                } else if (rangeIndex + 1 < ranges.size()) {
+                    rangeIndex++;
+                    row = ranges.get(rangeIndex).getFirstRow();
+                    col = ranges.get(rangeIndex).getFirstColumn();
+                } else {
+                    hasNext = false;
+                    return;
+                }
+            } while (isInPreviousRange());
+        }
+
+        private boolean isInPreviousRange() {
+            if (!overlaps[rangeIndex]) {
+                return false;
+            }
+            for (int i = 0; i < rangeIndex; i++) {
+                if (ranges.get(i).isInRange(row, col)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
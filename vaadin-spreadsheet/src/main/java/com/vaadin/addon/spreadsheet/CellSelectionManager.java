@@ -120,6 +120,17 @@ public class CellSelectionManager implements Serializable {
         return latestSelectionEvent;
     }
 
+    /**
+     * Returns all currently selected cells, without expanding the selected
+     * ranges into separate cells.
+     * 
+     * @return Set of the selected cells
+     */
+    public CellRangeSet getSelectedCells() {
+        return new CellRangeSet(selectedCellReference,
+                individualSelectedCells, cellRangeAddresses);
+    }
+
     boolean isCellInsideSelection(int row, int column) {
         CellReference cellReference = new CellReference(row - 1, column - 1);
         boolean inside = cellReference.equals(selectedCellReference)
@@ -21,13 +21,13 @@ import static org.apache.poi.ss.usermodel.Cell.CELL_TYPE_NUMERIC;
 import static org.apache.poi.ss.usermodel.Cell.CELL_TYPE_STRING;
 
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -63,8 +63,69 @@ public class CellSelectionShifter implements Serializable {
     private static final Pattern stringSequencePattern = Pattern
             .compile(stringSequenceRegex);
 
+    /**
+     * Fills with more target cells than this don't notify the formula
+     * evaluator of each cell, the evaluator cache is cleared once instead.
+     */
+    private static final int BULK_FILL_CELLS = 10000;
+
     private final Spreadsheet spreadsheet;
 
+    /**
+     * The state of a single fill: the parsed formulas of the source cells and
+     * whether the evaluator is notified per cell.
+     */
+    private class FillContext implements Serializable {
+        private final boolean bulk;
+        private final CellKeyMap<FormulaTemplate> templates = new CellKeyMap<FormulaTemplate>();
+        private transient FormulaParsingWorkbook parsingWorkbook;
+
+        private FillContext(long targetCells) {
+            bulk = targetCells > BULK_FILL_CELLS;
+        }
+
+        /**
+         * Invalidates the evaluator once for all the cells of a bulk fill.
+         */
+        private void done() {
+            if (bulk) {
+                getCellValueManager().getFormulaEvaluator()
+                        .clearAllCachedResultValues();
+            }
+        }
+
+        /**
+         * Returns the parsed formula of the given source cell, parsing it on
+         * the first call. Returns <code>null</code> if the formula can't be
+         * parsed or isn't rendered back to the same text, in which case the
+         * formula text is shifted like before.
+         */
+        private FormulaTemplate getTemplate(Cell shiftedCell) {
+            final long key = SpreadsheetUtil.toLongKey(shiftedCell);
+            if (templates.containsKey(key)) {
+                return templates.get(key);
+            }
+            FormulaTemplate template = FormulaTemplate.parse(spreadsheet,
+                    shiftedCell, getParsingWorkbook());
+            if (template != null
+                    && !template.isRenderedAs(shiftedCell.getCellFormula())) {
+                // e.g. whole column references of xlsx files are rendered as
+                // cell ranges, the filled formulas should look like the source
+                template = null;
+            }
+            templates.put(key, template);
+            return template;
+        }
+
+        private FormulaParsingWorkbook getParsingWorkbook() {
+            if (parsingWorkbook == null) {
+                parsingWorkbook = FormulaTemplate
+                        .createParsingWorkbook(spreadsheet);
+            }
+            return parsingWorkbook;
+        }
+    }
+
     /**
      * Creates a new CellShifter and ties it to the given Spreadsheet
      * 
@@ -150,13 +211,8 @@ public class CellSelectionShifter implements Serializable {
     }
 
     private void fireCellValueChangeEvent(CellRangeAddress region) {
-        Set<CellReference> cells = new HashSet<CellReference>();
-        for (int x = region.getFirstColumn(); x <= region.getLastColumn(); x++) {
-            for (int y = region.getFirstRow(); y <= region.getLastRow(); y++) {
-                cells.add(new CellReference(y, x));
-            }
-        }
-        spreadsheet.fireEvent(new CellValueChangeEvent(spreadsheet, cells));
+        spreadsheet.fireEvent(new CellValueChangeEvent(spreadsheet,
+                new CellRangeSet(Collections.singletonList(region))));
     }
 
     /**
@@ -177,6 +233,13 @@ public class CellSelectionShifter implements Serializable {
      */
     protected void shiftCellValue(Cell shiftedCell, Cell newCell,
             boolean removeShifted, Double sequenceIncrement) {
+        shiftCellValue(shiftedCell, newCell, removeShifted, sequenceIncrement,
+                null);
+    }
+
+    private void shiftCellValue(Cell shiftedCell, Cell newCell,
+            boolean removeShifted, Double sequenceIncrement,
+            FillContext fill) {
         // clear the new cell first because it might have errors which prevent
         // it from being set to a new type
         if (newCell.getCellType() != Cell.CELL_TYPE_BLANK
@@ -189,7 +252,7 @@ public class CellSelectionShifter implements Serializable {
                 .cellStyleUpdated(newCell, true);
         switch (shiftedCell.getCellType()) {
         case Cell.CELL_TYPE_FORMULA:
-            shiftFormula(shiftedCell, newCell);
+            shiftFormula(shiftedCell, newCell, fill);
             break;
         case Cell.CELL_TYPE_BOOLEAN:
             newCell.setCellValue(shiftedCell.getBooleanCellValue());
@@ -208,7 +271,12 @@ public class CellSelectionShifter implements Serializable {
         default:
             break;
         }
-        spreadsheet.getCellValueManager().cellUpdated(newCell);
+        if (fill != null && fill.bulk) {
+            // the evaluator is notified once when the fill is done
+            spreadsheet.getCellValueManager().markCellForUpdate(newCell);
+        } else {
+            spreadsheet.getCellValueManager().cellUpdated(newCell);
+        }
         if (removeShifted) {
             shiftedCell.setCellValue((String) null);
             spreadsheet.getCellValueManager().cellDeleted(shiftedCell);
@@ -292,10 +360,27 @@ public class CellSelectionShifter implements Serializable {
      *            Source cell
      * @param newCell
      *            Resulting new cell
+     * @param fill
+     *            the current fill, or <code>null</code>
      */
-    private void shiftFormula(Cell shiftedCell, Cell newCell) {
+    private void shiftFormula(Cell shiftedCell, Cell newCell,
+            FillContext fill) {
         try {
-            if (shiftedCell.getColumnIndex() != newCell.getColumnIndex()) {
+            String formula = null;
+            FormulaTemplate template = fill == null ? null : fill
+                    .getTemplate(shiftedCell);
+            if (template != null) {
+                int collDiff = newCell.getColumnIndex()
+                        - shiftedCell.getColumnIndex();
+                int rowDiff = newCell.getRowIndex() - shiftedCell.getRowIndex();
+                // like below, either the columns or the rows are shifted
+                formula = template.toFormula(collDiff, collDiff != 0 ? 0
+                        : rowDiff);
+            }
+            if (formula != null) {
+                newCell.setCellFormula(formula);
+            } else if (shiftedCell.getColumnIndex() != newCell
+                    .getColumnIndex()) {
                 // shift column indexes
                 int collDiff = newCell.getColumnIndex()
                         - shiftedCell.getColumnIndex();
@@ -360,8 +445,10 @@ public class CellSelectionShifter implements Serializable {
             // TODO visualize shifting error
             newCell.setCellFormula(shiftedCell.getCellFormula());
         }
-        spreadsheet.getCellValueManager().getFormulaEvaluator()
-                .notifySetFormula(newCell);
+        if (fill == null || !fill.bulk) {
+            spreadsheet.getCellValueManager().getFormulaEvaluator()
+                    .notifySetFormula(newCell);
+        }
     }
 
     /**
@@ -445,6 +532,14 @@ public class CellSelectionShifter implements Serializable {
         Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
+        final FillContext fill = new FillContext((long) (newLastRow - r2)
+                * (c2 - c1 + 1));
+        // the sequence of each column is the same for all the target rows
+        final Double[] sequenceIncrements = new Double[c2 - c1 + 1];
+        for (int c = c1; c <= c2; c++) {
+            sequenceIncrements[c - c1] = getColumnSequenceIncrement(c, r1,
+                    r2);
+        }
         for (int shiftedRowIndex = r1; shiftedRowIndex <= r2; shiftedRowIndex++) {
             final Row shiftedRow = activeSheet.getRow(shiftedRowIndex - 1);
             int newRowIndex = r2 + 1 + (shiftedRowIndex - r1);
@@ -455,8 +550,6 @@ public class CellSelectionShifter implements Serializable {
                         newRow = activeSheet.createRow(newRowIndex - 1);
                     }
                     for (int c = c1; c <= c2; c++) {
-                        Double sequenceIncrement = getColumnSequenceIncrement(
-                                c, r1, r2);
                         Cell shiftedCell = shiftedRow.getCell(c - 1);
                         Cell newCell = newRow.getCell(c - 1);
                         if (shiftedCell != null) {
@@ -464,14 +557,9 @@ public class CellSelectionShifter implements Serializable {
                                 newCell = newRow.createCell(c - 1);
                             }
                             shiftCellValue(shiftedCell, newCell, false,
-                                    sequenceIncrement);
+                                    sequenceIncrements[c - c1], fill);
                         } else if (newCell != null) {
-                            // update style to 0
-                            newCell.setCellStyle(null);
-                            spreadsheet.getSpreadsheetStyleFactory()
-                                    .cellStyleUpdated(newCell, true);
-                            newCell.setCellValue((String) null);
-                            getCellValueManager().cellDeleted(newCell);
+                            clearCell(newCell, fill);
                         }
                     }
                 } else {
@@ -481,6 +569,7 @@ public class CellSelectionShifter implements Serializable {
                 newRowIndex += r2 - r1 + 1;
             }
         }
+        fill.done();
     }
 
     private void shiftRowsUpInSelection(int newFirstRow) {
@@ -493,6 +582,14 @@ public class CellSelectionShifter implements Serializable {
         Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
+        final FillContext fill = new FillContext((long) (r1 - newFirstRow)
+                * (c2 - c1 + 1));
+        // the sequence of each column is the same for all the target rows
+        final Double[] sequenceIncrements = new Double[c2 - c1 + 1];
+        for (int c = c1; c <= c2; c++) {
+            sequenceIncrements[c - c1] = getColumnSequenceIncrement(c, r1,
+                    r2);
+        }
         for (int shiftedRowIndex = r1; shiftedRowIndex <= r2; shiftedRowIndex++) {
             final Row shiftedRow = activeSheet.getRow(shiftedRowIndex - 1);
             int newRowIndex = r1 - 1 - (shiftedRowIndex - r1);
@@ -503,8 +600,6 @@ public class CellSelectionShifter implements Serializable {
                         newRow = activeSheet.createRow(newRowIndex - 1);
                     }
                     for (int c = c1; c <= c2; c++) {
-                        Double sequenceIncrement = getColumnSequenceIncrement(
-                                c, r1, r2);
                         Cell shiftedCell = shiftedRow.getCell(c - 1);
                         Cell newCell = newRow.getCell(c - 1);
                         if (shiftedCell != null) {
@@ -512,14 +607,9 @@ public class CellSelectionShifter implements Serializable {
                                 newCell = newRow.createCell(c - 1);
                             }
                             shiftCellValue(shiftedCell, newCell, false,
-                                    sequenceIncrement);
+                                    sequenceIncrements[c - c1], fill);
                         } else if (newCell != null) {
-                            // update style to 0
-                            newCell.setCellStyle(null);
-                            spreadsheet.getSpreadsheetStyleFactory()
-                                    .cellStyleUpdated(newCell, true);
-                            newCell.setCellValue((String) null);
-                            getCellValueManager().cellDeleted(newCell);
+                            clearCell(newCell, fill);
                         }
                     }
                 } else {
@@ -529,6 +619,7 @@ public class CellSelectionShifter implements Serializable {
                 newRowIndex = newRowIndex - (r2 - r1) - 1;
             }
         }
+        fill.done();
     }
 
     private void shiftColumnsRightInSelection(int newRightMostColumn) {
@@ -541,6 +632,8 @@ public class CellSelectionShifter implements Serializable {
         Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
+        final FillContext fill = new FillContext(
+                (long) (newRightMostColumn - c2) * (r2 - r1 + 1));
         for (int rIndex = r1; rIndex <= r2; rIndex++) {
             final Row row = activeSheet.getRow(rIndex - 1);
             if (row != null) {
@@ -556,21 +649,17 @@ public class CellSelectionShifter implements Serializable {
                                 newCell = row.createCell(newCellIndex - 1);
                             }
                             shiftCellValue(shiftedCell, newCell, false,
-                                    sequenceIncrement);
+                                    sequenceIncrement, fill);
 
                         } else if (newCell != null) {
-                            newCell.setCellValue((String) null);
-                            getCellValueManager().cellDeleted(newCell);
-                            // update style to 0
-                            newCell.setCellStyle(null);
-                            spreadsheet.getSpreadsheetStyleFactory()
-                                    .cellStyleUpdated(newCell, true);
+                            clearCell(newCell, fill);
                         }
                         newCellIndex += (c2 - c1) + 1;
                     }
                 }
             }
         }
+        fill.done();
     }
 
     private void shiftColumnsLeftInSelection(int newLeftMostColumn) {
@@ -583,6 +672,8 @@ public class CellSelectionShifter implements Serializable {
         Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
+        final FillContext fill = new FillContext(
+                (long) (c1 - newLeftMostColumn) * (r2 - r1 + 1));
         for (int rIndex = r1; rIndex <= r2; rIndex++) {
             final Row row = activeSheet.getRow(rIndex - 1);
             if (row != null) {
@@ -598,20 +689,35 @@ public class CellSelectionShifter implements Serializable {
                                 newCell = row.createCell(newCellIndex - 1);
                             }
                             shiftCellValue(shiftedCell, newCell, false,
-                                    sequenceIncrement);
+                                    sequenceIncrement, fill);
                         } else if (newCell != null) {
-                            newCell.setCellValue((String) null);
-                            getCellValueManager().cellDeleted(newCell);
-                            // update style to 0
-                            newCell.setCellStyle(null);
-                            spreadsheet.getSpreadsheetStyleFactory()
-                                    .cellStyleUpdated(newCell, true);
+                            clearCell(newCell, fill);
                         }
                         newCellIndex = newCellIndex - (c2 - c1) - 1;
                     }
                 }
             }
         }
+        fill.done();
+    }
+
+    /**
+     * Clears the value and the style of a target cell whose source cell
+     * doesn't exist.
+     */
+    private void clearCell(Cell newCell, FillContext fill) {
+        // update style to 0
+        newCell.setCellStyle(null);
+        spreadsheet.getSpreadsheetStyleFactory()
+                .cellStyleUpdated(newCell, true);
+        newCell.setCellValue((String) null);
+        if (fill.bulk) {
+            spreadsheet.removeInvalidFormulaMark(newCell.getColumnIndex() + 1,
+                    newCell.getRowIndex() + 1);
+            getCellValueManager().markCellForRemove(newCell);
+        } else {
+            getCellValueManager().cellDeleted(newCell);
+        }
     }
 
     /**
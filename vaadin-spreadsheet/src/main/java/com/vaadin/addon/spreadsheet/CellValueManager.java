@@ -26,16 +26,14 @@ import java.text.Format;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -67,6 +65,7 @@ import com.vaadin.addon.spreadsheet.Spreadsheet.CellValueChangeEvent;
 import com.vaadin.addon.spreadsheet.Spreadsheet.CellValueHandler;
 import com.vaadin.addon.spreadsheet.Spreadsheet.FormulaValueChangeEvent;
 import com.vaadin.addon.spreadsheet.client.CellData;
+import com.vaadin.addon.spreadsheet.client.CellRangeData;
 import com.vaadin.addon.spreadsheet.command.CellValueCommand;
 import com.vaadin.ui.UI;
 
@@ -101,19 +100,32 @@ public class CellValueManager implements Serializable {
     private DataFormatter formatter;
 
     /** Cell keys that have values sent to client side and are cached there. */
-    private final HashSet<String> sentCells = new HashSet<String>();
+    private final CellBitmap sentCells = new CellBitmap();
     /**
      * Formula cell keys that have values sent to client side and are cached
      * there.
      */
-    private final HashSet<String> sentFormulaCells = new HashSet<String>();
+    private final CellBitmap sentFormulaCells = new CellBitmap();
     /** */
     private final HashSet<CellData> removedCells = new HashSet<CellData>();
     /** */
-    private final HashSet<String> markedCells = new HashSet<String>();
+    private final CellKeySet markedCells = new CellKeySet();
+    /** Keys of the existing cells cleared by {@link #removeCells} */
+    private final CellKeySet clearedCells = new CellKeySet();
+    /** Ranges to clear from the client side cache */
+    private final ArrayList<CellRangeData> clearedRanges = new ArrayList<CellRangeData>();
 
     private HashSet<CellReference> changedFormulaCells = new HashSet<CellReference>();
 
+    /**
+     * Precedents of the formula cells, used for re-evaluating only the
+     * formulas affected by the marked cells.
+     */
+    private final FormulaDependencyGraph dependencyGraph;
+
+    /** Cached result of {@link #getChangedCellKeys()} for the current update */
+    private CellKeySet changedCellKeys;
+
     private boolean topLeftCellsLoaded;
     private HashMap<Integer, Float> cellStyleWidthRatioMap;
 
@@ -134,6 +146,7 @@ public class CellValueManager implements Serializable {
      */
     public CellValueManager(Spreadsheet spreadsheet) {
         this.spreadsheet = spreadsheet;
+        dependencyGraph = new FormulaDependencyGraph(spreadsheet);
         UI current = UI.getCurrent();
         if (current != null) {
             formatter = new CustomDataFormatter(current.getLocale());
@@ -147,15 +160,32 @@ public class CellValueManager implements Serializable {
     }
 
     /**
-     * Clears all cached data.
+     * Clears all cached data, including the locked and hidden flags of the
+     * cell styles.
      */
     public void clearCachedContent() {
+        spreadsheet.styleProtectionChanged();
         markedCells.clear();
         sentCells.clear();
         removedCells.clear();
+        clearedCells.clear();
+        clearedRanges.clear();
         sentFormulaCells.clear();
         hyperlinkStyleIndex = -1;
         topLeftCellsLoaded = false;
+        dependencyGraph.invalidate();
+        changedCellKeys = null;
+    }
+
+    /**
+     * Makes the next {@link #updateMarkedCellValues()} call go through all
+     * the cells of the sheet and rebuild the formula dependencies. Should be
+     * called when the formulas have been changed without marking the cells,
+     * e.g. when rows are shifted.
+     */
+    protected void invalidateFormulaDependencies() {
+        dependencyGraph.invalidate();
+        changedCellKeys = null;
     }
 
     public DataFormatter getDataFormatter() {
@@ -217,8 +247,9 @@ public class CellValueManager implements Serializable {
         CellStyle cellStyle = cell.getCellStyle();
         cellData.cellStyle = "cs" + cellStyle.getIndex();
         cellData.locked = spreadsheet.isCellLocked(cell);
+        final boolean hidden = spreadsheet.isCellHidden(cell);
         try {
-            if (!spreadsheet.isCellHidden(cell)) {
+            if (!hidden) {
                 if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
                     cellData.formulaValue = formulaFormatter
                             .reFormatFormulaValue(cell.getCellFormula(),
@@ -251,7 +282,7 @@ public class CellValueManager implements Serializable {
             String formattedCellValue = formatter.formatCellValue(cell,
                     getFormulaEvaluator());
 
-            if (!spreadsheet.isCellHidden(cell)) {
+            if (!hidden) {
                 if (cell.getCellType() == Cell.CELL_TYPE_FORMULA
                         || cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
                     formattedCellValue = formattedCellValue.replaceAll(
@@ -328,7 +359,7 @@ public class CellValueManager implements Serializable {
                     cellData.cellStyle = cellData.cellStyle + " cf" + i;
                 }
 
-                markedCells.add(SpreadsheetUtil.toKey(cell));
+                markedCells.add(SpreadsheetUtil.toLongKey(cell));
             }
 
             if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC
@@ -494,7 +525,7 @@ public class CellValueManager implements Serializable {
      *            Cell to mark for updates
      */
     protected void markCellForUpdate(Cell cell) {
-        markedCells.add(SpreadsheetUtil.toKey(cell));
+        markedCells.add(SpreadsheetUtil.toLongKey(cell));
     }
 
     /**
@@ -517,7 +548,7 @@ public class CellValueManager implements Serializable {
      *            Cell to mark for removal
      */
     protected void markCellForRemove(Cell cell) {
-        String cellKey = SpreadsheetUtil.toKey(cell);
+        long cellKey = SpreadsheetUtil.toLongKey(cell);
         CellData cd = new CellData();
         cd.col = cell.getColumnIndex() + 1;
         cd.row = cell.getRowIndex() + 1;
@@ -529,11 +560,14 @@ public class CellValueManager implements Serializable {
      * Clears the cell with the given key from the cache
      *
      * @param cellKey
-     *            Key of target cell
+     *            Packed key of target cell, see
+     *            {@link SpreadsheetUtil#toLongKey(int, int)}
      */
-    protected void clearCellCache(String cellKey) {
-        if (!sentCells.remove(cellKey)) {
-            sentFormulaCells.remove(cellKey);
+    protected void clearCellCache(long cellKey) {
+        final int col = SpreadsheetUtil.getColumnIndexFromLongKey(cellKey);
+        final int row = SpreadsheetUtil.getRowFromLongKey(cellKey);
+        if (!sentCells.remove(col, row)) {
+            sentFormulaCells.remove(col, row);
         }
     }
 
@@ -599,10 +633,9 @@ public class CellValueManager implements Serializable {
                 } else {
                     // modify existing cell, possibly switch type
                     formattedCellValue = getFormattedCellValue(cell);
-                    final String key = SpreadsheetUtil.toKey(col, row);
                     oldCellType = cell.getCellType();
-                    if (!sentCells.remove(key)) {
-                        sentFormulaCells.remove(key);
+                    if (!sentCells.remove(col, row)) {
+                        sentFormulaCells.remove(col, row);
                     }
 
                     // Old value was hyperlink => needs refresh
@@ -864,7 +897,7 @@ public class CellValueManager implements Serializable {
         // removeCell and removeCells makes sure that cells are removed and
         // cleared from client side cache.
         spreadsheet.getSpreadsheetHistoryManager().addCommand(command);
-        fireCellValueChangeEvent(spreadsheet.getSelectedCellReferences());
+        fireCellValueChangeEvent(getCellSelectionManager().getSelectedCells());
         spreadsheet.updateMarkedCells();
         spreadsheet.loadHyperLinks();
     }
@@ -1080,40 +1113,135 @@ public class CellValueManager implements Serializable {
         Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
-        Map<String, String> componentIDtoCellKeysMap = spreadsheet
-                .getState(false).componentIDtoCellKeysMap;
-        @SuppressWarnings("unchecked")
-        final Collection<String> customComponentCells = (Collection<String>) (componentIDtoCellKeysMap == null ? Collections
-                .emptyList() : componentIDtoCellKeysMap.values());
-        for (int r = firstRow - 1; r < lastRow; r++) {
-            Row row = activeSheet.getRow(r);
-            if (row != null && row.getLastCellNum() != -1
-                    && row.getLastCellNum() >= firstColumn) {
-                for (int c = firstColumn - 1; c < lastColumn; c++) {
-                    final String key = SpreadsheetUtil.toKey(c + 1, r + 1);
-                    if (!customComponentCells.contains(key)
-                            && !sentCells.contains(key)
-                            && !sentFormulaCells.contains(key)) {
-                        Cell cell = row.getCell(c);
-                        if (cell != null) {
-                            final CellData cd = createCellDataForCell(cell);
-                            if (cd != null) {
-                                int cellType = cell.getCellType();
-                                if (cellType == Cell.CELL_TYPE_FORMULA) {
-                                    sentFormulaCells.add(key);
-                                } else {
-                                    sentCells.add(key);
-                                }
-                                cellData.add(cd);
-                            }
-                        }
-                    }
+        final ReadOnlyCellStore readOnlyCellStore = spreadsheet
+                .getReadOnlyCellStore();
+        if (readOnlyCellStore != null) {
+            loadCellDataFromStore(readOnlyCellStore, firstRow, firstColumn,
+                    lastRow, lastColumn, cellData);
+            return cellData;
+        }
+        // 0-based bounds, limited to the rows that exist
+        final int first = Math.max(firstRow - 1, activeSheet.getFirstRowNum());
+        final int last = Math.min(lastRow - 1, activeSheet.getLastRowNum());
+        if (first > last || activeSheet.getPhysicalNumberOfRows() == 0) {
+            return cellData;
+        }
+        if (last - first + 1 > activeSheet.getPhysicalNumberOfRows()) {
+            // sparse sheet, cheaper to walk the existing rows than to look up
+            // every row of the range
+            for (Iterator<Row> rows = activeSheet.rowIterator(); rows
+                    .hasNext();) {
+                Row row = rows.next();
+                if (row.getRowNum() > last) {
+                    break;
+                }
+                if (row.getRowNum() >= first) {
+                    loadCellDataForRow(row, firstColumn, lastColumn, cellData);
+                }
+            }
+        } else {
+            for (int r = first; r <= last; r++) {
+                Row row = activeSheet.getRow(r);
+                if (row != null) {
+                    loadCellDataForRow(row, firstColumn, lastColumn, cellData);
                 }
             }
         }
         return cellData;
     }
 
+    /**
+     * Adds cell data for the cells of the given row within the given columns
+     * that have not been sent to the client yet. Only the populated cells of
+     * the row are visited.
+     *
+     * @param row
+     *            Target row
+     * @param firstColumn
+     *            Starting column index, 1-based
+     * @param lastColumn
+     *            Ending column index, 1-based
+     * @param cellData
+     *            List to add the cell data to
+     */
+    private void loadCellDataForRow(Row row, int firstColumn, int lastColumn,
+            ArrayList<CellData> cellData) {
+        // getLastCellNum is the 0-based index of the last cell plus one
+        if (row.getLastCellNum() == -1 || row.getLastCellNum() < firstColumn) {
+            return;
+        }
+        final int first = Math.max(firstColumn - 1, row.getFirstCellNum());
+        final int last = Math.min(lastColumn, row.getLastCellNum()) - 1;
+        if (first > last) {
+            return;
+        }
+        if (last - first + 1 > row.getPhysicalNumberOfCells()) {
+            // cells are iterated in column order
+            for (Iterator<Cell> cells = row.cellIterator(); cells.hasNext();) {
+                Cell cell = cells.next();
+                if (cell.getColumnIndex() > last) {
+                    break;
+                }
+                if (cell.getColumnIndex() >= first) {
+                    loadCellDataForCell(cell, cellData);
+                }
+            }
+        } else {
+            for (int c = first; c <= last; c++) {
+                Cell cell = row.getCell(c);
+                if (cell != null) {
+                    loadCellDataForCell(cell, cellData);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds cell data for the cells within the given bounds from the values of
+     * a sheet loaded in read-only mode. The cells are sent as locked cells
+     * with the default style.
+     */
+    private void loadCellDataFromStore(ReadOnlyCellStore store, int firstRow,
+            int firstColumn, int lastRow, int lastColumn,
+            ArrayList<CellData> cellData) {
+        final int last = Math.min(lastColumn, store.getColumnCount());
+        for (int c = firstColumn - 1; c < last; c++) {
+            for (int r : store.getPopulatedRows(c, firstRow - 1, lastRow - 1)) {
+                if (sentCells.contains(c + 1, r + 1)) {
+                    continue;
+                }
+                CellData cd = new CellData();
+                cd.row = r + 1;
+                cd.col = c + 1;
+                cd.cellStyle = "cs0";
+                cd.locked = true;
+                cd.value = store.getValue(r, c);
+                cd.originalValue = cd.value;
+                sentCells.add(c + 1, r + 1);
+                cellData.add(cd);
+            }
+        }
+    }
+
+    private void loadCellDataForCell(Cell cell,
+            ArrayList<CellData> cellData) {
+        final int col = cell.getColumnIndex() + 1;
+        final int row = cell.getRowIndex() + 1;
+        if (sentCells.contains(col, row) || sentFormulaCells.contains(col, row)
+                || spreadsheet.isCustomComponentCell(col, row)) {
+            return;
+        }
+        final CellData cd = createCellDataForCell(cell);
+        if (cd != null) {
+            if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                sentFormulaCells.add(col, row);
+            } else {
+                sentCells.add(col, row);
+            }
+            cellData.add(cd);
+        }
+    }
+
     /**
      * Method for updating the spreadsheet client side visible cells and cached
      * data correctly.
@@ -1126,69 +1254,165 @@ public class CellValueManager implements Serializable {
     /**
      * Method for updating cells that are marked for update and formula cells.
      *
-     * Iterates over the whole sheet (existing rows and columns) and updates
-     * client side cache for all sent formula cells, and cells that have been
-     * marked for updating.
-     *
+     * Updates the client side cache for the cells that have been marked for
+     * updating, and for the sent formula cells that depend on marked or
+     * removed cells. If the formula dependencies are not known (e.g. after the
+     * sheet has been reloaded or rows have been shifted), iterates over the
+     * whole sheet (existing rows and columns) and rebuilds them.
      */
     protected void updateMarkedCellValues() {
         final ArrayList<CellData> updatedCellData = new ArrayList<CellData>();
-        Sheet sheet = spreadsheet.getActiveSheet();
         // it is unnecessary to worry about having custom components in the cell
         // because the client side handles it -> it will not replace a custom
         // component with a cell value
 
-        // update all cached formula cell values on client side, because they
-        // might have changed. also make sure all marked cells are updated
-        Iterator<Row> rows = sheet.rowIterator();
-        while (rows.hasNext()) {
-            final Row r = rows.next();
-            final Iterator<Cell> cells = r.cellIterator();
-            while (cells.hasNext()) {
-                final Cell cell = cells.next();
-                int rowIndex = cell.getRowIndex();
-                int columnIndex = cell.getColumnIndex();
-                final String key = SpreadsheetUtil.toKey(columnIndex + 1,
-                        rowIndex + 1);
-                CellData cd = createCellDataForCell(cell);
-                // update formula cells
-                if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-                    if (cd != null) {
-                        if (sentFormulaCells.contains(key)
-                                || markedCells.contains(key)) {
-                            sentFormulaCells.add(key);
-                            updatedCellData.add(cd);
-                        }
-                    } else if (sentFormulaCells.contains(key)) {
-                        // in case the formula cell value has changed to null or
-                        // empty; this case is probably quite rare, formula cell
-                        // pointing to a cell that was removed or had its value
-                        // cleared ???
-                        sentFormulaCells.add(key);
-                        cd = new CellData();
-                        cd.col = columnIndex + 1;
-                        cd.row = rowIndex + 1;
-                        cd.cellStyle = "" + cell.getCellStyle().getIndex();
-                        updatedCellData.add(cd);
-                    }
-                } else if (markedCells.contains(key)) {
-                    sentCells.add(key);
-                    updatedCellData.add(cd);
-                }
-            }
+        if (dependencyGraph.isValid()) {
+            // only the marked cells and the formulas depending on them or on
+            // removed cells might have changed
+            updateDependentCellValues(updatedCellData);
+        } else {
+            // update all cached formula cell values on client side, because
+            // they might have changed. also make sure all marked cells are
+            // updated. the formula dependencies are rebuilt on the way.
+            updateAllCellValues(updatedCellData);
         }
         if (!changedFormulaCells.isEmpty()) {
             fireFormulaValueChangeEvent(changedFormulaCells);
             changedFormulaCells = new HashSet<CellReference>();
         }
+        // cleared ranges go first, the updated cells may be within them
+        if (!clearedRanges.isEmpty()) {
+            spreadsheet.getRpcProxy().cellRangesCleared(
+                    new ArrayList<CellRangeData>(clearedRanges));
+        }
         // empty cells have cell data with just col and row
         updatedCellData.addAll(removedCells);
         if (!updatedCellData.isEmpty()) {
             spreadsheet.getRpcProxy().cellsUpdated(updatedCellData);
+        }
+        if (!updatedCellData.isEmpty() || !clearedRanges.isEmpty()) {
             spreadsheet.getRpcProxy().refreshCellStyles();
         }
         markedCells.clear();
         removedCells.clear();
+        clearedCells.clear();
+        clearedRanges.clear();
+        changedCellKeys = null;
+    }
+
+    private void updateAllCellValues(ArrayList<CellData> updatedCellData) {
+        Sheet sheet = spreadsheet.getActiveSheet();
+        dependencyGraph.invalidate();
+        Iterator<Row> rows = sheet.rowIterator();
+        while (rows.hasNext()) {
+            final Row r = rows.next();
+            final Iterator<Cell> cells = r.cellIterator();
+            while (cells.hasNext()) {
+                final Cell cell = cells.next();
+                if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                    dependencyGraph.update(cell);
+                }
+                updateCellValue(cell, updatedCellData);
+            }
+        }
+        dependencyGraph.setValid();
+    }
+
+    private void updateDependentCellValues(ArrayList<CellData> updatedCellData) {
+        Sheet sheet = spreadsheet.getActiveSheet();
+        CellKeySet dirtyKeys = new CellKeySet(getChangedCellKeys());
+        // cells marked after the changed cells were resolved, e.g. because of
+        // conditional formatting, only need to be resent
+        dirtyKeys.addAll(markedCells);
+        for (long key : dirtyKeys.toArray()) {
+            Cell cell = getCell(sheet, key);
+            if (cell != null) {
+                updateCellValue(cell, updatedCellData);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys of the cells that might have changed since the last
+     * call to {@link #updateMarkedCellValues()}: the cells marked for update
+     * or removal, and all formula cells depending on them. The result is
+     * computed once per update and must not be modified.
+     *
+     * @return Packed keys of the changed cells, or <code>null</code> if the
+     *         formula dependencies are not known and all cells of the sheet
+     *         should be considered changed
+     */
+    protected CellKeySet getChangedCellKeys() {
+        if (!dependencyGraph.isValid()) {
+            return null;
+        }
+        if (changedCellKeys == null) {
+            Sheet sheet = spreadsheet.getActiveSheet();
+            CellKeySet changedKeys = new CellKeySet(markedCells);
+            for (CellData cd : removedCells) {
+                changedKeys.add(SpreadsheetUtil.toLongKey(cd.col, cd.row));
+            }
+            changedKeys.addAll(clearedCells);
+            for (long key : changedKeys.toArray()) {
+                Cell cell = getCell(sheet, key);
+                if (cell == null) {
+                    dependencyGraph.remove(key);
+                } else {
+                    dependencyGraph.update(cell);
+                }
+            }
+            changedCellKeys = dependencyGraph.getDependents(changedKeys);
+            changedCellKeys.addAll(changedKeys);
+        }
+        return changedCellKeys;
+    }
+
+    private Cell getCell(Sheet sheet, long key) {
+        Row row = sheet.getRow(SpreadsheetUtil.getRowFromLongKey(key) - 1);
+        if (row == null) {
+            return null;
+        }
+        return row.getCell(SpreadsheetUtil.getColumnIndexFromLongKey(key) - 1);
+    }
+
+    private void updateCellValue(Cell cell,
+            ArrayList<CellData> updatedCellData) {
+        int rowIndex = cell.getRowIndex();
+        int columnIndex = cell.getColumnIndex();
+        final long key = SpreadsheetUtil.toLongKey(columnIndex + 1,
+                rowIndex + 1);
+        if (spreadsheet.isLazyFormulaEvaluation()
+                && cell.getCellType() == Cell.CELL_TYPE_FORMULA
+                && !sentFormulaCells.contains(columnIndex + 1, rowIndex + 1)
+                && !markedCells.contains(key)) {
+            // not cached on client side, evaluated when loaded
+            return;
+        }
+        CellData cd = createCellDataForCell(cell);
+        // update formula cells
+        if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+            if (cd != null) {
+                if (sentFormulaCells.contains(columnIndex + 1, rowIndex + 1)
+                        || markedCells.contains(key)) {
+                    sentFormulaCells.add(columnIndex + 1, rowIndex + 1);
+                    updatedCellData.add(cd);
+                }
+            } else if (sentFormulaCells.contains(columnIndex + 1,
+                    rowIndex + 1)) {
+                // in case the formula cell value has changed to null or
+                // empty; this case is probably quite rare, formula cell
+                // pointing to a cell that was removed or had its value
+                // cleared ???
+                cd = new CellData();
+                cd.col = columnIndex + 1;
+                cd.row = rowIndex + 1;
+                cd.cellStyle = "" + cell.getCellStyle().getIndex();
+                updatedCellData.add(cd);
+            }
+        } else if (markedCells.contains(key)) {
+            sentCells.add(columnIndex + 1, rowIndex + 1);
+            updatedCellData.add(cd);
+        }
     }
 
     /**
@@ -1202,27 +1426,17 @@ public class CellValueManager implements Serializable {
      */
     protected void updateDeletedRowsInClientCache(int startRow, int endRow) {
         for (int i = startRow; i <= endRow; i++) {
-            String rowKey = "row" + i;
-            for (Iterator<String> iterator = sentCells.iterator(); iterator
-                    .hasNext();) {
-                String key = iterator.next();
-                if (key.endsWith(rowKey)) {
-                    iterator.remove();
-                    CellData cd = new CellData();
-                    cd.col = SpreadsheetUtil.getColumnIndexFromKey(key);
-                    cd.row = i;
-                    removedCells.add(cd);
-                }
-            }
-            for (Iterator<String> iterator = sentFormulaCells.iterator(); iterator
-                    .hasNext();) {
-                String key = iterator.next();
-                if (key.endsWith(rowKey)) {
-                    iterator.remove();
-                    CellData cd = new CellData();
-                    cd.col = SpreadsheetUtil.getColumnIndexFromKey(key);
-                    cd.row = i;
-                    removedCells.add(cd);
+            for (CellBitmap cache : new CellBitmap[] { sentCells,
+                    sentFormulaCells }) {
+                BitSet columns = cache.removeRow(i);
+                if (columns != null) {
+                    for (int c = columns.nextSetBit(0); c >= 0; c = columns
+                            .nextSetBit(c + 1)) {
+                        CellData cd = new CellData();
+                        cd.col = c + 1;
+                        cd.row = i;
+                        removedCells.add(cd);
+                    }
                 }
             }
         }
@@ -1248,45 +1462,119 @@ public class CellValueManager implements Serializable {
         final Workbook workbook = spreadsheet.getWorkbook();
         final Sheet activeSheet = workbook.getSheetAt(workbook
                 .getActiveSheetIndex());
-        for (int i = firstRow - 1; i < lastRow; i++) {
-            Row row = activeSheet.getRow(i);
-            if (row != null) {
-                for (int j = firstColumn - 1; j < lastColumn; j++) {
-                    Cell cell = row.getCell(j);
-                    if (cell != null) {
-                        final String key = SpreadsheetUtil.toKey(j + 1, i + 1);
-                        if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-                            sentFormulaCells.remove(key);
-                        } else {
-                            sentCells.remove(key);
-                        }
-                        if (cell.getHyperlink() != null) {
-                            removeHyperlink(cell, activeSheet);
-                        }
-                        if (clearRemovedCellStyle) {
-                            // update style to 0
-                            cell.setCellStyle(null);
-                            spreadsheet.getSpreadsheetStyleFactory()
-                                    .cellStyleUpdated(cell, true);
-                        }
-                        // need to make protection etc. settings for the cell
-                        // won't get effected. deleting the cell would make it
-                        // locked
-                        if (clearRemovedCellStyle
-                                || cell.getCellStyle().getIndex() == 0) {
-                            CellData cd = new CellData();
-                            cd.col = j + 1;
-                            cd.row = i + 1;
-                            removedCells.add(cd);
-                        } else {
-                            markedCells.add(key);
-                        }
-                        cell.setCellValue((String) null);
-                        getFormulaEvaluator().notifyUpdateCell(cell);
-                    }
+        boolean removed = false;
+        for (Row row : getRows(activeSheet, firstRow - 1, lastRow - 1)) {
+            for (Cell cell : getCells(row, firstColumn - 1, lastColumn - 1)) {
+                if (cell.getHyperlink() != null) {
+                    removeHyperlink(cell, activeSheet);
+                }
+                if (clearRemovedCellStyle) {
+                    // update style to 0
+                    cell.setCellStyle(null);
+                    spreadsheet.getSpreadsheetStyleFactory().cellStyleUpdated(
+                            cell, true);
+                }
+                // the cell is kept so that protection etc. settings for the
+                // cell won't get effected. deleting the cell would make it
+                // locked
+                cell.setCellValue((String) null);
+                clearedCells.add(SpreadsheetUtil.toLongKey(cell));
+                removed = true;
+            }
+        }
+        if (removed) {
+            getFormulaEvaluator().clearAllCachedResultValues();
+        }
+        sentCells.removeRange(firstColumn, firstRow, lastColumn, lastRow);
+        sentFormulaCells.removeRange(firstColumn, firstRow, lastColumn,
+                lastRow);
+        // the client side clears all the cached cells in the range at once
+        CellRangeData range = new CellRangeData();
+        range.col1 = firstColumn;
+        range.row1 = firstRow;
+        range.col2 = lastColumn;
+        range.row2 = lastRow;
+        range.clearStyles = clearRemovedCellStyle;
+        clearedRanges.add(range);
+    }
+
+    /**
+     * Marks all the cells within the given bounds as changed, e.g. after their
+     * rows have been rearranged in the POI model. The client side drops its
+     * cached cells of the range at once, and the cells are sent again when
+     * they are loaded.
+     *
+     * @param firstRow
+     *            Starting row index, 1-based
+     * @param firstColumn
+     *            Starting column index, 1-based
+     * @param lastRow
+     *            Ending row index, 1-based
+     * @param lastColumn
+     *            Ending column index, 1-based
+     */
+    protected void rangeChanged(int firstRow, int firstColumn, int lastRow,
+            int lastColumn) {
+        getFormulaEvaluator().clearAllCachedResultValues();
+        invalidateFormulaDependencies();
+        sentCells.removeRange(firstColumn, firstRow, lastColumn, lastRow);
+        sentFormulaCells.removeRange(firstColumn, firstRow, lastColumn,
+                lastRow);
+        CellRangeData range = new CellRangeData();
+        range.col1 = firstColumn;
+        range.row1 = firstRow;
+        range.col2 = lastColumn;
+        range.row2 = lastRow;
+        range.clearStyles = true;
+        clearedRanges.add(range);
+    }
+
+    /**
+     * Returns the existing rows within the given bounds, in ascending order.
+     * Wide bounds are not looked up row by row.
+     */
+    private static List<Row> getRows(Sheet sheet, int firstRow, int lastRow) {
+        List<Row> rows = new ArrayList<Row>();
+        if (lastRow - firstRow + 1 > sheet.getPhysicalNumberOfRows()) {
+            for (Row row : sheet) {
+                if (row.getRowNum() >= firstRow && row.getRowNum() <= lastRow) {
+                    rows.add(row);
+                }
+            }
+        } else {
+            for (int i = firstRow; i <= lastRow; i++) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the existing cells of the row within the given column bounds.
+     * Wide bounds are not looked up cell by cell.
+     */
+    private static List<Cell> getCells(Row row, int firstColumn,
+            int lastColumn) {
+        List<Cell> cells = new ArrayList<Cell>();
+        if (lastColumn - firstColumn + 1 > row.getPhysicalNumberOfCells()) {
+            for (Cell cell : row) {
+                if (cell.getColumnIndex() >= firstColumn
+                        && cell.getColumnIndex() <= lastColumn) {
+                    cells.add(cell);
+                }
+            }
+        } else {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                Cell cell = row.getCell(j);
+                if (cell != null) {
+                    cells.add(cell);
                 }
             }
         }
+        return cells;
     }
 
     /**
@@ -1312,17 +1600,17 @@ public class CellValueManager implements Serializable {
                 CellData cd = new CellData();
                 cd.col = colIndex;
                 cd.row = rowIndex;
-                final String key = SpreadsheetUtil.toKey(colIndex, rowIndex);
                 if (clearRemovedCellStyle
                         || cell.getCellStyle().getIndex() == 0) {
                     removedCells.add(cd);
                 } else {
-                    markedCells.add(key);
+                    markedCells.add(SpreadsheetUtil.toLongKey(colIndex,
+                            rowIndex));
                 }
                 if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-                    sentFormulaCells.remove(key);
+                    sentFormulaCells.remove(colIndex, rowIndex);
                 } else {
-                    sentCells.remove(key);
+                    sentCells.remove(colIndex, rowIndex);
                 }
                 // POI (3.9) doesn't have a method for removing a hyperlink !!!
                 if (cell.getHyperlink() != null) {
@@ -1402,21 +1690,8 @@ public class CellValueManager implements Serializable {
      *            Index of target column, 1-based
      */
     public void clearCacheForColumn(int indexColumn) {
-        final String columnKey = "col" + indexColumn + " r";
-        for (Iterator<String> iterator = sentCells.iterator(); iterator
-                .hasNext();) {
-            String key = iterator.next();
-            if (key.startsWith(columnKey)) {
-                iterator.remove();
-            }
-        }
-        for (Iterator<String> iterator = sentFormulaCells.iterator(); iterator
-                .hasNext();) {
-            String key = iterator.next();
-            if (key.startsWith(columnKey)) {
-                iterator.remove();
-            }
-        }
+        sentCells.removeColumn(indexColumn);
+        sentFormulaCells.removeColumn(indexColumn);
     }
 
 }
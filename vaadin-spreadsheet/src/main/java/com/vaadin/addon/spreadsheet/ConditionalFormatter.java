@@ -20,10 +20,12 @@ package com.vaadin.addon.spreadsheet;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +44,7 @@ import org.apache.poi.ss.formula.eval.NumberEval;
 import org.apache.poi.ss.formula.eval.NumericValueEval;
 import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
 import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.ss.formula.ptg.RefPtgBase;
 import org.apache.poi.ss.usermodel.Cell;
@@ -55,6 +58,7 @@ import org.apache.poi.ss.usermodel.PatternFormatting;
 import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.XSSFBorderFormatting;
 import org.apache.poi.xssf.usermodel.XSSFConditionalFormatting;
 import org.apache.poi.xssf.usermodel.XSSFConditionalFormattingRule;
@@ -100,13 +104,144 @@ public class ConditionalFormatter implements Serializable {
     /**
      * Cache of styles for each cell. One cell may have several styles.
      */
-    private Map<String, Set<Integer>> cellToIndex = new HashMap<String, Set<Integer>>();
+    private CellKeyMap<Set<Integer>> cellToIndex = new CellKeyMap<Set<Integer>>();
 
     private Map<ConditionalFormatting, Integer> topBorders = new HashMap<ConditionalFormatting, Integer>();
     private Map<ConditionalFormatting, Integer> leftBorders = new HashMap<ConditionalFormatting, Integer>();
 
     protected ColorConverter colorConverter;
 
+    /**
+     * The formattings and rules evaluated on the last full pass, used for
+     * re-evaluating only the formattings affected by changed cells.
+     * <code>null</code> if a full pass is needed. Not serialized, since the
+     * POI formattings and rules are not serializable; the next update after
+     * deserialization does a full pass.
+     */
+    private transient List<EvaluatedFormatting> evaluatedFormattings;
+
+    /**
+     * Parsed formulas of the rules, so that each formula is parsed only once
+     * per full pass instead of once for each cell in the formatting ranges.
+     * Cleared on every full pass, since POI creates new rule instances then
+     * and the sheet structure might have changed. Not serialized, the
+     * formulas are parsed again when needed.
+     */
+    private transient Map<ConditionalFormattingRule, CompiledFormula> compiledFormulas;
+
+    /**
+     * A parsed formula that can be moved to any cell of the formatting
+     * ranges. Only the relative cell references are copied when moving, all
+     * other tokens are shared with the template.
+     */
+    @SuppressWarnings("serial")
+    private static class CompiledFormula implements Serializable {
+        private final Ptg[] template;
+        private final int[] relativeRefIndexes;
+
+        private CompiledFormula(Ptg[] template) {
+            this.template = template;
+            int[] indexes = new int[template.length];
+            int count = 0;
+            for (int i = 0; i < template.length; i++) {
+                if (template[i] instanceof RefPtgBase) {
+                    RefPtgBase ref = (RefPtgBase) template[i];
+                    if (ref.isColRelative() || ref.isRowRelative()) {
+                        indexes[count++] = i;
+                    }
+                }
+            }
+            relativeRefIndexes = Arrays.copyOf(indexes, count);
+        }
+
+        /**
+         * Returns the tokens with relative references moved by the given
+         * deltas. The template must not be modified by the caller.
+         */
+        private Ptg[] rebase(int deltaColumn, int deltaRow) {
+            if (relativeRefIndexes.length == 0
+                    || (deltaColumn == 0 && deltaRow == 0)) {
+                return template;
+            }
+            Ptg[] ptgs = template.clone();
+            for (int i : relativeRefIndexes) {
+                RefPtgBase ref = (RefPtgBase) ((RefPtgBase) template[i])
+                        .copy();
+                // re-calculate cell references
+                if (ref.isColRelative()) {
+                    ref.setColumn(ref.getColumn() + deltaColumn);
+                }
+                if (ref.isRowRelative()) {
+                    ref.setRow(ref.getRow() + deltaRow);
+                }
+                ptgs[i] = ref;
+            }
+            return ptgs;
+        }
+    }
+
+    /**
+     * A rule that was evaluated on the last full pass, together with the
+     * indexes of the class names it was given.
+     */
+    private static class EvaluatedRule implements Serializable {
+        private final ConditionalFormattingRule rule;
+        private final int cssIndex;
+        private final Integer leftBorderIndex;
+        private final Integer topBorderIndex;
+
+        private EvaluatedRule(ConditionalFormattingRule rule, int cssIndex,
+                Integer leftBorderIndex, Integer topBorderIndex) {
+            this.rule = rule;
+            this.cssIndex = cssIndex;
+            this.leftBorderIndex = leftBorderIndex;
+            this.topBorderIndex = topBorderIndex;
+        }
+    }
+
+    /**
+     * A formatting that was evaluated on the last full pass, with the areas
+     * its rule formulas refer to.
+     */
+    private static class EvaluatedFormatting implements Serializable {
+        private final ConditionalFormatting cf;
+        private final List<EvaluatedRule> rules = new ArrayList<EvaluatedRule>();
+        private final Set<Integer> cssIndexes = new HashSet<Integer>();
+        private final Set<Integer> leftBorderIndexes = new HashSet<Integer>();
+        private final Set<Integer> topBorderIndexes = new HashSet<Integer>();
+        private final List<CellRangeAddress> precedents = new ArrayList<CellRangeAddress>();
+        private boolean isVolatile;
+
+        private EvaluatedFormatting(ConditionalFormatting cf) {
+            this.cf = cf;
+        }
+
+        private void addRule(EvaluatedRule evaluatedRule) {
+            rules.add(evaluatedRule);
+            cssIndexes.add(evaluatedRule.cssIndex);
+            if (evaluatedRule.leftBorderIndex != null) {
+                leftBorderIndexes.add(evaluatedRule.leftBorderIndex);
+            }
+            if (evaluatedRule.topBorderIndex != null) {
+                topBorderIndexes.add(evaluatedRule.topBorderIndex);
+            }
+        }
+
+        private boolean dependsOn(List<CellReference> cells) {
+            if (isVolatile) {
+                return true;
+            }
+            for (CellRangeAddress precedent : precedents) {
+                for (CellReference cell : cells) {
+                    if (precedent.isInRange(cell.getRow(), cell.getCol())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Constructs a new ConditionalFormatter targeting the given Spreadsheet.
      *
@@ -134,7 +269,7 @@ public class ConditionalFormatter implements Serializable {
      *         names)
      */
     public Set<Integer> getCellFormattingIndex(Cell cell) {
-        Set<Integer> index = cellToIndex.get(SpreadsheetUtil.toKey(cell));
+        Set<Integer> index = cellToIndex.get(SpreadsheetUtil.toLongKey(cell));
         return index;
     }
 
@@ -146,9 +281,9 @@ public class ConditionalFormatter implements Serializable {
 
         // make sure old styles are cleared
         if (cellToIndex != null) {
-            for (String key : cellToIndex.keySet()) {
-                int col = SpreadsheetUtil.getColumnIndexFromKey(key) - 1;
-                int row = SpreadsheetUtil.getRowFromKey(key) - 1;
+            for (long key : cellToIndex.keys()) {
+                int col = SpreadsheetUtil.getColumnIndexFromLongKey(key) - 1;
+                int row = SpreadsheetUtil.getRowFromLongKey(key) - 1;
                 Cell cell = spreadsheet.getCell(row, col);
                 if (cell != null) {
                     spreadsheet.markCellAsUpdated(cell, true);
@@ -159,6 +294,9 @@ public class ConditionalFormatter implements Serializable {
         cellToIndex.clear();
         topBorders.clear();
         leftBorders.clear();
+        WorkbookEvaluatorUtil.resetEvaluationCache(spreadsheet);
+        evaluatedFormattings = new ArrayList<EvaluatedFormatting>();
+        compiledFormulas = null;
         spreadsheet.getState().conditionalFormattingStyles = new HashMap<Integer, String>();
 
         SheetConditionalFormatting cfs = spreadsheet.getActiveSheet()
@@ -172,6 +310,9 @@ public class ConditionalFormatter implements Serializable {
 
         for (int i = 0; i < cfs.getNumConditionalFormattings(); i++) {
             ConditionalFormatting cf = cfs.getConditionalFormattingAt(i);
+            EvaluatedFormatting evaluatedFormatting = new EvaluatedFormatting(
+                    cf);
+            evaluatedFormattings.add(evaluatedFormatting);
 
             List<XSSFConditionalFormattingRule> cfRuleList = getOrderedRuleList(cf);
 
@@ -251,6 +392,10 @@ public class ConditionalFormatter implements Serializable {
                 spreadsheet.getState().conditionalFormattingStyles.put(
                         cssIndex, css.toString());
 
+                evaluatedFormatting.addRule(new EvaluatedRule(rule, cssIndex,
+                        leftBorders.get(cf), topBorders.get(cf)));
+                addPrecedents(evaluatedFormatting, rule);
+
                 // check actual cells
                 runCellMatcher(cf, rule, cssIndex);
 
@@ -263,6 +408,212 @@ public class ConditionalFormatter implements Serializable {
         }
     }
 
+    /**
+     * Re-evaluates the rules of the formattings affected by the given changed
+     * cells. A formatting is affected if one of its ranges contains a changed
+     * cell, in which case only the changed cells are re-matched, or if its
+     * rule formulas refer to a changed cell, in which case all of its cells
+     * are re-matched. Cells whose formatting changes are marked for update.
+     * <p>
+     * Falls back to {@link #createConditionalFormatterRules()} if the rules
+     * have not been evaluated yet or all cells may have changed.
+     *
+     * @param changedCellKeys
+     *            Packed keys of the changed cells, or <code>null</code> if all
+     *            cells of the sheet may have changed
+     */
+    public void updateConditionalFormatterRules(CellKeySet changedCellKeys) {
+        SheetConditionalFormatting cfs = spreadsheet.getActiveSheet()
+                .getSheetConditionalFormatting();
+        if (changedCellKeys == null || evaluatedFormattings == null) {
+            createConditionalFormatterRules();
+            return;
+        }
+        if (cfs instanceof HSSFSheetConditionalFormatting) {
+            // formatting disabled for HSSF
+            return;
+        }
+        if (evaluatedFormattings.size() != cfs.getNumConditionalFormattings()) {
+            // formattings have been added or removed
+            createConditionalFormatterRules();
+            return;
+        }
+        if (changedCellKeys.isEmpty()) {
+            return;
+        }
+        WorkbookEvaluatorUtil.resetEvaluationCache(spreadsheet);
+
+        List<CellReference> changedCells = new ArrayList<CellReference>();
+        for (long key : changedCellKeys.toArray()) {
+            changedCells.add(new CellReference(
+                    SpreadsheetUtil.getRowFromLongKey(key) - 1, SpreadsheetUtil
+                            .getColumnIndexFromLongKey(key) - 1));
+        }
+
+        for (EvaluatedFormatting evaluatedFormatting : evaluatedFormattings) {
+            CellRangeAddress[] ranges = evaluatedFormatting.cf
+                    .getFormattingRanges();
+            List<CellRangeAddress> areas;
+            if (evaluatedFormatting.dependsOn(changedCells)) {
+                areas = Arrays.asList(ranges);
+            } else {
+                areas = new ArrayList<CellRangeAddress>();
+                for (CellReference cell : changedCells) {
+                    for (CellRangeAddress range : ranges) {
+                        if (range.isInRange(cell.getRow(), cell.getCol())) {
+                            areas.add(new CellRangeAddress(cell.getRow(), cell
+                                    .getRow(), cell.getCol(), cell.getCol()));
+                            break;
+                        }
+                    }
+                }
+            }
+            if (!areas.isEmpty()) {
+                rematchCells(evaluatedFormatting, areas);
+            }
+        }
+    }
+
+    /**
+     * Clears the old matches of the given formatting from the given cells and
+     * runs the matcher again for them. Cells whose class names might have
+     * changed are marked for update.
+     */
+    private void rematchCells(EvaluatedFormatting evaluatedFormatting,
+            List<CellRangeAddress> areas) {
+        final CellRangeAddress[] ranges = evaluatedFormatting.cf
+                .getFormattingRanges();
+        final int firstColumn = ranges[0].getFirstColumn();
+        final int firstRow = ranges[0].getFirstRow();
+        final CellKeySet updatedKeys = new CellKeySet();
+
+        for (CellRangeAddress area : areas) {
+            for (int row = area.getFirstRow(); row <= area.getLastRow(); row++) {
+                for (int col = area.getFirstColumn(); col <= area
+                        .getLastColumn(); col++) {
+                    removeIndexes(SpreadsheetUtil.toLongKey(col + 1, row + 1),
+                            evaluatedFormatting.cssIndexes, updatedKeys);
+                    if (col != 0) {
+                        removeIndexes(SpreadsheetUtil.toLongKey(col, row + 1),
+                                evaluatedFormatting.leftBorderIndexes,
+                                updatedKeys);
+                    }
+                    if (row != 0) {
+                        removeIndexes(SpreadsheetUtil.toLongKey(col + 1, row),
+                                evaluatedFormatting.topBorderIndexes,
+                                updatedKeys);
+                    }
+                }
+            }
+        }
+
+        for (EvaluatedRule evaluatedRule : evaluatedFormatting.rules) {
+            for (CellRangeAddress area : areas) {
+                for (int row = area.getFirstRow(); row <= area.getLastRow(); row++) {
+                    for (int col = area.getFirstColumn(); col <= area
+                            .getLastColumn(); col++) {
+                        matchCell(evaluatedRule.rule, evaluatedRule.cssIndex,
+                                evaluatedRule.leftBorderIndex,
+                                evaluatedRule.topBorderIndex, row, col,
+                                firstRow, firstColumn, updatedKeys);
+                    }
+                }
+            }
+        }
+
+        for (long key : updatedKeys.toArray()) {
+            Cell cell = spreadsheet.getCell(
+                    SpreadsheetUtil.getRowFromLongKey(key) - 1,
+                    SpreadsheetUtil.getColumnIndexFromLongKey(key) - 1);
+            if (cell != null) {
+                spreadsheet.getCellValueManager().markCellForUpdate(cell);
+            }
+        }
+    }
+
+    private void removeIndexes(long key, Set<Integer> indexes,
+            CellKeySet updatedKeys) {
+        Set<Integer> cellIndexes = cellToIndex.get(key);
+        if (cellIndexes != null && cellIndexes.removeAll(indexes)) {
+            updatedKeys.add(key);
+            if (cellIndexes.isEmpty()) {
+                cellToIndex.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Collects the areas the formulas of the given rule refer to, taking into
+     * account that relative references are moved for each cell of the
+     * formatting ranges.
+     */
+    private void addPrecedents(EvaluatedFormatting evaluatedFormatting,
+            ConditionalFormattingRule rule) {
+        if (evaluatedFormatting.isVolatile) {
+            return;
+        }
+        CellRangeAddress[] ranges = evaluatedFormatting.cf
+                .getFormattingRanges();
+        int minDeltaRow = 0;
+        int maxDeltaRow = 0;
+        int minDeltaColumn = 0;
+        int maxDeltaColumn = 0;
+        for (CellRangeAddress range : ranges) {
+            minDeltaRow = Math.min(minDeltaRow, range.getFirstRow()
+                    - ranges[0].getFirstRow());
+            maxDeltaRow = Math.max(maxDeltaRow, range.getLastRow()
+                    - ranges[0].getFirstRow());
+            minDeltaColumn = Math.min(minDeltaColumn, range.getFirstColumn()
+                    - ranges[0].getFirstColumn());
+            maxDeltaColumn = Math.max(maxDeltaColumn, range.getLastColumn()
+                    - ranges[0].getFirstColumn());
+        }
+        List<Ptg[]> formulas = new ArrayList<Ptg[]>();
+        try {
+            if (rule.getFormula1() != null && !rule.getFormula1().isEmpty()) {
+                formulas.add(getCompiledFormula(rule).template);
+            }
+            if (rule.getFormula2() != null && !rule.getFormula2().isEmpty()) {
+                formulas.add(FormulaParser.parse(rule.getFormula2(),
+                        WorkbookEvaluatorUtil.getEvaluationWorkbook(spreadsheet),
+                        FormulaType.CELL, spreadsheet.getActiveSheetIndex()));
+            }
+        } catch (RuntimeException rte) {
+            LOGGER.log(Level.FINEST, rte.getMessage(), rte);
+            evaluatedFormatting.isVolatile = true;
+            return;
+        }
+        for (Ptg[] ptgs : formulas) {
+            for (Ptg ptg : ptgs) {
+                if (FormulaDependencyGraph.isVolatile(ptg)) {
+                    evaluatedFormatting.isVolatile = true;
+                    return;
+                } else if (ptg instanceof RefPtgBase) {
+                    RefPtgBase ref = (RefPtgBase) ptg;
+                    int firstRow = ref.getRow();
+                    int lastRow = ref.getRow();
+                    int firstColumn = ref.getColumn();
+                    int lastColumn = ref.getColumn();
+                    if (ref.isRowRelative()) {
+                        firstRow = Math.max(0, firstRow + minDeltaRow);
+                        lastRow += maxDeltaRow;
+                    }
+                    if (ref.isColRelative()) {
+                        firstColumn = Math.max(0, firstColumn + minDeltaColumn);
+                        lastColumn += maxDeltaColumn;
+                    }
+                    evaluatedFormatting.precedents.add(new CellRangeAddress(
+                            firstRow, lastRow, firstColumn, lastColumn));
+                } else if (ptg instanceof AreaPtgBase) {
+                    AreaPtgBase area = (AreaPtgBase) ptg;
+                    evaluatedFormatting.precedents.add(new CellRangeAddress(
+                            area.getFirstRow(), area.getLastRow(), area
+                                    .getFirstColumn(), area.getLastColumn()));
+                }
+            }
+        }
+    }
+
     /**
      * Get the common {@link FormulaEvaluator} instance from {@link Spreadsheet}
      */
@@ -545,73 +896,69 @@ public class ConditionalFormatter implements Serializable {
 
             for (int row = cra.getFirstRow(); row <= cra.getLastRow(); row++) {
                 for (int col = cra.getFirstColumn(); col <= cra.getLastColumn(); col++) {
+                    matchCell(rule, classNameIndex, leftBorders.get(cf),
+                            topBorders.get(cf), row, col, firstRow,
+                            firstColumn, null);
+                }
+            }
+        }
+    }
 
-                    Cell cell = spreadsheet.getCell(row, col);
-                    if (cell == null) {
-                        cell = spreadsheet.createCell(row, col, "");
+    /**
+     * Checks if the rule matches the cell at the given position, and adds the
+     * class name indexes to {@link #cellToIndex} if it does.
+     *
+     * @param updatedKeys
+     *            if not <code>null</code>, the keys of the cells that got new
+     *            indexes are added here
+     */
+    private void matchCell(ConditionalFormattingRule rule, int classNameIndex,
+            Integer leftBorderIndex, Integer topBorderIndex, int row, int col,
+            int firstRow, int firstColumn, CellKeySet updatedKeys) {
+        Cell cell = spreadsheet.getCell(row, col);
+        if (cell == null) {
+            cell = spreadsheet.createCell(row, col, "");
+        }
+        if (matches(cell, rule, col - firstColumn, row - firstRow)) {
+            addIndex(cell, classNameIndex, updatedKeys);
+
+            // if the rule contains borders, we need to add styles
+            // to other cells too
+            if (leftBorderIndex != null) {
+                // left border for col 0 isn't rendered
+                if (col != 0) {
+                    Cell cellToLeft = spreadsheet.getCell(row, col - 1);
+                    if (cellToLeft == null) {
+                        cellToLeft = spreadsheet.createCell(row, col - 1, "");
                     }
-                    if (matches(cell, rule, col - firstColumn, row
-                                    - firstRow)) {
-                        Set<Integer> list = cellToIndex.get(SpreadsheetUtil
-                                .toKey(cell));
-                        if (list == null) {
-                            list = new HashSet<Integer>();
-                            cellToIndex.put(SpreadsheetUtil.toKey(cell), list);
-                        }
-                        list.add(classNameIndex);
-
-                        // if the rule contains borders, we need to add styles
-                        // to other cells too
-                        if (leftBorders.containsKey(cf)) {
-                            int ruleIndex = leftBorders.get(cf);
-
-                            // left border for col 0 isn't rendered
-                            if (col != 0) {
-                                Cell cellToLeft = spreadsheet.getCell(row,
-                                        col - 1);
-                                if (cellToLeft == null) {
-                                    cellToLeft = spreadsheet.createCell(row,
-                                            col - 1, "");
-                                }
-                                list = cellToIndex.get(SpreadsheetUtil
-                                        .toKey(cellToLeft));
-                                if (list == null) {
-                                    list = new HashSet<Integer>();
-                                    cellToIndex.put(
-                                            SpreadsheetUtil.toKey(cellToLeft),
-                                            list);
-                                }
-                                list.add(ruleIndex);
-                            }
-                        }
-                        if (topBorders.containsKey(cf)) {
-                            int ruleIndex = topBorders.get(cf);
-
-                            // top border for row 0 isn't rendered
-                            if (row != 0) {
-                                Cell cellOnTop = spreadsheet.getCell(row - 1,
-                                        col);
-                                if (cellOnTop == null) {
-                                    cellOnTop = spreadsheet.createCell(row - 1,
-                                            col, "");
-                                }
-                                list = cellToIndex.get(SpreadsheetUtil
-                                        .toKey(cellOnTop));
-                                if (list == null) {
-                                    list = new HashSet<Integer>();
-                                    cellToIndex.put(
-                                            SpreadsheetUtil.toKey(cellOnTop),
-                                            list);
-                                }
-                                list.add(ruleIndex);
-                            }
-                        }
+                    addIndex(cellToLeft, leftBorderIndex, updatedKeys);
+                }
+            }
+            if (topBorderIndex != null) {
+                // top border for row 0 isn't rendered
+                if (row != 0) {
+                    Cell cellOnTop = spreadsheet.getCell(row - 1, col);
+                    if (cellOnTop == null) {
+                        cellOnTop = spreadsheet.createCell(row - 1, col, "");
                     }
+                    addIndex(cellOnTop, topBorderIndex, updatedKeys);
                 }
             }
         }
     }
 
+    private void addIndex(Cell cell, int index, CellKeySet updatedKeys) {
+        final long key = SpreadsheetUtil.toLongKey(cell);
+        Set<Integer> list = cellToIndex.get(key);
+        if (list == null) {
+            list = new HashSet<Integer>();
+            cellToIndex.put(key, list);
+        }
+        if (list.add(index) && updatedKeys != null) {
+            updatedKeys.add(key);
+        }
+    }
+
     /**
      * Checks if the given cell value matches the given conditional formatting
      * rule.
@@ -681,7 +1028,7 @@ public class ConditionalFormatter implements Serializable {
             return false;
         }
 
-        ValueEval eval = getValueEvalFromFormula(booleanFormula, cell, deltaColumn, deltaRow);
+        ValueEval eval = getValueEvalFromFormula(rule, cell, deltaColumn, deltaRow);
         
         if (eval instanceof ErrorEval){
             LOGGER.log(Level.FINEST, ((ErrorEval) eval).getErrorString(), eval);
@@ -698,26 +1045,30 @@ public class ConditionalFormatter implements Serializable {
         }
     }
 
-    private ValueEval getValueEvalFromFormula(String formula, Cell cell, int deltaColumn, int deltaRow) {
-        // Parse formula and use deltas to get relative cell references to work
-        // (#18702)
-        Ptg[] ptgs = FormulaParser.parse(formula, WorkbookEvaluatorUtil.getEvaluationWorkbook(spreadsheet),
-                FormulaType.CELL, spreadsheet.getActiveSheetIndex());
+    private ValueEval getValueEvalFromFormula(ConditionalFormattingRule rule,
+            Cell cell, int deltaColumn, int deltaRow) {
+        // Use deltas to get relative cell references to work (#18702)
+        Ptg[] ptgs = getCompiledFormula(rule).rebase(deltaColumn, deltaRow);
+        return WorkbookEvaluatorUtil.evaluate(spreadsheet, ptgs, cell);
+    }
 
-        for (Ptg ptg : ptgs) {
-            // base class for cell reference "things"
-            if (ptg instanceof RefPtgBase) {
-                RefPtgBase ref = (RefPtgBase) ptg;
-                // re-calculate cell references
-                if (ref.isColRelative()) {
-                    ref.setColumn(ref.getColumn() + deltaColumn);
-                }
-                if (ref.isRowRelative()) {
-                    ref.setRow(ref.getRow() + deltaRow);
-                }
-            }
+    /**
+     * Returns the parsed first formula of the given rule, parsing it if it
+     * has not been parsed during the current pass.
+     */
+    private CompiledFormula getCompiledFormula(ConditionalFormattingRule rule) {
+        if (compiledFormulas == null) {
+            compiledFormulas = new IdentityHashMap<ConditionalFormattingRule, CompiledFormula>();
         }
-        return WorkbookEvaluatorUtil.evaluate(spreadsheet, ptgs, cell);
+        CompiledFormula compiled = compiledFormulas.get(rule);
+        if (compiled == null) {
+            Ptg[] ptgs = FormulaParser.parse(rule.getFormula1(),
+                    WorkbookEvaluatorUtil.getEvaluationWorkbook(spreadsheet),
+                    FormulaType.CELL, spreadsheet.getActiveSheetIndex());
+            compiled = new CompiledFormula(ptgs);
+            compiledFormulas.put(rule, compiled);
+        }
+        return compiled;
     }
 
     /**
@@ -752,9 +1103,8 @@ public class ConditionalFormatter implements Serializable {
         boolean isFormulaNumericType = isFormulaType
                 && cell.getCachedFormulaResultType() == Cell.CELL_TYPE_NUMERIC;
 
-        String formula = rule.getFormula1();
         byte comparisonOperation = rule.getComparisonOperation();
-        ValueEval eval = getValueEvalFromFormula(formula, cell, deltaColumn, deltaRow);
+        ValueEval eval = getValueEvalFromFormula(rule, cell, deltaColumn, deltaRow);
         
         if (eval instanceof ErrorEval){
             LOGGER.log(Level.FINEST, ((ErrorEval) eval).getErrorString(), eval);
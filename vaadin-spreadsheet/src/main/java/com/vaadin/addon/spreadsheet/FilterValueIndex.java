@@ -0,0 +1,304 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet.CellValueChangeEvent;
+import com.vaadin.addon.spreadsheet.Spreadsheet.CellValueChangeListener;
+import com.vaadin.addon.spreadsheet.Spreadsheet.FormulaValueChangeEvent;
+import com.vaadin.addon.spreadsheet.Spreadsheet.FormulaValueChangeListener;
+
+/**
+ * Index of the formatted cell values in the columns of a
+ * {@link SpreadsheetFilterTable}. Each column is stored as one value id per
+ * row and a dictionary of the distinct formatted values, so that the filters
+ * can list the values of a column and find the rows of the selected values
+ * without formatting the cells again.
+ * <p>
+ * A column is indexed when it is first used. Cells reported by the value
+ * change events, or by {@link #cellsChanged(Collection)}, are formatted again
+ * the next time their column is used. When cell values change, the formula
+ * cells of the indexed columns are formatted again as well.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class FilterValueIndex implements CellValueChangeListener,
+        FormulaValueChangeListener {
+
+    private final Spreadsheet spreadsheet;
+    private final Sheet sheet;
+    private final int firstRow;
+    private final int lastRow;
+    private final Map<Integer, ColumnValues> columns = new HashMap<Integer, ColumnValues>();
+
+    /**
+     * Creates a new index for the given region. No columns are indexed yet.
+     *
+     * @param spreadsheet
+     *            Spreadsheet used for formatting the values
+     * @param sheet
+     *            Sheet of the region
+     * @param region
+     *            Indexed region, the header row excluded
+     */
+    FilterValueIndex(Spreadsheet spreadsheet, Sheet sheet,
+            CellRangeAddress region) {
+        this.spreadsheet = spreadsheet;
+        this.sheet = sheet;
+        firstRow = region.getFirstRow();
+        lastRow = region.getLastRow();
+    }
+
+    /**
+     * Gets the distinct formatted values of the given column.
+     *
+     * @param col
+     *            Column index, 0-based
+     * @return distinct values
+     */
+    Set<String> getValues(int col) {
+        ColumnValues column = getColumn(col);
+        Set<String> values = new HashSet<String>();
+        for (int id = 0; id < column.values.size(); id++) {
+            if (column.counts[id] > 0) {
+                values.add(column.values.get(id));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the distinct formatted values of the given column within the given
+     * rows.
+     *
+     * @param col
+     *            Column index, 0-based
+     * @param rows
+     *            Row indexes, 0-based
+     * @return distinct values
+     */
+    Set<String> getValues(int col, BitSet rows) {
+        ColumnValues column = getColumn(col);
+        boolean[] found = new boolean[column.values.size()];
+        Set<String> values = new HashSet<String>();
+        for (int r = rows.nextSetBit(firstRow); r >= 0 && r <= lastRow; r = rows
+                .nextSetBit(r + 1)) {
+            int id = column.rowValueIds[r - firstRow];
+            if (!found[id]) {
+                found[id] = true;
+                values.add(column.values.get(id));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the rows of the given column whose formatted value is one of the
+     * given values.
+     *
+     * @param col
+     *            Column index, 0-based
+     * @param values
+     *            Formatted values
+     * @return Row indexes, 0-based
+     */
+    BitSet getRows(int col, Collection<String> values) {
+        ColumnValues column = getColumn(col);
+        boolean[] selected = new boolean[column.values.size()];
+        for (String value : values) {
+            Integer id = column.ids.get(value);
+            if (id != null) {
+                selected[id] = true;
+            }
+        }
+        BitSet rows = new BitSet();
+        for (int i = 0; i < column.rowValueIds.length; i++) {
+            if (selected[column.rowValueIds[i]]) {
+                rows.set(firstRow + i);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Marks the given cells as changed. The formula cells of the indexed
+     * columns are also marked, as their values may depend on the changed
+     * cells.
+     *
+     * @param cells
+     *            Changed cells, or <code>null</code> if any cell may have
+     *            changed
+     */
+    void cellsChanged(Collection<Cell> cells) {
+        if (cells == null) {
+            columns.clear();
+            return;
+        }
+        for (Cell cell : cells) {
+            if (cell != null && cell.getSheet() == sheet) {
+                cellChanged(cell.getRowIndex(), cell.getColumnIndex());
+            }
+        }
+        formulasChanged();
+    }
+
+    @Override
+    public void onCellValueChange(CellValueChangeEvent event) {
+        cellReferencesChanged(event.getChangedCells());
+        // formula value events are only fired for the cells sent to the
+        // client, formulas outside the visible area may depend on the cells
+        formulasChanged();
+    }
+
+    @Override
+    public void onFormulaValueChange(FormulaValueChangeEvent event) {
+        cellReferencesChanged(event.getChangedCells());
+    }
+
+    private void cellReferencesChanged(Set<CellReference> cells) {
+        if (cells == null) {
+            return;
+        }
+        if (cells instanceof CellRangeSet) {
+            // mark whole ranges instead of iterating the cells
+            for (CellRangeAddress range : ((CellRangeSet) cells).getRanges()) {
+                rangeChanged(range);
+            }
+            return;
+        }
+        for (CellReference cell : cells) {
+            if (cell.getSheetName() == null
+                    || cell.getSheetName().equals(sheet.getSheetName())) {
+                cellChanged(cell.getRow(), cell.getCol());
+            }
+        }
+    }
+
+    private void formulasChanged() {
+        for (ColumnValues column : columns.values()) {
+            column.dirtyRows.or(column.formulaRows);
+        }
+    }
+
+    private void cellChanged(int row, int col) {
+        if (row >= firstRow && row <= lastRow) {
+            ColumnValues column = columns.get(col);
+            if (column != null) {
+                column.dirtyRows.set(row - firstRow);
+            }
+        }
+    }
+
+    private void rangeChanged(CellRangeAddress range) {
+        int first = Math.max(range.getFirstRow(), firstRow);
+        int last = Math.min(range.getLastRow(), lastRow);
+        if (first > last) {
+            return;
+        }
+        for (Map.Entry<Integer, ColumnValues> entry : columns.entrySet()) {
+            if (entry.getKey() >= range.getFirstColumn()
+                    && entry.getKey() <= range.getLastColumn()) {
+                entry.getValue().dirtyRows.set(first - firstRow,
+                        last - firstRow + 1);
+            }
+        }
+    }
+
+    private ColumnValues getColumn(int col) {
+        ColumnValues column = columns.get(col);
+        if (column == null) {
+            column = new ColumnValues(col);
+            columns.put(col, column);
+        } else {
+            column.refresh();
+        }
+        return column;
+    }
+
+    /**
+     * The formatted values of one column, as a value id for each row.
+     */
+    private class ColumnValues implements Serializable {
+
+        private final int col;
+        private final int[] rowValueIds;
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final ArrayList<String> values = new ArrayList<String>();
+        private int[] counts = new int[16];
+
+        /** Formula rows relative to the first row. */
+        private final BitSet formulaRows = new BitSet();
+
+        /** Rows to format again, relative to the first row. */
+        private final BitSet dirtyRows = new BitSet();
+
+        ColumnValues(int col) {
+            this.col = col;
+            rowValueIds = new int[lastRow - firstRow + 1];
+            for (int i = 0; i < rowValueIds.length; i++) {
+                rowValueIds[i] = getId(format(i));
+                counts[rowValueIds[i]]++;
+            }
+        }
+
+        private String format(int i) {
+            Cell cell = spreadsheet.getCell(firstRow + i, col, sheet);
+            formulaRows.set(i, cell != null
+                    && cell.getCellType() == Cell.CELL_TYPE_FORMULA);
+            return spreadsheet.getCellValue(cell);
+        }
+
+        private int getId(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+                if (id == counts.length) {
+                    counts = Arrays.copyOf(counts, id * 2);
+                }
+            }
+            return id;
+        }
+
+        void refresh() {
+            for (int i = dirtyRows.nextSetBit(0); i >= 0; i = dirtyRows
+                    .nextSetBit(i + 1)) {
+                counts[rowValueIds[i]]--;
+                rowValueIds[i] = getId(format(i));
+                counts[rowValueIds[i]]++;
+            }
+            dirtyRows.clear();
+        }
+    }
+}
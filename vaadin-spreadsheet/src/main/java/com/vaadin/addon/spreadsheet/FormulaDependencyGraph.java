@@ -0,0 +1,381 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.WorkbookEvaluatorUtil;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.Area3DPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.ss.formula.ptg.Ref3DPtg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * FormulaDependencyGraph keeps track of the cells referenced by the formula
+ * cells of the active sheet. It is used by {@link CellValueManager} to find
+ * the formula cells that need to be re-evaluated after some cells have
+ * changed, instead of re-evaluating every cell of the sheet.
+ * <p>
+ * The graph is built from the parsed formula tokens. Formulas that cannot be
+ * resolved to references within the sheet (references to other sheets, named
+ * ranges, volatile functions like NOW or INDIRECT) are considered volatile and
+ * are always re-evaluated.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class FormulaDependencyGraph implements Serializable {
+
+    private static final Logger LOGGER = Logger
+            .getLogger(FormulaDependencyGraph.class.getName());
+
+    /**
+     * Areas spanning at most this many columns are indexed by column, wider
+     * areas are kept in a separate list that is always scanned.
+     */
+    private static final int MAX_INDEXED_AREA_COLUMNS = 16;
+
+    private static final long[] NO_KEYS = new long[0];
+
+    private static final Set<String> VOLATILE_FUNCTIONS = new HashSet<String>(
+            Arrays.asList("CELL", "INDIRECT", "INFO", "NOW", "OFFSET",
+                    "RAND", "RANDBETWEEN", "TODAY"));
+
+    /**
+     * An area referenced by a formula cell. Identity equality is used on
+     * purpose, so that the exact instance can be removed from the indexes.
+     */
+    private static class AreaDependent implements Serializable {
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstColumn;
+        private final int lastColumn;
+        private final long formulaKey;
+
+        private AreaDependent(AreaPtgBase area, long formulaKey) {
+            firstRow = area.getFirstRow();
+            lastRow = area.getLastRow();
+            firstColumn = area.getFirstColumn();
+            lastColumn = area.getLastColumn();
+            this.formulaKey = formulaKey;
+        }
+
+        private boolean contains(int row, int column) {
+            return row >= firstRow && row <= lastRow && column >= firstColumn
+                    && column <= lastColumn;
+        }
+
+        private boolean isIndexedByColumn() {
+            return lastColumn - firstColumn < MAX_INDEXED_AREA_COLUMNS;
+        }
+    }
+
+    /**
+     * The references of a single formula cell.
+     */
+    private static class Precedents implements Serializable {
+        private final CellKeySet cellKeys = new CellKeySet();
+        private final List<AreaDependent> areas = new ArrayList<AreaDependent>();
+        private boolean isVolatile;
+    }
+
+    private final Spreadsheet spreadsheet;
+
+    private transient FormulaParsingWorkbook parsingWorkbook;
+
+    private boolean valid;
+
+    /** Formula cell key -> references of that formula */
+    private final CellKeyMap<Precedents> precedents = new CellKeyMap<Precedents>();
+
+    /** Cell key -> keys of the formula cells referencing the cell directly */
+    private final CellKeyMap<CellKeySet> cellDependents = new CellKeyMap<CellKeySet>();
+
+    /** Column index, 0-based -> narrow areas overlapping that column */
+    private final HashMap<Integer, Set<AreaDependent>> columnAreaDependents = new HashMap<Integer, Set<AreaDependent>>();
+
+    private final Set<AreaDependent> wideAreaDependents = new HashSet<AreaDependent>();
+
+    private final CellKeySet volatileCells = new CellKeySet();
+
+    /**
+     * Creates a new dependency graph for the given Spreadsheet.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     */
+    FormulaDependencyGraph(Spreadsheet spreadsheet) {
+        this.spreadsheet = spreadsheet;
+    }
+
+    /**
+     * Returns whether the graph is in sync with the active sheet. An invalid
+     * graph must be rebuilt by calling {@link #update(Cell)} for every formula
+     * cell of the sheet followed by {@link #setValid()}.
+     *
+     * @return true if the graph can be used for finding dependents
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Marks the graph as being in sync with the active sheet.
+     */
+    void setValid() {
+        valid = true;
+    }
+
+    /**
+     * Clears the graph and marks it invalid. Should be called whenever the
+     * formulas of the sheet may have changed without the cells being marked,
+     * e.g. when rows are shifted or the active sheet changes.
+     */
+    void invalidate() {
+        precedents.clear();
+        cellDependents.clear();
+        columnAreaDependents.clear();
+        wideAreaDependents.clear();
+        volatileCells.clear();
+        parsingWorkbook = null;
+        valid = false;
+    }
+
+    /**
+     * Updates the references for the given cell. If the cell is not a formula
+     * cell any more, its old references are removed.
+     *
+     * @param cell
+     *            Target cell
+     */
+    void update(Cell cell) {
+        final long key = SpreadsheetUtil.toLongKey(cell);
+        remove(key);
+        if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return;
+        }
+        Precedents formulaPrecedents = new Precedents();
+        try {
+            Workbook workbook = cell.getSheet().getWorkbook();
+            Ptg[] ptgs = FormulaParser.parse(cell.getCellFormula(),
+                    getParsingWorkbook(), FormulaType.CELL,
+                    workbook.getSheetIndex(cell.getSheet()));
+            for (Ptg ptg : ptgs) {
+                addPrecedent(formulaPrecedents, ptg, key);
+            }
+        } catch (RuntimeException rte) {
+            LOGGER.log(Level.FINEST, rte.getMessage(), rte);
+            formulaPrecedents.isVolatile = true;
+        }
+        addPrecedents(key, formulaPrecedents);
+    }
+
+    /**
+     * Removes all references of the cell with the given key.
+     *
+     * @param key
+     *            Packed key of the target cell
+     */
+    void remove(long key) {
+        Precedents old = precedents.remove(key);
+        if (old == null) {
+            return;
+        }
+        for (long cellKey : old.cellKeys.toArray()) {
+            CellKeySet dependents = cellDependents.get(cellKey);
+            if (dependents != null) {
+                dependents.remove(key);
+                if (dependents.isEmpty()) {
+                    cellDependents.remove(cellKey);
+                }
+            }
+        }
+        for (AreaDependent area : old.areas) {
+            if (area.isIndexedByColumn()) {
+                for (int c = area.firstColumn; c <= area.lastColumn; c++) {
+                    Set<AreaDependent> areas = columnAreaDependents.get(c);
+                    if (areas != null) {
+                        areas.remove(area);
+                        if (areas.isEmpty()) {
+                            columnAreaDependents.remove(c);
+                        }
+                    }
+                }
+            } else {
+                wideAreaDependents.remove(area);
+            }
+        }
+        volatileCells.remove(key);
+    }
+
+    /**
+     * Returns the keys of all formula cells that depend directly or
+     * transitively on any of the given cells, including all volatile formula
+     * cells. The given cells themselves are not included unless they are part
+     * of a reference cycle or volatile.
+     *
+     * @param changedKeys
+     *            Packed keys of the changed cells
+     * @return Packed keys of the formula cells that need to be re-evaluated
+     */
+    CellKeySet getDependents(CellKeySet changedKeys) {
+        CellKeySet result = new CellKeySet(volatileCells);
+        CellKeySet visited = new CellKeySet(changedKeys);
+        long[] stack = changedKeys.toArray();
+        int size = stack.length;
+        while (size > 0) {
+            long key = stack[--size];
+            for (long dependent : getDirectDependents(key)) {
+                result.add(dependent);
+                if (visited.add(dependent)) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = dependent;
+                }
+            }
+        }
+        return result;
+    }
+
+    private long[] getDirectDependents(long key) {
+        CellKeySet direct = cellDependents.get(key);
+        int row = SpreadsheetUtil.getRowFromLongKey(key) - 1;
+        int column = SpreadsheetUtil.getColumnIndexFromLongKey(key) - 1;
+        Set<AreaDependent> columnAreas = columnAreaDependents.get(column);
+        if (columnAreas == null && wideAreaDependents.isEmpty()) {
+            return direct == null ? NO_KEYS : direct.toArray();
+        }
+        CellKeySet dependents = direct == null ? new CellKeySet()
+                : new CellKeySet(direct);
+        if (columnAreas != null) {
+            for (AreaDependent area : columnAreas) {
+                if (area.contains(row, column)) {
+                    dependents.add(area.formulaKey);
+                }
+            }
+        }
+        for (AreaDependent area : wideAreaDependents) {
+            if (area.contains(row, column)) {
+                dependents.add(area.formulaKey);
+            }
+        }
+        return dependents.toArray();
+    }
+
+    private void addPrecedent(Precedents formulaPrecedents, Ptg ptg,
+            long key) {
+        if (isVolatile(ptg)) {
+            formulaPrecedents.isVolatile = true;
+        } else if (ptg instanceof RefPtgBase) {
+            RefPtgBase ref = (RefPtgBase) ptg;
+            formulaPrecedents.cellKeys.add(SpreadsheetUtil.toLongKey(
+                    ref.getColumn() + 1, ref.getRow() + 1));
+        } else if (ptg instanceof AreaPtgBase) {
+            formulaPrecedents.areas.add(new AreaDependent((AreaPtgBase) ptg,
+                    key));
+        }
+    }
+
+    /**
+     * Checks whether the given formula token makes the formula depend on
+     * something else than the cells of its own sheet, e.g. other sheets, named
+     * ranges or the current time.
+     *
+     * @param ptg
+     *            Formula token to check
+     * @return true if the dependencies of the token cannot be tracked
+     */
+    static boolean isVolatile(Ptg ptg) {
+        if (ptg instanceof Ref3DPtg || ptg instanceof Area3DPtg
+                || ptg instanceof Pxg || ptg instanceof NamePtg
+                || ptg instanceof NameXPtg) {
+            // may point anywhere
+            return true;
+        }
+        if (ptg instanceof AbstractFunctionPtg) {
+            AbstractFunctionPtg function = (AbstractFunctionPtg) ptg;
+            return function.isExternalFunction()
+                    || VOLATILE_FUNCTIONS.contains(function.getName());
+        }
+        return false;
+    }
+
+    private void addPrecedents(long key, Precedents formulaPrecedents) {
+        precedents.put(key, formulaPrecedents);
+        for (long cellKey : formulaPrecedents.cellKeys.toArray()) {
+            CellKeySet dependents = cellDependents.get(cellKey);
+            if (dependents == null) {
+                dependents = new CellKeySet();
+                cellDependents.put(cellKey, dependents);
+            }
+            dependents.add(key);
+        }
+        for (AreaDependent area : formulaPrecedents.areas) {
+            if (area.isIndexedByColumn()) {
+                for (int c = area.firstColumn; c <= area.lastColumn; c++) {
+                    Set<AreaDependent> areas = columnAreaDependents.get(c);
+                    if (areas == null) {
+                        areas = new HashSet<AreaDependent>();
+                        columnAreaDependents.put(c, areas);
+                    }
+                    areas.add(area);
+                }
+            } else {
+                wideAreaDependents.add(area);
+            }
+        }
+        if (formulaPrecedents.isVolatile) {
+            volatileCells.add(key);
+        }
+    }
+
+    private FormulaParsingWorkbook getParsingWorkbook() {
+        if (parsingWorkbook == null) {
+            Workbook workbook = spreadsheet.getWorkbook();
+            if (workbook instanceof HSSFWorkbook) {
+                parsingWorkbook = HSSFEvaluationWorkbook
+                        .create((HSSFWorkbook) workbook);
+            } else {
+                parsingWorkbook = WorkbookEvaluatorUtil
+                        .getEvaluationWorkbook(spreadsheet);
+            }
+        }
+        return parsingWorkbook;
+    }
+}
@@ -0,0 +1,203 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaRenderingWorkbook;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.WorkbookEvaluatorUtil;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * A parsed formula that is moved to other cells by copying and moving only
+ * its relative references. Used when the same formula is copied or moved to
+ * many cells, so that it is parsed only once.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class FormulaTemplate implements Serializable {
+
+    private static final Logger LOGGER = Logger
+            .getLogger(FormulaTemplate.class.getName());
+
+    private final Ptg[] template;
+    private final int[] relativeRefIndexes;
+    private final FormulaRenderingWorkbook renderingWorkbook;
+    private final SpreadsheetVersion version;
+
+    private FormulaTemplate(Ptg[] template,
+            FormulaRenderingWorkbook renderingWorkbook,
+            SpreadsheetVersion version) {
+        this.template = template;
+        this.renderingWorkbook = renderingWorkbook;
+        this.version = version;
+        int[] indexes = new int[template.length];
+        int count = 0;
+        for (int i = 0; i < template.length; i++) {
+            if (template[i] instanceof RefPtgBase) {
+                RefPtgBase ref = (RefPtgBase) template[i];
+                if (ref.isColRelative() || ref.isRowRelative()) {
+                    indexes[count++] = i;
+                }
+            } else if (template[i] instanceof AreaPtgBase) {
+                AreaPtgBase area = (AreaPtgBase) template[i];
+                if (area.isFirstColRelative() || area.isLastColRelative()
+                        || area.isFirstRowRelative()
+                        || area.isLastRowRelative()) {
+                    indexes[count++] = i;
+                }
+            }
+        }
+        relativeRefIndexes = Arrays.copyOf(indexes, count);
+    }
+
+    /**
+     * Creates the workbook used for parsing the formulas of the given
+     * Spreadsheet. The same workbook can be used for parsing many formulas.
+     *
+     * @param spreadsheet
+     *            Source Spreadsheet
+     * @return parsing workbook, also a {@link FormulaRenderingWorkbook}
+     */
+    static FormulaParsingWorkbook createParsingWorkbook(Spreadsheet spreadsheet) {
+        Workbook workbook = spreadsheet.getWorkbook();
+        if (workbook instanceof HSSFWorkbook) {
+            return HSSFEvaluationWorkbook.create((HSSFWorkbook) workbook);
+        } else {
+            return WorkbookEvaluatorUtil.getEvaluationWorkbook(spreadsheet);
+        }
+    }
+
+    /**
+     * Parses the formula of the given cell.
+     *
+     * @param spreadsheet
+     *            Source Spreadsheet
+     * @param cell
+     *            Formula cell
+     * @param parsingWorkbook
+     *            Workbook from {@link #createParsingWorkbook(Spreadsheet)}
+     * @return the parsed formula, or <code>null</code> if it can't be parsed
+     */
+    static FormulaTemplate parse(Spreadsheet spreadsheet, Cell cell,
+            FormulaParsingWorkbook parsingWorkbook) {
+        try {
+            Workbook workbook = spreadsheet.getWorkbook();
+            Ptg[] ptgs = FormulaParser.parse(cell.getCellFormula(),
+                    parsingWorkbook, FormulaType.CELL,
+                    workbook.getSheetIndex(cell.getSheet()));
+            return new FormulaTemplate(ptgs,
+                    (FormulaRenderingWorkbook) parsingWorkbook,
+                    workbook instanceof HSSFWorkbook ? SpreadsheetVersion.EXCEL97
+                            : SpreadsheetVersion.EXCEL2007);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINEST, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the formula with the relative references moved by the given
+     * deltas, or <code>null</code> if a reference would move outside the
+     * sheet.
+     *
+     * @param deltaColumn
+     *            Amount of columns to move the references
+     * @param deltaRow
+     *            Amount of rows to move the references
+     * @return moved formula, or <code>null</code>
+     */
+    String toFormula(int deltaColumn, int deltaRow) {
+        Ptg[] ptgs = template.clone();
+        for (int i : relativeRefIndexes) {
+            if (template[i] instanceof RefPtgBase) {
+                RefPtgBase ref = (RefPtgBase) ((RefPtgBase) template[i]).copy();
+                int column = ref.getColumn()
+                        + (ref.isColRelative() ? deltaColumn : 0);
+                int row = ref.getRow() + (ref.isRowRelative() ? deltaRow : 0);
+                if (!isValid(row, column)) {
+                    return null;
+                }
+                ref.setColumn(column);
+                ref.setRow(row);
+                ptgs[i] = ref;
+            } else {
+                AreaPtgBase area = (AreaPtgBase) ((AreaPtgBase) template[i])
+                        .copy();
+                // whole column and whole row references stay as they are
+                boolean wholeColumn = area.getFirstRow() == 0
+                        && area.getLastRow() == version.getLastRowIndex();
+                boolean wholeRow = area.getFirstColumn() == 0
+                        && area.getLastColumn() == version.getLastColumnIndex();
+                int columnDelta = wholeRow ? 0 : deltaColumn;
+                int rowDelta = wholeColumn ? 0 : deltaRow;
+                int firstColumn = area.getFirstColumn()
+                        + (area.isFirstColRelative() ? columnDelta : 0);
+                int lastColumn = area.getLastColumn()
+                        + (area.isLastColRelative() ? columnDelta : 0);
+                int firstRow = area.getFirstRow()
+                        + (area.isFirstRowRelative() ? rowDelta : 0);
+                int lastRow = area.getLastRow()
+                        + (area.isLastRowRelative() ? rowDelta : 0);
+                if (!isValid(firstRow, firstColumn)
+                        || !isValid(lastRow, lastColumn)) {
+                    return null;
+                }
+                area.setFirstColumn(firstColumn);
+                area.setLastColumn(lastColumn);
+                area.setFirstRow(firstRow);
+                area.setLastRow(lastRow);
+                ptgs[i] = area;
+            }
+        }
+        return FormulaRenderer.toFormulaString(renderingWorkbook, ptgs);
+    }
+
+    /**
+     * Returns whether the formula is rendered as the given text when its
+     * references are not moved.
+     *
+     * @param formula
+     *            Formula text without the leading '='
+     * @return <code>true</code> if the rendered formula equals the given text
+     */
+    boolean isRenderedAs(String formula) {
+        return formula.equals(FormulaRenderer.toFormulaString(
+                renderingWorkbook, template));
+    }
+
+    private boolean isValid(int row, int column) {
+        return row >= 0 && row <= version.getLastRowIndex() && column >= 0
+                && column <= version.getLastColumnIndex();
+    }
+}
@@ -17,7 +17,10 @@ package com.vaadin.addon.spreadsheet;
  * #L%
  */
 
+import java.io.Serializable;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -25,6 +28,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.poi.ss.util.CellRangeAddress;
@@ -64,7 +68,7 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
     private boolean firstUpdate = true;
     private boolean cancelValueChangeUpdate;
     private SpreadsheetFilterTable filterTable;
-    private Set<Integer> filteredRows;
+    private BitSet filteredRows;
 
     /**
      * Constructs a new item filter for the given spreadsheet, filtering range,
@@ -87,7 +91,7 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
         this.filterTable = filterTable;
 
         allCellValues = new ArrayList<>();
-        filteredRows = new HashSet<>();
+        filteredRows = new BitSet();
         latestFilteredValues = new LinkedHashSet<>();
         initComponents();
         updateOptions();
@@ -261,14 +265,12 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
      *         column
      */
     protected Set<String> getVisibleValues() {
-        Set<String> values = new HashSet<>();
-        for (int r = filterRange.getFirstRow(); r <= filterRange.getLastRow(); r++) {
-            if (!filteredRows.contains(r) && !spreadsheet.isRowHidden(r)) {
-                values.add(spreadsheet.getCellValue(spreadsheet.getCell(r,
-                        filterRange.getFirstColumn())));
-            }
-        }
-        return values;
+        BitSet visibleRows = new BitSet();
+        visibleRows.set(filterRange.getFirstRow(), filterRange.getLastRow() + 1);
+        visibleRows.andNot(filteredRows);
+        visibleRows.andNot(spreadsheet.getHiddenRows());
+        return filterTable.getValueIndex().getValues(
+                filterRange.getFirstColumn(), visibleRows);
     }
 
     /**
@@ -277,12 +279,8 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
      * @return All unique values within this column
      */
     protected Set<String> getAllValues() {
-        Set<String> values = new HashSet<>();
-        for (int r = filterRange.getFirstRow(); r <= filterRange.getLastRow(); r++) {
-            values.add(spreadsheet.getCellValue(spreadsheet.getCell(r,
-                    filterRange.getFirstColumn())));
-        }
-        return values;
+        return filterTable.getValueIndex().getValues(
+                filterRange.getFirstColumn());
     }
 
     /**
@@ -292,21 +290,42 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
      *            the values that are NOT filtered
      */
     protected void updateFilteredItems(Collection<String> visibleValues) {
-        filteredRows.clear();
-        for (int r = filterRange.getFirstRow(); r <= filterRange.getLastRow(); r++) {
-            String cellValue = spreadsheet.getCellValue(spreadsheet.getCell(r,
-                    filterRange.getFirstColumn()));
-            if (!visibleValues.contains(cellValue)) {
-                filteredRows.add(new Integer(r));
-            }
-        }
+        setFilteredRows(visibleValues);
         latestFilteredValues = new ArrayList<>(visibleValues);
 
         filterTable.onFiltersUpdated();
     }
 
+    /**
+     * Computes the filtered rows again for the current cell values, e.g.
+     * after the rows have been sorted. Does not update the filter table.
+     */
+    void reapplyFilter() {
+        if (!filteredRows.isEmpty()) {
+            setFilteredRows(latestFilteredValues);
+        }
+    }
+
+    private void setFilteredRows(Collection<String> visibleValues) {
+        BitSet visibleRows = filterTable.getValueIndex().getRows(
+                filterRange.getFirstColumn(), visibleValues);
+        filteredRows.clear();
+        filteredRows.set(filterRange.getFirstRow(),
+                filterRange.getLastRow() + 1);
+        filteredRows.andNot(visibleRows);
+    }
+
+    /**
+     * Returns the filtered rows as an unmodifiable view of
+     * {@link #getFilteredRowBits()}.
+     */
     @Override
     public Set<Integer> getFilteredRows() {
+        return new RowSet(filteredRows);
+    }
+
+    @Override
+    public BitSet getFilteredRowBits() {
         return filteredRows;
     }
 
@@ -319,4 +338,60 @@ public class ItemFilter extends Panel implements SpreadsheetFilter {
         filteredRows.clear();
         cancelValueChangeUpdate = false;
     }
+
+    /**
+     * Unmodifiable set view of the row indexes in a bit set.
+     */
+    private static class RowSet extends AbstractSet<Integer> implements
+            Serializable {
+
+        private final BitSet rows;
+
+        RowSet(BitSet rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && (Integer) o >= 0
+                    && rows.get((Integer) o);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return rows.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return rows.cardinality();
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new RowIterator();
+        }
+
+        /**
+         * Iterates the set bits in ascending order.
+         */
+        private class RowIterator implements Iterator<Integer>, Serializable {
+            private int next = rows.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                int row = next;
+                next = rows.nextSetBit(row + 1);
+                return row;
+            }
+        }
+    }
 }
@@ -0,0 +1,210 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Compact storage for the formatted cell values of a sheet that has been
+ * loaded in read-only mode, see {@link Spreadsheet#readStreaming(java.io.File)}.
+ * The values are stored by column, each column holding a sorted array of row
+ * indexes and the matching values, so that only the populated cells take
+ * memory.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class ReadOnlyCellStore implements Serializable {
+
+    private static final int INITIAL_COLUMN_CAPACITY = 16;
+
+    /**
+     * The populated cells of a single column.
+     */
+    private static class Column implements Serializable {
+        /** Row indexes, 0-based, in ascending order */
+        private int[] rows = new int[INITIAL_COLUMN_CAPACITY];
+        private String[] values = new String[INITIAL_COLUMN_CAPACITY];
+        private int size;
+
+        private void add(int row, String value) {
+            if (size > 0 && rows[size - 1] >= row) {
+                // cells should come in row order, replace or insert
+                int index = Arrays.binarySearch(rows, 0, size, row);
+                if (index >= 0) {
+                    values[index] = value;
+                    return;
+                }
+                insert(-index - 1, row, value);
+                return;
+            }
+            insert(size, row, value);
+        }
+
+        private void insert(int index, int row, String value) {
+            if (size == rows.length) {
+                int capacity = Math.max(size * 2, INITIAL_COLUMN_CAPACITY);
+                rows = Arrays.copyOf(rows, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            rows[index] = row;
+            values[index] = value;
+            size++;
+        }
+
+        private void trim() {
+            rows = Arrays.copyOf(rows, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private final String sheetName;
+
+    private Column[] columns = new Column[0];
+
+    private int rowCount;
+
+    /**
+     * Creates a new empty store for the sheet with the given name.
+     *
+     * @param sheetName
+     *            Name of the sheet
+     */
+    ReadOnlyCellStore(String sheetName) {
+        this.sheetName = sheetName;
+    }
+
+    /**
+     * Returns the name of the sheet the values belong to.
+     *
+     * @return sheet name
+     */
+    String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * Sets the formatted value of the given cell. Adding the cells in row
+     * order is the fastest.
+     *
+     * @param row
+     *            Row index, 0-based
+     * @param col
+     *            Column index, 0-based
+     * @param value
+     *            Formatted value
+     */
+    void setValue(int row, int col, String value) {
+        if (col >= columns.length) {
+            columns = Arrays.copyOf(columns,
+                    Math.max(col + 1, columns.length * 2));
+        }
+        Column column = columns[col];
+        if (column == null) {
+            column = new Column();
+            columns[col] = column;
+        }
+        column.add(row, value);
+        if (row >= rowCount) {
+            rowCount = row + 1;
+        }
+    }
+
+    /**
+     * Releases the unused capacity once all values have been added.
+     */
+    void trim() {
+        int columnCount = getColumnCount();
+        columns = Arrays.copyOf(columns, columnCount);
+        for (Column column : columns) {
+            if (column != null) {
+                column.trim();
+            }
+        }
+    }
+
+    /**
+     * Returns the formatted value of the given cell.
+     *
+     * @param row
+     *            Row index, 0-based
+     * @param col
+     *            Column index, 0-based
+     * @return the value, or <code>null</code> if the cell is empty
+     */
+    String getValue(int row, int col) {
+        if (col < 0 || col >= columns.length || columns[col] == null) {
+            return null;
+        }
+        Column column = columns[col];
+        int index = Arrays.binarySearch(column.rows, 0, column.size, row);
+        return index < 0 ? null : column.values[index];
+    }
+
+    /**
+     * Returns the rows of the populated cells of the given column within the
+     * given rows, in ascending order.
+     *
+     * @param col
+     *            Column index, 0-based
+     * @param firstRow
+     *            First row index, 0-based
+     * @param lastRow
+     *            Last row index, 0-based
+     * @return row indexes, 0-based
+     */
+    int[] getPopulatedRows(int col, int firstRow, int lastRow) {
+        if (col < 0 || col >= columns.length || columns[col] == null) {
+            return new int[0];
+        }
+        Column column = columns[col];
+        int from = Arrays.binarySearch(column.rows, 0, column.size, firstRow);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = Arrays.binarySearch(column.rows, 0, column.size, lastRow);
+        to = to < 0 ? -to - 1 : to + 1;
+        return from < to ? Arrays.copyOfRange(column.rows, from, to)
+                : new int[0];
+    }
+
+    /**
+     * Returns the number of rows up to the last populated row.
+     *
+     * @return row count
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of columns up to the last populated column.
+     *
+     * @return column count
+     */
+    int getColumnCount() {
+        int count = columns.length;
+        while (count > 0 && columns[count - 1] == null) {
+            count--;
+        }
+        return count;
+    }
+}
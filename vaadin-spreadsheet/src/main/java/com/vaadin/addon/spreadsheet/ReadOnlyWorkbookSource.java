@@ -0,0 +1,94 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.InvalidOperationException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.IOUtils;
+
+/**
+ * The XLSX package of a workbook loaded in read-only mode, see
+ * {@link Spreadsheet#readStreaming(File)}. The sheets are parsed from the
+ * package only when they are first shown, so the package is kept either as
+ * the source file or as the compressed content of the source stream.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class ReadOnlyWorkbookSource implements Serializable {
+
+    private final File file;
+
+    private final byte[] content;
+
+    /**
+     * Creates a source that reads the package from the given file whenever it
+     * is opened.
+     *
+     * @param file
+     *            XLSX file
+     */
+    ReadOnlyWorkbookSource(File file) {
+        this.file = file;
+        content = null;
+    }
+
+    /**
+     * Creates a source that keeps the compressed content of the given stream
+     * in memory. The stream is read fully, but not closed.
+     *
+     * @param inputStream
+     *            Stream with XLSX content
+     * @throws IOException
+     *             If reading the stream fails
+     */
+    ReadOnlyWorkbookSource(InputStream inputStream) throws IOException {
+        file = null;
+        content = IOUtils.toByteArray(inputStream);
+    }
+
+    /**
+     * Opens the package for reading. The caller must close the package with
+     * {@link OPCPackage#revert()}.
+     *
+     * @return the opened package
+     * @throws IOException
+     *             If the package can't be read, or is of an invalid format
+     */
+    OPCPackage open() throws IOException {
+        try {
+            if (file != null) {
+                return OPCPackage.open(file, PackageAccess.READ);
+            }
+            return OPCPackage.open(new ByteArrayInputStream(content));
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid file format.", e);
+        } catch (InvalidOperationException e) {
+            // thrown e.g. when the file no longer exists
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
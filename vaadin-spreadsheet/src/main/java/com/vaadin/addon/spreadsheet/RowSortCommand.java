@@ -0,0 +1,81 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import com.vaadin.addon.spreadsheet.command.SpreadsheetCommand;
+
+/**
+ * Command for undoing and redoing the sort of a range of rows. Only the row
+ * permutation of the sort is stored; executing the command moves the rows
+ * with the inverse of the permutation that was applied last.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class RowSortCommand extends SpreadsheetCommand {
+
+    private final CellRangeAddress range;
+    private int[] order;
+
+    /**
+     * Creates a new command for a sort that has been done.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param range
+     *            Range of the sorted rows
+     * @param order
+     *            For each target row, the source row of the sort, relative to
+     *            the first row of the range
+     */
+    RowSortCommand(Spreadsheet spreadsheet, CellRangeAddress range,
+            int[] order) {
+        super(spreadsheet);
+        this.range = range;
+        this.order = order;
+    }
+
+    @Override
+    public void execute() {
+        final int[] inverse = new int[order.length];
+        for (int t = 0; t < order.length; t++) {
+            inverse[order[t]] = t;
+        }
+        spreadsheet.permuteRows(range, inverse);
+        order = inverse;
+    }
+
+    @Override
+    public CellReference getSelectedCellReference() {
+        return null;
+    }
+
+    @Override
+    public CellRangeAddress getPaintedCellRange() {
+        return null;
+    }
+
+    @Override
+    public long getEstimatedMemoryUsage() {
+        return 64 + 4L * order.length;
+    }
+}
@@ -0,0 +1,324 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Sorts the rows of a cell range by the values in one of its columns. The
+ * sort keys of the column are read once into primitive arrays and a row
+ * permutation is computed from them. The cells of the range are then moved
+ * to their new rows one column at a time, and the relative references of the
+ * moved formulas are moved with them. Cells outside the range, comments and
+ * hyperlinks are not moved. The same permutation, or its inverse, can be
+ * applied again for redoing or undoing the sort.
+ * <p>
+ * As in Excel, numbers (and dates) are sorted before text, text before
+ * boolean values and boolean values before errors; the order is reversed for
+ * a descending sort. Blank cells are always sorted last.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class RowSorter implements Serializable {
+
+    private static final Logger LOGGER = Logger.getLogger(RowSorter.class
+            .getName());
+
+    private static final byte NUMBER = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte ERROR = 3;
+    private static final byte BLANK = 4;
+
+    /** Capture type for positions without a cell. */
+    private static final int NO_CELL = -1;
+
+    private final Spreadsheet spreadsheet;
+    private final Sheet sheet;
+    private final CellRangeAddress range;
+    private final int rowCount;
+    private transient FormulaParsingWorkbook parsingWorkbook;
+
+    /**
+     * Creates a new sorter for the given range.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param sheet
+     *            Sheet of the range
+     * @param range
+     *            Range of the rows to sort, without header rows
+     */
+    RowSorter(Spreadsheet spreadsheet, Sheet sheet, CellRangeAddress range) {
+        this.spreadsheet = spreadsheet;
+        this.sheet = sheet;
+        this.range = range;
+        rowCount = range.getLastRow() - range.getFirstRow() + 1;
+    }
+
+    /**
+     * Moves the rows of the range to the given order.
+     *
+     * @param order
+     *            For each target row, the source row, relative to the first
+     *            row of the range
+     * @return the cells whose style was changed
+     */
+    List<Cell> permute(int[] order) {
+        final List<Cell> restyledCells = new ArrayList<Cell>();
+        for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++) {
+            moveColumn(c, order, restyledCells);
+        }
+        return restyledCells;
+    }
+
+    /**
+     * Computes the sorted order of the rows. The cells are not moved.
+     *
+     * @param column
+     *            Index of the column to sort by, 0-based
+     * @param ascending
+     *            <code>true</code> for ascending order
+     * @return for each target row, the source row, relative to the first row
+     */
+    int[] getOrder(int column, final boolean ascending) {
+        final byte[] kinds = new byte[rowCount];
+        final double[] numbers = new double[rowCount];
+        final String[] strings = new String[rowCount];
+        final FormulaEvaluator evaluator = spreadsheet.getFormulaEvaluator();
+        for (int i = 0; i < rowCount; i++) {
+            Cell cell = spreadsheet.getCell(range.getFirstRow() + i, column,
+                    sheet);
+            kinds[i] = BLANK;
+            if (cell == null) {
+                continue;
+            }
+            int type = cell.getCellType();
+            if (type == Cell.CELL_TYPE_FORMULA) {
+                try {
+                    CellValue value = evaluator.evaluate(cell);
+                    switch (value.getCellType()) {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        kinds[i] = NUMBER;
+                        numbers[i] = value.getNumberValue();
+                        break;
+                    case Cell.CELL_TYPE_STRING:
+                        setString(i, value.getStringValue(), kinds, strings);
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        kinds[i] = BOOLEAN;
+                        numbers[i] = value.getBooleanValue() ? 1 : 0;
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        kinds[i] = ERROR;
+                        numbers[i] = value.getErrorValue();
+                        break;
+                    default:
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.FINEST, e.getMessage(), e);
+                    kinds[i] = ERROR;
+                }
+            } else if (type == Cell.CELL_TYPE_NUMERIC) {
+                kinds[i] = NUMBER;
+                numbers[i] = cell.getNumericCellValue();
+            } else if (type == Cell.CELL_TYPE_STRING) {
+                setString(i, cell.getStringCellValue(), kinds, strings);
+            } else if (type == Cell.CELL_TYPE_BOOLEAN) {
+                kinds[i] = BOOLEAN;
+                numbers[i] = cell.getBooleanCellValue() ? 1 : 0;
+            } else if (type == Cell.CELL_TYPE_ERROR) {
+                kinds[i] = ERROR;
+                numbers[i] = cell.getErrorCellValue();
+            }
+        }
+
+        Integer[] order = new Integer[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+        }
+        // stable, rows with equal keys keep their order
+        Arrays.sort(order, (a, b) -> {
+            if (kinds[a] == BLANK || kinds[b] == BLANK) {
+                return Boolean.compare(kinds[a] == BLANK, kinds[b] == BLANK);
+            }
+            int result;
+            if (kinds[a] != kinds[b]) {
+                result = Byte.compare(kinds[a], kinds[b]);
+            } else if (kinds[a] == STRING) {
+                result = strings[a].compareToIgnoreCase(strings[b]);
+            } else {
+                result = Double.compare(numbers[a], numbers[b]);
+            }
+            return ascending ? result : -result;
+        });
+        int[] result = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private static void setString(int i, String value, byte[] kinds,
+            String[] strings) {
+        if (value != null && !value.isEmpty()) {
+            kinds[i] = STRING;
+            strings[i] = value;
+        }
+    }
+
+    /**
+     * Moves the cells of one column to their new rows. The whole column is
+     * captured before any cell is written.
+     */
+    private void moveColumn(int column, int[] order,
+            List<Cell> restyledCells) {
+        final int firstRow = range.getFirstRow();
+        final int[] types = new int[rowCount];
+        final Object[] values = new Object[rowCount];
+        final CellStyle[] styles = new CellStyle[rowCount];
+        for (int t = 0; t < rowCount; t++) {
+            int s = order[t];
+            if (s == t) {
+                // not moved, no need to capture
+                continue;
+            }
+            Cell cell = spreadsheet.getCell(firstRow + s, column, sheet);
+            if (cell == null) {
+                types[s] = NO_CELL;
+                continue;
+            }
+            types[s] = cell.getCellType();
+            styles[s] = cell.getCellStyle();
+            switch (types[s]) {
+            case Cell.CELL_TYPE_FORMULA:
+                FormulaTemplate template = FormulaTemplate.parse(spreadsheet,
+                        cell, getParsingWorkbook());
+                values[s] = template != null ? template : cell
+                        .getCellFormula();
+                break;
+            case Cell.CELL_TYPE_NUMERIC:
+                values[s] = cell.getNumericCellValue();
+                break;
+            case Cell.CELL_TYPE_STRING:
+                values[s] = cell.getRichStringCellValue();
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                values[s] = cell.getBooleanCellValue();
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                values[s] = cell.getErrorCellValue();
+                break;
+            default:
+                break;
+            }
+        }
+
+        for (int t = 0; t < rowCount; t++) {
+            int s = order[t];
+            if (s == t) {
+                continue;
+            }
+            Row row = sheet.getRow(firstRow + t);
+            Cell cell = row == null ? null : row.getCell(column);
+            if (types[s] == NO_CELL) {
+                if (cell != null) {
+                    row.removeCell(cell);
+                }
+                continue;
+            }
+            if (row == null) {
+                row = sheet.createRow(firstRow + t);
+            }
+            if (cell == null) {
+                cell = row.createCell(column);
+            } else if (cell.getCellType() == Cell.CELL_TYPE_FORMULA
+                    && types[s] != Cell.CELL_TYPE_FORMULA) {
+                // otherwise only the cached formula result would be set
+                cell.setCellType(Cell.CELL_TYPE_BLANK);
+            }
+            setValue(cell, types[s], values[s], t - s);
+            if (cell.getCellStyle().getIndex() != styles[s].getIndex()) {
+                cell.setCellStyle(styles[s]);
+                restyledCells.add(cell);
+            }
+        }
+    }
+
+    private void setValue(Cell cell, int type, Object value, int deltaRow) {
+        switch (type) {
+        case Cell.CELL_TYPE_FORMULA:
+            String formula;
+            if (value instanceof FormulaTemplate) {
+                formula = ((FormulaTemplate) value).toFormula(0, deltaRow);
+            } else {
+                formula = (String) value;
+            }
+            if (formula == null) {
+                // a reference would move outside the sheet
+                if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                    cell.setCellType(Cell.CELL_TYPE_BLANK);
+                }
+                cell.setCellErrorValue(FormulaError.REF.getCode());
+            } else {
+                cell.setCellFormula(formula);
+            }
+            break;
+        case Cell.CELL_TYPE_NUMERIC:
+            cell.setCellValue((Double) value);
+            break;
+        case Cell.CELL_TYPE_STRING:
+            cell.setCellValue((RichTextString) value);
+            break;
+        case Cell.CELL_TYPE_BOOLEAN:
+            cell.setCellValue((Boolean) value);
+            break;
+        case Cell.CELL_TYPE_ERROR:
+            cell.setCellErrorValue((Byte) value);
+            break;
+        default:
+            cell.setCellType(Cell.CELL_TYPE_BLANK);
+            break;
+        }
+    }
+
+    private FormulaParsingWorkbook getParsingWorkbook() {
+        if (parsingWorkbook == null) {
+            parsingWorkbook = FormulaTemplate.createParsingWorkbook(spreadsheet);
+        }
+        return parsingWorkbook;
+    }
+}
@@ -0,0 +1,142 @@
+package com.vaadin.addon.spreadsheet;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.vaadin.addon.spreadsheet.client.MergedRegion;
+import com.vaadin.addon.spreadsheet.shared.GroupingData;
+import com.vaadin.addon.spreadsheet.shared.SpreadsheetState;
+
+/**
+ * The computed view state of a sheet that is not active: sizes, hidden rows
+ * and columns, row and column styles, merged regions and grouping. The state
+ * is taken from the shared state when the sheet is left, and put back when
+ * the sheet is activated again, so that it doesn't need to be computed from
+ * the POI model again.
+ *
+ * @see Spreadsheet#setSheetViewStateCacheSize(int)
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class SheetViewState implements Serializable {
+
+    private final int rows;
+    private final int cols;
+    private final float defRowH;
+    private final int defColW;
+    private final float[] rowH;
+    private final int[] colW;
+    private final BitSet hiddenRows;
+    private final BitSet hiddenColumns;
+    private final HashMap<Integer, Integer> rowIndexToStyleIndex;
+    private final HashMap<Integer, Integer> columnIndexToStyleIndex;
+    private final Set<Integer> lockedColumnIndexes;
+    private final Set<Integer> lockedRowIndexes;
+    private final ArrayList<MergedRegion> mergedRegions;
+    private final int mergedRegionCounter;
+    private final List<GroupingData> colGroupingData;
+    private final List<GroupingData> rowGroupingData;
+    private final int colGroupingMax;
+    private final int rowGroupingMax;
+    private final boolean colGroupingInversed;
+    private final boolean rowGroupingInversed;
+    private final boolean lockFormatColumns;
+    private final boolean lockFormatRows;
+
+    /**
+     * Takes the view state of the active sheet from the given Spreadsheet.
+     * The style maps that are reused when the next sheet is loaded are
+     * detached from the shared state.
+     *
+     * @param spreadsheet
+     *            Source Spreadsheet
+     */
+    SheetViewState(Spreadsheet spreadsheet) {
+        final SpreadsheetState state = spreadsheet.getState(false);
+        rows = state.rows;
+        cols = state.cols;
+        defRowH = state.defRowH;
+        defColW = state.defColW;
+        rowH = state.rowH;
+        colW = state.colW;
+        hiddenRows = spreadsheet.getHiddenRows();
+        hiddenColumns = spreadsheet.getHiddenColumns();
+        rowIndexToStyleIndex = state.rowIndexToStyleIndex;
+        columnIndexToStyleIndex = state.columnIndexToStyleIndex;
+        lockedColumnIndexes = state.lockedColumnIndexes;
+        lockedRowIndexes = state.lockedRowIndexes;
+        mergedRegions = state.mergedRegions;
+        mergedRegionCounter = spreadsheet.mergedRegionCounter;
+        colGroupingData = state.colGroupingData;
+        rowGroupingData = state.rowGroupingData;
+        colGroupingMax = state.colGroupingMax;
+        rowGroupingMax = state.rowGroupingMax;
+        colGroupingInversed = state.colGroupingInversed;
+        rowGroupingInversed = state.rowGroupingInversed;
+        lockFormatColumns = state.lockFormatColumns;
+        lockFormatRows = state.lockFormatRows;
+
+        // these are cleared and refilled for the next sheet
+        state.rowIndexToStyleIndex = null;
+        state.columnIndexToStyleIndex = null;
+        state.lockedColumnIndexes = null;
+        state.lockedRowIndexes = null;
+    }
+
+    /**
+     * Puts this view state back into the shared state of the given
+     * Spreadsheet, whose active sheet must be the sheet this state was taken
+     * from.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     */
+    void restore(Spreadsheet spreadsheet) {
+        final SpreadsheetState state = spreadsheet.getState();
+        state.rows = rows;
+        state.cols = cols;
+        state.defRowH = defRowH;
+        state.defColW = defColW;
+        state.rowH = rowH;
+        state.colW = colW;
+        spreadsheet.setHiddenRows(hiddenRows);
+        spreadsheet.setHiddenColumns(hiddenColumns);
+        state.rowIndexToStyleIndex = rowIndexToStyleIndex;
+        state.columnIndexToStyleIndex = columnIndexToStyleIndex;
+        state.lockedColumnIndexes = lockedColumnIndexes;
+        state.lockedRowIndexes = lockedRowIndexes;
+        state.mergedRegions = mergedRegions;
+        spreadsheet.mergedRegionCounter = mergedRegionCounter;
+        spreadsheet.mergedRegionsChanged();
+        state.colGroupingData = colGroupingData;
+        state.rowGroupingData = rowGroupingData;
+        state.colGroupingMax = colGroupingMax;
+        state.rowGroupingMax = rowGroupingMax;
+        state.colGroupingInversed = colGroupingInversed;
+        state.rowGroupingInversed = rowGroupingInversed;
+        state.lockFormatColumns = lockFormatColumns;
+        state.lockFormatRows = lockFormatRows;
+    }
+}
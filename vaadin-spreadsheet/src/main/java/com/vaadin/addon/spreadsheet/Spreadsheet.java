@@ -23,24 +23,30 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +54,7 @@ import org.apache.poi.hssf.converter.AbstractExcelUtils;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Comment;
 import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
@@ -74,6 +81,7 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
 import com.vaadin.addon.spreadsheet.SheetOverlayWrapper.OverlayChangeListener;
 import com.vaadin.addon.spreadsheet.action.SpreadsheetDefaultActionHandler;
 import com.vaadin.addon.spreadsheet.client.MergedRegion;
+import com.vaadin.addon.spreadsheet.client.MergedRegionIndex;
 import com.vaadin.addon.spreadsheet.client.MergedRegionUtil.MergedRegionContainer;
 import com.vaadin.addon.spreadsheet.client.OverlayInfo;
 import com.vaadin.addon.spreadsheet.client.SpreadsheetClientRpc;
@@ -84,10 +92,12 @@ import com.vaadin.addon.spreadsheet.shared.SpreadsheetState;
 import com.vaadin.event.Action;
 import com.vaadin.event.Action.Handler;
 import com.vaadin.server.Resource;
+import com.vaadin.shared.communication.PushMode;
 import com.vaadin.ui.AbstractComponent;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.Component.Focusable;
 import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.UI;
 import com.vaadin.ui.declarative.DesignAttributeHandler;
 import com.vaadin.ui.declarative.DesignContext;
 import com.vaadin.util.ReflectTools;
@@ -290,6 +300,21 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
     private int lastColumn;
 
     private boolean chartsEnabled = true;
+
+    private boolean lazyFormulaEvaluation;
+
+    /** Maximum number of view states kept for inactive sheets */
+    private int sheetViewStateCacheSize;
+
+    /** View states of recently shown inactive sheets, least recent first */
+    private final Map<Sheet, SheetViewState> sheetViewStates = new LinkedHashMap<Sheet, SheetViewState>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                Entry<Sheet, SheetViewState> eldest) {
+            return size() > sheetViewStateCacheSize;
+        }
+    };
     /**
      * This is used for making sure the cells are sent to client side in when
      * the next cell data request comes. This is triggered when the client side
@@ -307,6 +332,25 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
 
     protected int mergedRegionCounter;
 
+    /**
+     * Hidden rows and columns of the active sheet, 0-based. The 1-based index
+     * lists in the shared state are generated from these.
+     */
+    private BitSet hiddenRows = new BitSet();
+    private BitSet hiddenColumns = new BitSet();
+
+    private static final byte STYLE_PROTECTION_RESOLVED = 1;
+    private static final byte STYLE_LOCKED = 2;
+    private static final byte STYLE_HIDDEN = 4;
+
+    /**
+     * Locked and hidden flags of the cell styles of the workbook by style
+     * index, resolved when a style is first used. Cleared when the active
+     * sheet, its protection or the styles may have changed, and per style
+     * when the style of a cell is reported as updated.
+     */
+    private byte[] styleProtection = new byte[0];
+
     private Workbook workbook;
 
     /** true if the component sheet should be reloaded on client side. */
@@ -326,6 +370,25 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
 
     private Set<Component> customComponents = new HashSet<Component>();
 
+    /**
+     * Cells of the active sheet that have a custom component, i.e. the values
+     * of {@link SpreadsheetState#componentIDtoCellKeysMap}
+     */
+    private final CellBitmap customComponentCells = new CellBitmap();
+
+    /**
+     * Cell values of the sheets when loaded in read-only mode, by POI sheet
+     * index, with null for the sheets that have not been parsed yet; null
+     * when not in read-only mode
+     */
+    private List<ReadOnlyCellStore> readOnlyCellStores;
+
+    /**
+     * Package of the workbook loaded in read-only mode, for parsing the
+     * sheets that have not been shown yet; null otherwise
+     */
+    private ReadOnlyWorkbookSource readOnlyWorkbookSource;
+
     private Map<CellReference, PopupButton> sheetPopupButtons = new HashMap<CellReference, PopupButton>();
 
     private HashSet<PopupButton> attachedPopupButtons = new HashSet<PopupButton>();
@@ -345,6 +408,12 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
 
     private boolean defaultColWidthSet, defaultRowHeightSet;
 
+    /**
+     * Lookup index of the merged regions in the shared state, rebuilt lazily
+     * after the merged regions have changed.
+     */
+    private MergedRegionIndex mergedRegionIndex;
+
     /**
      * Container for merged regions for the currently active sheet.
      */
@@ -358,15 +427,8 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
          */
         @Override
         public MergedRegion getMergedRegionStartingFrom(int column, int row) {
-            List<MergedRegion> mergedRegions = getState(false).mergedRegions;
-            if (mergedRegions != null) {
-                for (MergedRegion region : mergedRegions) {
-                    if (region.col1 == column && region.row1 == row) {
-                        return region;
-                    }
-                }
-            }
-            return null;
+            return getMergedRegionIndex().getMergedRegionStartingFrom(column,
+                    row);
         }
 
         /*
@@ -377,16 +439,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
          */
         @Override
         public MergedRegion getMergedRegion(int column, int row) {
-            List<MergedRegion> mergedRegions = getState(false).mergedRegions;
-            if (mergedRegions != null) {
-                for (MergedRegion region : mergedRegions) {
-                    if (region.col1 <= column && region.row1 <= row
-                            && region.col2 >= column && region.row2 >= row) {
-                        return region;
-                    }
-                }
-            }
-            return null;
+            return getMergedRegionIndex().getMergedRegion(column, row);
         }
     };
 
@@ -658,6 +711,24 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         return mergedRegionContainer;
     }
 
+    private MergedRegionIndex getMergedRegionIndex() {
+        List<MergedRegion> mergedRegions = getState(false).mergedRegions;
+        if (mergedRegionIndex == null
+                || !mergedRegionIndex.isIndexOf(mergedRegions)) {
+            mergedRegionIndex = new MergedRegionIndex(mergedRegions);
+        }
+        return mergedRegionIndex;
+    }
+
+    /**
+     * Discards the merged region index, so that it is rebuilt from the shared
+     * state on the next lookup. Must be called whenever the merged regions in
+     * the shared state are changed.
+     */
+    void mergedRegionsChanged() {
+        mergedRegionIndex = null;
+    }
+
     /**
      * Returns the first visible column in the main scroll area (NOT freeze
      * pane)
@@ -736,6 +807,87 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         loadOrUpdateOverlays();
     }
 
+    /**
+     * Returns true if only the formula cells cached on the client side are
+     * evaluated when cell values change.
+     * 
+     * @see #setLazyFormulaEvaluation(boolean)
+     * @return true if formula evaluation is lazy
+     */
+    public boolean isLazyFormulaEvaluation() {
+        return lazyFormulaEvaluation;
+    }
+
+    /**
+     * Use this method to define whether formula cells that have not been sent
+     * to the client are evaluated when cell values change. When lazy, only the
+     * formula cells currently cached on the client side (e.g. the visible
+     * cells) are evaluated right away, and other formula cells are evaluated
+     * when they are scrolled into view. Default is <code>false</code>.
+     * <p>
+     * In lazy mode a {@link FormulaValueChangeEvent} for an off-screen formula
+     * cell is delayed: the change is noticed when the cell is loaded into the
+     * viewport, and the event is fired with the next update of changed cell
+     * values, e.g. after the next cell value change. Listeners that need to
+     * know about every formula change as it happens should not use lazy
+     * evaluation.
+     * 
+     * @param lazyFormulaEvaluation
+     *            true to evaluate off-screen formula cells only when needed
+     */
+    public void setLazyFormulaEvaluation(boolean lazyFormulaEvaluation) {
+        this.lazyFormulaEvaluation = lazyFormulaEvaluation;
+    }
+
+    /**
+     * Returns the maximum number of inactive sheets whose view state is kept
+     * for switching back to them.
+     * 
+     * @see #setSheetViewStateCacheSize(int)
+     * @return maximum number of cached sheet view states
+     */
+    public int getSheetViewStateCacheSize() {
+        return sheetViewStateCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of inactive sheets whose view state is kept for
+     * switching back to them. The view state consists of the row and column
+     * sizes, hidden rows and columns, row and column styles, merged regions
+     * and grouping of a sheet. It is taken when another sheet is activated,
+     * and used instead of computing it from the POI model when the sheet is
+     * activated again. The least recently shown sheets are dropped first.
+     * <p>
+     * Changes made through this component are included in the view state. If
+     * an inactive sheet is changed directly through the POI API, its view
+     * state has to be dropped before activating the sheet, either with
+     * {@link #clearSheetViewState(Sheet)} or by passing the changed cells to
+     * {@link #refreshCells(Collection)}. {@link #refreshAllCellValues()} drops
+     * the view states of all sheets. Default is 0, which disables the cache.
+     * 
+     * @param sheetViewStateCacheSize
+     *            maximum number of cached sheet view states, 0 to disable
+     */
+    public void setSheetViewStateCacheSize(int sheetViewStateCacheSize) {
+        this.sheetViewStateCacheSize = sheetViewStateCacheSize;
+        sheetViewStates.clear();
+    }
+
+    /**
+     * Drops the cached view state of the given sheet, so that it is computed
+     * from the POI model when the sheet is activated again. Should be called
+     * after the sizes, hidden rows or columns, styles, merged regions or
+     * grouping of an inactive sheet have been changed directly through the
+     * POI API. The view state of the active sheet is never cached.
+     * 
+     * @see #setSheetViewStateCacheSize(int)
+     * @param sheet
+     *            The changed sheet
+     */
+    public void clearSheetViewState(Sheet sheet) {
+        sheetViewStates.remove(sheet);
+    }
+
     /**
      * Returns true if the component is being fully re-rendered after this
      * round-trip (sheet change etc.)
@@ -1081,8 +1233,12 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (sheetPOIIndex < 0 || sheetPOIIndex >= workbook.getNumberOfSheets()) {
             throw new IllegalArgumentException("Invalid POI Sheet index given.");
         }
-        workbook.getSheetAt(sheetPOIIndex).protectSheet(password);
+        final Sheet sheet = workbook.getSheetAt(sheetPOIIndex);
+        sheet.protectSheet(password);
+        // the locked rows and columns depend on the protection
+        clearSheetViewState(sheet);
         getState().sheetProtected = getActiveSheet().getProtect();
+        styleProtectionChanged();
         // if the currently active sheet was protected, the protection for the
         // currently selected cell might have changed
         if (sheetPOIIndex == workbook.getActiveSheetIndex()) {
@@ -1159,6 +1315,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                     "A workbook must contain at least one visible worksheet");
         }
         int removedVisibleIndex = getSpreadsheetSheetIndex(poiSheetIndex);
+        clearSheetViewState(workbook.getSheetAt(poiSheetIndex));
         workbook.removeSheetAt(poiSheetIndex);
 
         // POI doesn't seem to shift the active sheet index ...
@@ -1257,6 +1414,10 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      *            Index of the target sheet (among the visible sheets), 0-based
      * @throws IllegalArgumentException
      *             If the index is invalid
+     * @throws UncheckedIOException
+     *             If the workbook has been loaded with
+     *             {@link #readStreaming(File)} and the sheet can't be read
+     *             from the file. The current sheet stays active.
      */
     public void setActiveSheetIndex(int sheetIndex)
             throws IllegalArgumentException {
@@ -1276,6 +1437,10 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * @throws IllegalArgumentException
      *             If the index is invalid, or if the sheet at the given index
      *             is hidden or very hidden.
+     * @throws UncheckedIOException
+     *             If the workbook has been loaded with
+     *             {@link #readStreaming(File)} and the sheet can't be read
+     *             from the file. The current sheet stays active.
      */
     public void setActiveSheetWithPOIIndex(int sheetIndex)
             throws IllegalArgumentException {
@@ -1288,10 +1453,27 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                     "Cannot set a hidden or very hidden sheet as the active sheet. Given index: "
                             + sheetIndex);
         }
+        if (isReadOnlyStreaming()) {
+            // parse the sheet before switching to it, so that a read error
+            // leaves the current sheet shown
+            SpreadsheetFactory.loadReadOnlySheet(this,
+                    workbook.getSheetAt(sheetIndex));
+        }
+        if (sheetViewStateCacheSize > 0
+                && sheetIndex != workbook.getActiveSheetIndex()) {
+            sheetViewStates.put(getActiveSheet(), new SheetViewState(this));
+        }
         workbook.setActiveSheet(sheetIndex);
-        reloadActiveSheetData();
-        SpreadsheetFactory.reloadSpreadsheetData(this,
-                workbook.getSheetAt(sheetIndex));
+        final Sheet sheet = workbook.getSheetAt(sheetIndex);
+        final SheetViewState viewState = sheetViewStates.remove(sheet);
+        if (viewState == null) {
+            reloadActiveSheetData();
+            SpreadsheetFactory.reloadSpreadsheetData(this, sheet);
+        } else {
+            clearActiveSheetData();
+            SpreadsheetFactory.reloadSpreadsheetData(this, sheet, viewState);
+            markAsDirty();
+        }
         reloadActiveSheetStyles();
     }
 
@@ -1505,8 +1687,11 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (cells != null) {
             for (Cell cell : cells) {
                 markCellAsUpdated(cell, true);
+                clearSheetViewState(cell.getSheet());
             }
+            styleProtectionChanged();
             updateMarkedCells();
+            cellValuesChangedInTables(Arrays.asList(cells));
         }
     }
 
@@ -1525,8 +1710,27 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (cells != null && !cells.isEmpty()) {
             for (Cell cell : cells) {
                 markCellAsUpdated(cell, true);
+                clearSheetViewState(cell.getSheet());
             }
+            styleProtectionChanged();
             updateMarkedCells();
+            cellValuesChangedInTables(cells);
+        }
+    }
+
+    /**
+     * Tells the filter tables that the values of the given cells have been
+     * changed without a value change event.
+     * 
+     * @param cells
+     *            Changed cells, or <code>null</code> if any cell may have
+     *            changed
+     */
+    private void cellValuesChangedInTables(Collection<Cell> cells) {
+        for (SpreadsheetTable table : tables) {
+            if (table instanceof SpreadsheetFilterTable) {
+                ((SpreadsheetFilterTable) table).cellValuesChanged(cells);
+            }
         }
     }
 
@@ -1573,8 +1777,10 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      */
     void updateMarkedCells() {
         // update conditional formatting in case styling has changed. New values
-        // are fetched in ValueManager (below).
-        conditionalFormatter.createConditionalFormatterRules();
+        // are fetched in ValueManager (below). Only the formattings affected
+        // by the changed cells are evaluated again.
+        conditionalFormatter.updateConditionalFormatterRules(valueManager
+                .getChangedCellKeys());
         // FIXME should be optimized, should not go through all links, comments
         // etc. always
         valueManager.updateMarkedCellValues();
@@ -1619,7 +1825,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (cell == null) {
             cell = r.createCell(col, Cell.CELL_TYPE_FORMULA);
         } else {
-            final String key = SpreadsheetUtil.toKey(col + 1, row + 1);
+            final long key = SpreadsheetUtil.toLongKey(col + 1, row + 1);
             valueManager.clearCellCache(key);
             cell.setCellType(Cell.CELL_TYPE_FORMULA);
         }
@@ -1663,7 +1869,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (cell == null) {
             cell = r.createCell(col);
         } else {
-            final String key = SpreadsheetUtil.toKey(col + 1, row + 1);
+            final long key = SpreadsheetUtil.toLongKey(col + 1, row + 1);
             valueManager.clearCellCache(key);
         }
         if (value instanceof Double) {
@@ -1686,12 +1892,15 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * the sheet's cells.
      * 
      * Note: DOES NOT UPDATE STYLES; use {@link #refreshCells(Cell...)} when
-     * cell styles change.
+     * cell styles change. The cached view states of the inactive sheets are
+     * dropped, see {@link #setSheetViewStateCacheSize(int)}.
      */
     public void refreshAllCellValues() {
 
+        sheetViewStates.clear();
         getFormulaEvaluator().clearAllCachedResultValues();
         valueManager.clearCachedContent();
+        cellValuesChangedInTables(null);
 
         // only reload if the cells have been loaded once previously
         if (firstColumn == -1) {
@@ -1933,6 +2142,8 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         // need to re-send the cell values to client
         // remove all cached cell data that is now empty
         getFormulaEvaluator().clearAllCachedResultValues();
+        // formulas referring to the shifted rows have been rewritten
+        valueManager.invalidateFormulaDependencies();
         int start = n < 0 ? Math.max(lastNonBlankRow, startRow) : startRow;
         int end = n < 0 ? endRow : startRow + n - 1;
         valueManager.updateDeletedRowsInClientCache(start + 1, end + 1);
@@ -1965,6 +2176,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         // need to shift the cell styles, clear and update
         // need to go -1 and +1 because of shifted borders..
         final ArrayList<Cell> cellsToUpdate = new ArrayList<Cell>();
+        boolean hiddenRowsChanged = false;
         for (int r = (firstAffectedRow - 1); r <= (lastAffectedRow + 1); r++) {
             if (r < 0) {
                 r = 0;
@@ -1973,17 +2185,17 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
             final Integer rowIndex = new Integer(r + 1);
             if (row == null) {
                 valueManager.updateDeletedRowsInClientCache(rowIndex, rowIndex);
-                if (getState(false).hiddenRowIndexes.contains(rowIndex)) {
-                    getState().hiddenRowIndexes.remove(rowIndex);
+                if (hiddenRows.get(r)) {
+                    hiddenRows.clear(r);
+                    hiddenRowsChanged = true;
                 }
                 for (int c = 0; c < getState().cols; c++) {
                     styler.clearCellStyle(r, c);
                 }
             } else {
-                if (row.getZeroHeight()) {
-                    getState().hiddenRowIndexes.add(rowIndex);
-                } else if (getState(false).hiddenRowIndexes.contains(rowIndex)) {
-                    getState().hiddenRowIndexes.remove(rowIndex);
+                if (row.getZeroHeight() != hiddenRows.get(r)) {
+                    hiddenRows.set(r, row.getZeroHeight());
+                    hiddenRowsChanged = true;
                 }
                 for (int c = 0; c < getState().cols; c++) {
                     Cell cell = row.getCell(c);
@@ -2001,6 +2213,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                 }
             }
         }
+        if (hiddenRowsChanged) {
+            setHiddenRows(hiddenRows);
+        }
         rowsMoved(firstAffectedRow, lastAffectedRow, n);
 
         for (Cell cell : cellsToUpdate) {
@@ -2025,6 +2240,82 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         }
     }
 
+    /**
+     * Sorts the rows of the given range of the active sheet by the values in
+     * the given column. Only the cells within the range are moved. The client
+     * side cache of the range is invalidated once for the whole range. The
+     * sort is added to the undo history as a command that moves the rows back
+     * to their previous order.
+     * 
+     * @param range
+     *            Range of the rows to sort, without header rows
+     * @param column
+     *            Index of the column to sort by, 0-based
+     * @param ascending
+     *            <code>true</code> for ascending order
+     * @throws IllegalStateException
+     *             if the range contains merged cells
+     */
+    void sortRows(CellRangeAddress range, int column, boolean ascending) {
+        final int[] order = new RowSorter(this, getActiveSheet(), range)
+                .getOrder(column, ascending);
+        permuteRows(range, order);
+        historyManager.addCommand(new RowSortCommand(this, range, order));
+    }
+
+    /**
+     * Moves the rows of the given range of the active sheet to the given
+     * order and updates the component. The filters of the filter tables
+     * overlapping the range are applied again.
+     * 
+     * @param range
+     *            Range of the rows to move
+     * @param order
+     *            For each target row, the source row, relative to the first
+     *            row of the range
+     * @throws IllegalStateException
+     *             if the range contains merged cells
+     */
+    void permuteRows(CellRangeAddress range, int[] order) {
+        final Sheet sheet = getActiveSheet();
+        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
+            if (CellRangeUtil.intersect(sheet.getMergedRegion(i),
+                    range) != CellRangeUtil.NO_INTERSECTION) {
+                throw new IllegalStateException(
+                        "Cannot sort a range that contains merged cells");
+            }
+        }
+        List<Cell> restyledCells = new RowSorter(this, sheet, range)
+                .permute(order);
+
+        valueManager.rangeChanged(range.getFirstRow() + 1,
+                range.getFirstColumn() + 1, range.getLastRow() + 1,
+                range.getLastColumn() + 1);
+        for (Cell cell : restyledCells) {
+            styler.cellStyleUpdated(cell, false);
+        }
+        if (!restyledCells.isEmpty()) {
+            styler.loadCustomBorderStylesToState();
+        }
+        cellValuesChangedInTables(null);
+        updateMarkedCells();
+        if (firstColumn != -1) {
+            updateRowAndColumnRangeCellData(firstRow, firstColumn, lastRow,
+                    lastColumn);
+        }
+        fireEvent(new CellValueChangeEvent(this, new CellRangeSet(
+                Collections.singletonList(range))));
+        for (SpreadsheetTable table : getTablesForActiveSheet()) {
+            if (table instanceof SpreadsheetFilterTable) {
+                SpreadsheetFilterTable filterTable = (SpreadsheetFilterTable) table;
+                if (CellRangeUtil.intersect(filterTable.getFilteringRegion(),
+                        range) != CellRangeUtil.NO_INTERSECTION) {
+                    filterTable.rowsSorted();
+                }
+            }
+        }
+    }
+
     private boolean hasSheetOverlays() {
         return sheetOverlays != null && sheetOverlays.size() > 0;
     }
@@ -2071,6 +2362,8 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      *            the amount of lines that rows has been moved
      */
     private void rowsMoved(int first, int last, int n) {
+        cellValuesChangedInTables(null);
+
         // Merged regions
         if (n < 0) {
             // Remove merged cells from deleted rows. POI will handle the other
@@ -2188,6 +2481,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         } else {
             getState().mergedRegions = null;
         }
+        mergedRegionsChanged();
     }
 
     /**
@@ -2214,7 +2508,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
             getState(false).rowH[i] = sheet.getDefaultRowHeightInPoints();
         }
         updateMergedRegions();
+        valueManager.invalidateFormulaDependencies();
         valueManager.updateDeletedRowsInClientCache(startRow + 1, endRow + 1);
+        cellValuesChangedInTables(null);
 
         if (hasSheetOverlays()) {
             reloadImageSizesFromPOI = true;
@@ -2316,6 +2612,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
             getState().mergedRegions = new ArrayList<MergedRegion>();
         }
         getState().mergedRegions.add(addMergedRegionIndex - 1, mergedRegion);
+        mergedRegionsChanged();
         // update the style & data for the region cells, effects region + 1
         // FIXME POI doesn't seem to care that the other cells inside the merged
         // region should be removed; the values those cells have are still used
@@ -2369,6 +2666,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         final Sheet sheet = getActiveSheet();
         sheet.removeMergedRegion(index);
         MergedRegion mergedRegion = getState().mergedRegions.remove(index);
+        mergedRegionsChanged();
         // update the style for the region cells, effects region + 1 row&col
         for (int r = mergedRegion.row1; r <= (mergedRegion.row2 + 1); r++) {
             Row row = sheet.getRow(r - 1);
@@ -2406,6 +2704,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * Reloads all the styles for the currently active sheet.
      */
     public void reloadActiveSheetStyles() {
+        styleProtectionChanged();
         styler.reloadActiveSheetCellStyles();
     }
 
@@ -2419,21 +2718,97 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      *            True to hide the target column, false to show it.
      */
     public void setColumnHidden(int columnIndex, boolean hidden) {
-        getActiveSheet().setColumnHidden(columnIndex, hidden);
-        if (hidden && !getState().hiddenColumnIndexes.contains(columnIndex + 1)) {
-            getState().hiddenColumnIndexes.add(columnIndex + 1);
-            getState().colW[columnIndex] = 0;
-        } else if (!hidden
-                && getState().hiddenColumnIndexes.contains(columnIndex + 1)) {
-            getState().hiddenColumnIndexes
-                    .remove(getState().hiddenColumnIndexes
-                            .indexOf(columnIndex + 1));
-            getState().colW[columnIndex] = AbstractExcelUtils
-                    .getColumnWidthInPx(getActiveSheet().getColumnWidth(
-                            columnIndex));
-            getCellValueManager().clearCacheForColumn(columnIndex + 1);
-            getCellValueManager().loadCellData(firstRow, columnIndex + 1,
-                    lastRow, columnIndex + 1);
+        setColumnsHidden(columnIndex, columnIndex, hidden);
+    }
+
+    /**
+     * Hides or shows the given range of columns. The shared state and the
+     * overlays are updated once for the whole range.
+     * 
+     * @param firstColumn
+     *            Index of the first target column, 0-based
+     * @param lastColumn
+     *            Index of the last target column, 0-based
+     * @param hidden
+     *            True to hide the target columns, false to show them.
+     */
+    public void setColumnsHidden(int firstColumn, int lastColumn,
+            boolean hidden) {
+        BitSet columns = new BitSet();
+        columns.set(firstColumn, lastColumn + 1);
+        setColumnsHidden(columns, hidden);
+    }
+
+    /**
+     * Hides or shows the given columns. The shared state and the overlays are
+     * updated once for all the columns.
+     * 
+     * @param columns
+     *            Indexes of the target columns, 0-based
+     * @param hidden
+     *            True to hide the target columns, false to show them.
+     */
+    public void setColumnsHidden(BitSet columns, boolean hidden) {
+        updateColumnsHidden(columns, hidden ? columns : new BitSet());
+    }
+
+    /**
+     * Hides the columns of the given range that are in the given set, and
+     * shows the rest of the range. The shared state and the overlays are
+     * updated once for the whole range.
+     * 
+     * @param firstColumn
+     *            Index of the first target column, 0-based
+     * @param lastColumn
+     *            Index of the last target column, 0-based
+     * @param columnsToHide
+     *            Indexes of the columns to hide, 0-based
+     */
+    public void setColumnsHidden(int firstColumn, int lastColumn,
+            BitSet columnsToHide) {
+        BitSet columns = new BitSet();
+        columns.set(firstColumn, lastColumn + 1);
+        updateColumnsHidden(columns, columnsToHide);
+    }
+
+    private void updateColumnsHidden(BitSet columns, BitSet hide) {
+        final Sheet activeSheet = getActiveSheet();
+        final int[] colW = getState().colW;
+        int changed = 0;
+        int lastChanged = -1;
+        int firstShown = -1;
+        int lastShown = -1;
+        for (int c = columns.nextSetBit(0); c >= 0; c = columns
+                .nextSetBit(c + 1)) {
+            final boolean hidden = hide.get(c);
+            activeSheet.setColumnHidden(c, hidden);
+            if (hidden == hiddenColumns.get(c)) {
+                continue;
+            }
+            hiddenColumns.set(c, hidden);
+            changed++;
+            lastChanged = c;
+            if (hidden) {
+                colW[c] = 0;
+            } else {
+                colW[c] = AbstractExcelUtils.getColumnWidthInPx(activeSheet
+                        .getColumnWidth(c));
+                getCellValueManager().clearCacheForColumn(c + 1);
+                if (firstShown < 0) {
+                    firstShown = c;
+                }
+                lastShown = c;
+            }
+        }
+        if (changed == 1) {
+            updateHeaderIndex(getState().hiddenColumnIndexes, lastChanged,
+                    hiddenColumns.get(lastChanged));
+        } else if (changed > 1) {
+            setHiddenColumns(hiddenColumns);
+        }
+        if (firstShown >= 0) {
+            getCellValueManager().loadCellData(firstRow, firstShown + 1,
+                    lastRow, lastShown + 1);
         }
 
         if (hasSheetOverlays()) {
@@ -2442,6 +2817,73 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         }
     }
 
+    /**
+     * Sets the hidden columns of the active sheet and updates the shared
+     * state.
+     * 
+     * @param columns
+     *            Indexes of the hidden columns, 0-based
+     */
+    void setHiddenColumns(BitSet columns) {
+        hiddenColumns = columns;
+        getState().hiddenColumnIndexes = toHeaderIndexes(columns);
+    }
+
+    /**
+     * Gets the hidden columns of the active sheet. The returned set is the one
+     * used by this component and must not be modified.
+     * 
+     * @return Indexes of the hidden columns, 0-based
+     */
+    BitSet getHiddenColumns() {
+        return hiddenColumns;
+    }
+
+    /**
+     * Sets the hidden rows of the active sheet and updates the shared state.
+     * 
+     * @param rows
+     *            Indexes of the hidden rows, 0-based
+     */
+    void setHiddenRows(BitSet rows) {
+        hiddenRows = rows;
+        getState().hiddenRowIndexes = toHeaderIndexes(rows);
+    }
+
+    /**
+     * Gets the hidden rows of the active sheet. The returned set is the one
+     * used by this component and must not be modified.
+     * 
+     * @return Indexes of the hidden rows, 0-based
+     */
+    BitSet getHiddenRows() {
+        return hiddenRows;
+    }
+
+    private static ArrayList<Integer> toHeaderIndexes(BitSet indexes) {
+        final ArrayList<Integer> headerIndexes = new ArrayList<Integer>(
+                indexes.cardinality());
+        for (int i = indexes.nextSetBit(0); i >= 0; i = indexes
+                .nextSetBit(i + 1)) {
+            headerIndexes.add(i + 1);
+        }
+        return headerIndexes;
+    }
+
+    /**
+     * Adds the given header index to or removes it from the sorted list of a
+     * shared state, without regenerating the whole list.
+     */
+    private static void updateHeaderIndex(ArrayList<Integer> headerIndexes,
+            int index, boolean hidden) {
+        final int pos = Collections.binarySearch(headerIndexes, index + 1);
+        if (hidden && pos < 0) {
+            headerIndexes.add(-pos - 1, index + 1);
+        } else if (!hidden && pos >= 0) {
+            headerIndexes.remove(pos);
+        }
+    }
+
     /**
      * Gets the visibility state of the given column. See
      * {@link Sheet#isColumnHidden(int)}.
@@ -2463,20 +2905,85 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      *            True to hide the target row, false to show it.
      */
     public void setRowHidden(int rowIndex, boolean hidden) {
+        setRowsHidden(rowIndex, rowIndex, hidden);
+    }
+
+    /**
+     * Hides or shows the given range of rows. The shared state and the
+     * overlays are updated once for the whole range.
+     * 
+     * @param firstRow
+     *            Index of the first target row, 0-based
+     * @param lastRow
+     *            Index of the last target row, 0-based
+     * @param hidden
+     *            True to hide the target rows, false to show them.
+     */
+    public void setRowsHidden(int firstRow, int lastRow, boolean hidden) {
+        BitSet rows = new BitSet();
+        rows.set(firstRow, lastRow + 1);
+        setRowsHidden(rows, hidden);
+    }
+
+    /**
+     * Hides or shows the given rows. The shared state and the overlays are
+     * updated once for all the rows.
+     * 
+     * @param rows
+     *            Indexes of the target rows, 0-based
+     * @param hidden
+     *            True to hide the target rows, false to show them.
+     */
+    public void setRowsHidden(BitSet rows, boolean hidden) {
+        updateRowsHidden(rows, hidden ? rows : new BitSet());
+    }
+
+    /**
+     * Hides the rows of the given range that are in the given set, and shows
+     * the rest of the range. The shared state and the overlays are updated
+     * once for the whole range.
+     * 
+     * @param firstRow
+     *            Index of the first target row, 0-based
+     * @param lastRow
+     *            Index of the last target row, 0-based
+     * @param rowsToHide
+     *            Indexes of the rows to hide, 0-based
+     */
+    public void setRowsHidden(int firstRow, int lastRow, BitSet rowsToHide) {
+        BitSet rows = new BitSet();
+        rows.set(firstRow, lastRow + 1);
+        updateRowsHidden(rows, rowsToHide);
+    }
+
+    private void updateRowsHidden(BitSet rows, BitSet hide) {
         final Sheet activeSheet = getActiveSheet();
-        Row row = activeSheet.getRow(rowIndex);
-        if (row == null) {
-            row = activeSheet.createRow(rowIndex);
+        final float[] rowH = getState().rowH;
+        int changed = 0;
+        int lastChanged = -1;
+        for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+            final boolean hidden = hide.get(r);
+            Row row = activeSheet.getRow(r);
+            if (row == null) {
+                if (!hidden && !hiddenRows.get(r)) {
+                    // nothing to show, don't create rows for it
+                    continue;
+                }
+                row = activeSheet.createRow(r);
+            }
+            row.setZeroHeight(hidden);
+            if (hidden != hiddenRows.get(r)) {
+                hiddenRows.set(r, hidden);
+                rowH[r] = hidden ? 0.0F : row.getHeightInPoints();
+                changed++;
+                lastChanged = r;
+            }
         }
-        row.setZeroHeight(hidden);
-        if (hidden && !getState().hiddenRowIndexes.contains(rowIndex + 1)) {
-            getState().hiddenRowIndexes.add(rowIndex + 1);
-            getState().rowH[rowIndex] = 0.0F;
-        } else if (!hidden
-                && getState().hiddenRowIndexes.contains(rowIndex + 1)) {
-            getState().hiddenRowIndexes.remove(getState().hiddenRowIndexes
-                    .indexOf(rowIndex + 1));
-            getState().rowH[rowIndex] = row.getHeightInPoints();
+        if (changed == 1) {
+            updateHeaderIndex(getState().hiddenRowIndexes, lastChanged,
+                    hiddenRows.get(lastChanged));
+        } else if (changed > 1) {
+            setHiddenRows(hiddenRows);
         }
 
         if (hasSheetOverlays()) {
@@ -2527,8 +3034,227 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         srcUri = null;
     }
 
+    /**
+     * Reinitializes the component from the given Excel file without blocking
+     * the calling thread, see {@link #readAsync(File, Executor)}. The file is
+     * parsed with a shared executor that uses virtual threads when the JVM
+     * supports them.
+     * 
+     * @param file
+     *            Data source file. Excel format is expected.
+     * @return a future that is completed once the workbook has been fully
+     *         loaded, or completed exceptionally if it could not be read
+     */
+    public CompletableFuture<Void> readAsync(File file) {
+        return readAsync(file, SpreadsheetFactory.getDefaultLoadExecutor());
+    }
+
+    /**
+     * Reinitializes the component from the given Excel file without blocking
+     * the calling thread. The file is parsed with the given executor, after
+     * which the active sheet is loaded and pushed to the client before the
+     * cell styles. A {@link LoadProgressEvent} is fired after each step.
+     * <p>
+     * The Spreadsheet must be attached to a UI. Server push should be enabled
+     * in the UI for the client to be updated as soon as each step is done.
+     * With {@link PushMode#MANUAL}, the UI is pushed after each step.
+     * 
+     * @param file
+     *            Data source file. Excel format is expected.
+     * @param executor
+     *            Executor for parsing the file
+     * @return a future that is completed once the workbook has been fully
+     *         loaded, or completed exceptionally if it could not be read
+     */
+    public CompletableFuture<Void> readAsync(final File file,
+            Executor executor) {
+        return readAsync(() -> SpreadsheetFactory.createWorkbook(file), file
+                .toURI().toString(), executor);
+    }
+
+    /**
+     * Reinitializes the component from the given input stream without
+     * blocking the calling thread, see {@link #readAsync(File, Executor)}.
+     * 
+     * @param inputStream
+     *            Data source input stream. Excel format is expected.
+     * @return a future that is completed once the workbook has been fully
+     *         loaded, or completed exceptionally if it could not be read
+     */
+    public CompletableFuture<Void> readAsync(InputStream inputStream) {
+        return readAsync(inputStream,
+                SpreadsheetFactory.getDefaultLoadExecutor());
+    }
+
+    /**
+     * Reinitializes the component from the given input stream without
+     * blocking the calling thread, see {@link #readAsync(File, Executor)}.
+     * 
+     * @param inputStream
+     *            Data source input stream. Excel format is expected.
+     * @param executor
+     *            Executor for parsing the stream
+     * @return a future that is completed once the workbook has been fully
+     *         loaded, or completed exceptionally if it could not be read
+     */
+    public CompletableFuture<Void> readAsync(final InputStream inputStream,
+            Executor executor) {
+        return readAsync(() -> SpreadsheetFactory.createWorkbook(inputStream),
+                null, executor);
+    }
+
+    /**
+     * Parses a workbook for {@link Spreadsheet#readAsync(File, Executor)}.
+     */
+    private interface WorkbookParser extends Serializable {
+        Workbook parse() throws IOException;
+    }
+
+    private CompletableFuture<Void> readAsync(final WorkbookParser parser,
+            final String uri, Executor executor) {
+        final UI ui = getUI();
+        if (ui == null) {
+            throw new IllegalStateException(
+                    "Spreadsheet must be attached to a UI to be read asynchronously");
+        }
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        executor.execute(() -> {
+            try {
+                final Workbook parsed = parser.parse();
+                // separate session accesses, so that the active sheet is
+                // pushed to the client before the styles are loaded
+                ui.accessSynchronously(() -> {
+                    SpreadsheetFactory.reloadSpreadsheetComponentData(this,
+                            parsed);
+                    srcUri = uri;
+                    fireEvent(new LoadProgressEvent(this,
+                            LoadPhase.ACTIVE_SHEET_LOADED));
+                    pushIfManual(ui);
+                });
+                ui.accessSynchronously(() -> {
+                    SpreadsheetFactory.loadWorkbookStyles(this);
+                    fireEvent(new LoadProgressEvent(this, LoadPhase.COMPLETED));
+                    pushIfManual(ui);
+                });
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Pushes the changes to the client when the UI uses manual push. With
+     * automatic push the changes are pushed when the session is unlocked.
+     */
+    private static void pushIfManual(UI ui) {
+        if (ui.getPushConfiguration().getPushMode() == PushMode.MANUAL) {
+            ui.push();
+        }
+    }
+
+    /**
+     * Reinitializes the component from the given XLSX file in read-only mode.
+     * The file is parsed with a streaming parser and only the formatted cell
+     * values are kept in memory, so very large files can be browsed without
+     * loading the whole workbook. Only the active sheet of the file is parsed
+     * right away; the other sheets are parsed from the file when they are
+     * first shown. If a sheet can't be read then, the sheet change fails with
+     * an {@link UncheckedIOException}.
+     * <p>
+     * The sheets cannot be edited, and cell styles, formulas, comments,
+     * merged regions and overlays are not loaded. {@link #getWorkbook()}
+     * returns a workbook with empty sheets, so the cell values are not
+     * available through the POI API.
+     * 
+     * @param file
+     *            Data source file. XLSX format is expected.
+     * @throws IOException
+     *             If the file can't be read, or the file is of an invalid
+     *             format.
+     */
+    public void readStreaming(File file) throws IOException {
+        SpreadsheetFactory.reloadSpreadsheetComponentReadOnly(this, file);
+        srcUri = null;
+    }
+
+    /**
+     * Reinitializes the component from the given input stream in read-only
+     * mode, see {@link #readStreaming(File)}.
+     * 
+     * @param inputStream
+     *            Data source input stream. XLSX format is expected.
+     * @throws IOException
+     *             If handling the stream fails, or the data is in an invalid
+     *             format.
+     */
+    public void readStreaming(InputStream inputStream) throws IOException {
+        SpreadsheetFactory.reloadSpreadsheetComponentReadOnly(this,
+                inputStream);
+        srcUri = null;
+    }
+
+    /**
+     * Returns whether the workbook has been loaded in read-only mode with
+     * {@link #readStreaming(File)} or {@link #readStreaming(InputStream)}.
+     * 
+     * @return true if the cell values are served from the read-only store
+     */
+    public boolean isReadOnlyStreaming() {
+        return readOnlyCellStores != null;
+    }
+
+    void setReadOnlyCellStores(List<ReadOnlyCellStore> readOnlyCellStores,
+            ReadOnlyWorkbookSource readOnlyWorkbookSource) {
+        this.readOnlyCellStores = readOnlyCellStores;
+        this.readOnlyWorkbookSource = readOnlyWorkbookSource;
+    }
+
+    ReadOnlyWorkbookSource getReadOnlyWorkbookSource() {
+        return readOnlyWorkbookSource;
+    }
+
+    /**
+     * Returns the read-only cell values of the active sheet.
+     * 
+     * @return the store, or <code>null</code> if the workbook has not been
+     *         loaded in read-only mode
+     */
+    ReadOnlyCellStore getReadOnlyCellStore() {
+        if (readOnlyCellStores == null) {
+            return null;
+        }
+        return getReadOnlyCellStore(workbook.getActiveSheetIndex());
+    }
+
+    /**
+     * Returns the read-only cell values of the given sheet.
+     * 
+     * @param sheetIndex
+     *            POI sheet index, 0-based
+     * @return the store, or <code>null</code> if the sheet has not been parsed
+     *         yet or the workbook has not been loaded in read-only mode
+     */
+    ReadOnlyCellStore getReadOnlyCellStore(int sheetIndex) {
+        if (readOnlyCellStores == null
+                || sheetIndex >= readOnlyCellStores.size()) {
+            return null;
+        }
+        return readOnlyCellStores.get(sheetIndex);
+    }
+
+    void setReadOnlyCellStore(int sheetIndex, ReadOnlyCellStore store) {
+        readOnlyCellStores.set(sheetIndex, store);
+    }
+
     /**
      * Exports current spreadsheet into a File with the given name.
+     * <p>
+     * The current {@link Workbook} stays in use after writing, except for an
+     * {@link org.apache.poi.xssf.streaming.SXSSFWorkbook}, which is replaced
+     * by reading back the written file.
      * 
      * @param fileName
      *            The full name of the file. If the name doesn't end with '.xls'
@@ -2701,6 +3427,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
 
     void setInternalWorkbook(Workbook workbook) {
         this.workbook = workbook;
+        readOnlyCellStores = null;
+        readOnlyWorkbookSource = null;
+        sheetViewStates.clear();
         formulaEvaluator = workbook.getCreationHelper()
                 .createFormulaEvaluator();
         styler = createSpreadsheetStyleFactory();
@@ -2749,6 +3478,17 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * Clears and reloads all data related to the currently active sheet.
      */
     protected void reloadActiveSheetData() {
+        clearActiveSheetData();
+        updateMergedRegions();
+        styler.reloadActiveSheetColumnRowStyles();
+        markAsDirty();
+    }
+
+    /**
+     * Clears the data related to the currently active sheet, apart from its
+     * view state, see {@link SheetViewState}.
+     */
+    private void clearActiveSheetData() {
         selectionManager.clear();
         valueManager.clearCachedContent();
 
@@ -2761,11 +3501,14 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         getState().sheetIndex = getSpreadsheetSheetIndex(workbook
                 .getActiveSheetIndex()) + 1;
         getState().sheetProtected = getActiveSheet().getProtect();
+        styleProtectionChanged();
         getState().cellKeysToEditorIdMap = null;
         getState().hyperlinksTooltips = null;
         getState().componentIDtoCellKeysMap = null;
+        customComponentCells.clear();
         getState().overlays = null;
         getState().mergedRegions = null;
+        mergedRegionsChanged();
         getState().cellComments = null;
         getState().cellCommentAuthors = null;
         getState().visibleCellComments = null;
@@ -2789,13 +3532,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         tablesLoaded = false;
 
         reloadSheetNames();
-        updateMergedRegions();
-        styler.reloadActiveSheetColumnRowStyles();
         getState().displayGridlines = getActiveSheet().isDisplayGridlines();
         getState().displayRowColHeadings = getActiveSheet()
                 .isDisplayRowColHeadings();
-
-        markAsDirty();
     }
 
     /**
@@ -2897,7 +3636,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * @return true if the current {@link Sheet} is protected, false otherwise.
      */
     public boolean isActiveSheetProtected() {
-        return getState().sheetProtected;
+        return getState(false).sheetProtected;
     }
 
     /**
@@ -2908,7 +3647,8 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
      * @return true if the cell is hidden, false otherwise
      */
     public boolean isCellHidden(Cell cell) {
-        return isActiveSheetProtected() && cell.getCellStyle().getHidden();
+        return isActiveSheetProtected()
+                && (getStyleProtection(cell.getCellStyle()) & STYLE_HIDDEN) != 0;
     }
 
     /**
@@ -2921,8 +3661,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
     public boolean isCellLocked(Cell cell) {
         if (isActiveSheetProtected()) {
             if (cell != null) {
-                if (cell.getCellStyle().getIndex() != 0) {
-                    return cell.getCellStyle().getLocked();
+                CellStyle style = cell.getCellStyle();
+                if (style.getIndex() != 0) {
+                    return (getStyleProtection(style) & STYLE_LOCKED) != 0;
                 } else {
                     return getState(false).lockedColumnIndexes.contains(cell
                             .getColumnIndex() + 1)
@@ -2937,6 +3678,48 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         }
     }
 
+    /**
+     * Gets the cached locked and hidden flags of the given cell style.
+     */
+    private byte getStyleProtection(CellStyle style) {
+        int index = style.getIndex() & 0xFFFF;
+        if (index >= styleProtection.length) {
+            styleProtection = Arrays.copyOf(styleProtection,
+                    Math.max(index + 1, styleProtection.length * 2));
+        }
+        byte flags = styleProtection[index];
+        if (flags == 0) {
+            flags = STYLE_PROTECTION_RESOLVED;
+            if (style.getLocked()) {
+                flags |= STYLE_LOCKED;
+            }
+            if (style.getHidden()) {
+                flags |= STYLE_HIDDEN;
+            }
+            styleProtection[index] = flags;
+        }
+        return flags;
+    }
+
+    /**
+     * Clears the cached locked and hidden flags of the cell styles. Should be
+     * called when the protection or the cell styles may have changed.
+     */
+    void styleProtectionChanged() {
+        styleProtection = new byte[0];
+    }
+
+    /**
+     * Clears the cached locked and hidden flags of the given cell style.
+     * Should be called when the style may have been modified.
+     */
+    void styleProtectionChanged(CellStyle style) {
+        int index = style.getIndex() & 0xFFFF;
+        if (index < styleProtection.length) {
+            styleProtection[index] = 0;
+        }
+    }
+
     /**
      * Gets the RPC proxy for communication to the client side.
      * 
@@ -3107,9 +3890,9 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
             setRowHidden(index, true);
         } else {
             Row row = getActiveSheet().getRow(index);
-            if (getState().hiddenRowIndexes
-                    .contains(Integer.valueOf(index + 1))) {
-                getState().hiddenRowIndexes.remove(Integer.valueOf(index + 1));
+            if (hiddenRows.get(index)) {
+                hiddenRows.clear(index);
+                updateHeaderIndex(getState().hiddenRowIndexes, index, false);
                 if (row != null && row.getZeroHeight()) {
                     row.setZeroHeight(false);
                 }
@@ -3153,10 +3936,10 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         if (width == 0) {
             setColumnHidden(index, true);
         } else {
-            if (getState().hiddenColumnIndexes.contains(Integer
-                    .valueOf(index + 1))) {
-                getState().hiddenColumnIndexes.remove(Integer
-                        .valueOf(index + 1));
+            if (hiddenColumns.get(index)) {
+                hiddenColumns.clear(index);
+                updateHeaderIndex(getState().hiddenColumnIndexes, index,
+                        false);
             }
             if (getActiveSheet().isColumnHidden(index)) {
                 getActiveSheet().setColumnHidden(index, false);
@@ -3534,6 +4317,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
             } else {
                 getState().componentIDtoCellKeysMap.clear();
             }
+            customComponentCells.clear();
             if (customComponents == null) {
                 customComponents = new HashSet<Component>();
             }
@@ -3577,6 +4361,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         } else {
             getState().cellKeysToEditorIdMap = null;
             getState().componentIDtoCellKeysMap = null;
+            customComponentCells.clear();
             if (customComponents != null && !customComponents.isEmpty()) {
                 for (Component c : customComponents) {
                     unRegisterCustomComponent(c);
@@ -3587,6 +4372,20 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         }
     }
 
+    /**
+     * Checks whether a custom component is shown in the given cell of the
+     * active sheet.
+     *
+     * @param col
+     *            Column index of target cell, 1-based
+     * @param row
+     *            Row index of target cell, 1-based
+     * @return true if the cell has a custom component
+     */
+    boolean isCustomComponentCell(int col, int row) {
+        return customComponentCells.contains(col, row);
+    }
+
     void loadRangeComponents(HashSet<Component> newCustomComponents,
             Set<Integer> rowsWithComponents, int row1, int col1, int row2,
             int col2) {
@@ -3613,6 +4412,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                         }
                         getState().componentIDtoCellKeysMap.put(
                                 customComponent.getConnectorId(), key);
+                        customComponentCells.add(c + 1, r + 1);
                         newCustomComponents.add(customComponent);
                         rowsWithComponents.add(r);
                     } else if (!isCellLocked(cell)) {
@@ -4095,6 +4895,7 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         private final List<CellReference> individualSelectedCells;
         private final CellRangeAddress selectedCellMergedRegion;
         private final List<CellRangeAddress> cellRangeAddresses;
+        private CellRangeSet selectedCells;
 
         /**
          * Creates a new selection change event.
@@ -4176,39 +4977,32 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
         }
 
         /**
-         * Gets a combination of all selected cells.
+         * Gets a combination of all selected cells. The cells are not expanded
+         * into separate references, see {@link CellRangeSet}.
          * 
          * @return A combination of all selected cells, regardless of selection
          *         mode. Doesn't contain duplicates.
          */
-        public Set<CellReference> getAllSelectedCells() {
-            return Spreadsheet.getAllSelectedCells(selectedCellReference,
-                    individualSelectedCells, cellRangeAddresses);
-
-        }
-    }
-
-    private static Set<CellReference> getAllSelectedCells(
-            CellReference selectedCellReference,
-            List<CellReference> individualSelectedCells,
-            List<CellRangeAddress> cellRangeAddresses) {
-        Set<CellReference> cells = new HashSet<CellReference>();
-        for (CellReference r : individualSelectedCells) {
-            cells.add(r);
+        public CellRangeSet getSelectedCells() {
+            if (selectedCells == null) {
+                selectedCells = new CellRangeSet(selectedCellReference,
+                        individualSelectedCells, cellRangeAddresses);
+            }
+            return selectedCells;
         }
-        cells.add(selectedCellReference);
 
-        if (cellRangeAddresses != null) {
-            for (CellRangeAddress a : cellRangeAddresses) {
-
-                for (int x = a.getFirstColumn(); x <= a.getLastColumn(); x++) {
-                    for (int y = a.getFirstRow(); y <= a.getLastRow(); y++) {
-                        cells.add(new CellReference(y, x));
-                    }
-                }
-            }
+        /**
+         * Gets a combination of all selected cells. Each selected cell is
+         * expanded into a separate reference; for large selections
+         * {@link #getSelectedCells()} is cheaper.
+         * 
+         * @return A new modifiable set with all selected cells, regardless of
+         *         selection mode. Doesn't contain duplicates.
+         * @see #getSelectedCells()
+         */
+        public Set<CellReference> getAllSelectedCells() {
+            return new HashSet<CellReference>(getSelectedCells());
         }
-        return cells;
     }
 
     /**
@@ -4320,6 +5114,18 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                 CellValueChangeListener.CELL_VALUE_CHANGE_METHOD);
     }
 
+    /**
+     * Removes the given FormulaValueChangeListener from this Spreadsheet.
+     * 
+     * @param listener
+     *            Listener to remove.
+     */
+    public void removeFormulaValueChangeListener(
+            FormulaValueChangeListener listener) {
+        removeListener(FormulaValueChangeEvent.class, listener,
+                FormulaValueChangeListener.FORMULA_VALUE_CHANGE_METHOD);
+    }
+
     /**
      * An event that is fired when an attempt to modify a locked cell has been
      * made.
@@ -4419,9 +5225,12 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
     }
 
     /**
-     * Gets all the currently selected cells.
+     * Gets all the currently selected cells. Each selected cell is expanded
+     * into a separate reference; for large selections
+     * {@link SelectionChangeEvent#getSelectedCells()} is cheaper.
      * 
-     * @return References to all currently selected cells.
+     * @return A new modifiable set with references to all currently selected
+     *         cells.
      */
     public Set<CellReference> getSelectedCellReferences() {
         SelectionChangeEvent event = selectionManager.getLatestSelectionEvent();
@@ -4544,6 +5353,191 @@ public class Spreadsheet extends AbstractComponent implements HasComponents,
                 SheetChangeListener.SHEET_CHANGE_METHOD);
     }
 
+    /**
+     * The steps of loading a workbook asynchronously, see
+     * {@link Spreadsheet#readAsync(File)}.
+     */
+    public enum LoadPhase {
+        /** The active sheet has been loaded, without cell styles */
+        ACTIVE_SHEET_LOADED,
+        /** The cell styles have been loaded and the workbook is ready */
+        COMPLETED
+    }
+
+    /**
+     * An event that is fired to registered listeners after each step of
+     * loading a workbook with {@link Spreadsheet#readAsync(File)}.
+     */
+    public static class LoadProgressEvent extends Component.Event {
+
+        private final LoadPhase phase;
+
+        /**
+         * Creates a new LoadProgressEvent.
+         * 
+         * @param source
+         *            Spreadsheet that is being loaded
+         * @param phase
+         *            The step that has been completed
+         */
+        public LoadProgressEvent(Component source, LoadPhase phase) {
+            super(source);
+            this.phase = phase;
+        }
+
+        /**
+         * Gets the loading step that has been completed.
+         * 
+         * @return the completed step
+         */
+        public LoadPhase getPhase() {
+            return phase;
+        }
+    }
+
+    /**
+     * A listener for the progress of loading a workbook asynchronously.
+     */
+    public interface LoadProgressListener extends Serializable {
+        public static final Method LOAD_PROGRESS_METHOD = ReflectTools
+                .findMethod(LoadProgressListener.class, "onLoadProgress",
+                        LoadProgressEvent.class);
+
+        /**
+         * This method is called on all registered listeners after each step
+         * of loading a workbook asynchronously.
+         * 
+         * @param event
+         *            Load progress event
+         */
+        public void onLoadProgress(LoadProgressEvent event);
+    }
+
+    /**
+     * Adds the given LoadProgressListener to this Spreadsheet.
+     * 
+     * @param listener
+     *            Listener to add
+     */
+    public void addLoadProgressListener(LoadProgressListener listener) {
+        addListener(LoadProgressEvent.class, listener,
+                LoadProgressListener.LOAD_PROGRESS_METHOD);
+    }
+
+    /**
+     * Removes the given LoadProgressListener from this Spreadsheet.
+     * 
+     * @param listener
+     *            Listener to remove
+     */
+    public void removeLoadProgressListener(LoadProgressListener listener) {
+        removeListener(LoadProgressEvent.class, listener,
+                LoadProgressListener.LOAD_PROGRESS_METHOD);
+    }
+
+    /**
+     * An event that is fired to registered listeners after each batch of rows
+     * written when a large amount of cells is pasted into the Spreadsheet.
+     * <p>
+     * The event is fired synchronously on the thread handling the paste
+     * request, while the session is locked. It is a server-side hook only:
+     * changes made in the listener, e.g. to a progress indicator, reach the
+     * client only after the whole paste has been handled.
+     */
+    public static class PasteProgressEvent extends Component.Event {
+
+        private final int pastedRows;
+        private final int totalRows;
+
+        /**
+         * Creates a new PasteProgressEvent.
+         * 
+         * @param source
+         *            Spreadsheet the cells are pasted into
+         * @param pastedRows
+         *            Amount of rows written so far
+         * @param totalRows
+         *            Amount of rows in the pasted content
+         */
+        public PasteProgressEvent(Component source, int pastedRows,
+                int totalRows) {
+            super(source);
+            this.pastedRows = pastedRows;
+            this.totalRows = totalRows;
+        }
+
+        /**
+         * Gets the amount of rows written so far.
+         * 
+         * @return the amount of pasted rows
+         */
+        public int getPastedRows() {
+            return pastedRows;
+        }
+
+        /**
+         * Gets the amount of rows in the pasted content.
+         * 
+         * @return the total amount of rows
+         */
+        public int getTotalRows() {
+            return totalRows;
+        }
+    }
+
+    /**
+     * A listener for the progress of pasting a large amount of cells.
+     */
+    public interface PasteProgressListener extends Serializable {
+        public static final Method PASTE_PROGRESS_METHOD = ReflectTools
+                .findMethod(PasteProgressListener.class, "onPasteProgress",
+                        PasteProgressEvent.class);
+
+        /**
+         * This method is called on all registered listeners after each batch
+         * of rows written when a large amount of cells is pasted.
+         * 
+         * @param event
+         *            Paste progress event
+         */
+        public void onPasteProgress(PasteProgressEvent event);
+    }
+
+    /**
+     * Adds the given PasteProgressListener to this Spreadsheet.
+     * 
+     * @param listener
+     *            Listener to add
+     */
+    public void addPasteProgressListener(PasteProgressListener listener) {
+        addListener(PasteProgressEvent.class, listener,
+                PasteProgressListener.PASTE_PROGRESS_METHOD);
+    }
+
+    /**
+     * Removes the given PasteProgressListener from this Spreadsheet.
+     * 
+     * @param listener
+     *            Listener to remove
+     */
+    public void removePasteProgressListener(PasteProgressListener listener) {
+        removeListener(PasteProgressEvent.class, listener,
+                PasteProgressListener.PASTE_PROGRESS_METHOD);
+    }
+
+    /**
+     * Fires a {@link PasteProgressEvent} synchronously to the registered
+     * listeners.
+     * 
+     * @param pastedRows
+     *            Amount of rows written so far
+     * @param totalRows
+     *            Amount of rows in the pasted content
+     */
+    void firePasteProgressEvent(int pastedRows, int totalRows) {
+        fireEvent(new PasteProgressEvent(this, pastedRows, totalRows));
+    }
+
     private void fireSheetChangeEvent(Sheet previousSheet, Sheet newSheet) {
         int newSheetPOIIndex = workbook.getActiveSheetIndex();
 
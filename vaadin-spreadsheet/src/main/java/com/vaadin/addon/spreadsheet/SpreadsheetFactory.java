@@ -24,15 +24,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.apache.poi.POIXMLException;
 import org.apache.poi.hssf.converter.ExcelToHtmlUtils;
 import org.apache.poi.hssf.usermodel.HSSFClientAnchor;
@@ -43,16 +50,25 @@ import org.apache.poi.hssf.usermodel.HSSFShape;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.ss.usermodel.Drawing;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.ss.util.PaneInformation;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFChart;
 import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFDrawing;
 import org.apache.poi.xssf.usermodel.XSSFGraphicFrame;
 import org.apache.poi.xssf.usermodel.XSSFPicture;
@@ -73,6 +89,11 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFilterColumn;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTOutlinePr;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheetProtection;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.vaadin.addon.spreadsheet.client.MergedRegion;
 import com.vaadin.addon.spreadsheet.shared.GroupingData;
@@ -88,6 +109,12 @@ import com.vaadin.addon.spreadsheet.shared.SpreadsheetState;
 @SuppressWarnings("serial")
 public class SpreadsheetFactory implements Serializable {
 
+    /**
+     * Sheet index for {@link #loadReadOnlyCellStore} that stands for the
+     * sheet that is active in the file.
+     */
+    private static final int ACTIVE_SHEET = -1;
+
     private static final Logger LOGGER = Logger
             .getLogger(SpreadsheetFactory.class.getName());
 
@@ -225,9 +252,38 @@ public class SpreadsheetFactory implements Serializable {
      */
     static void reloadSpreadsheetComponent(Spreadsheet spreadsheet,
             final File spreadsheetFile) throws IOException {
+        reloadSpreadsheetComponent(spreadsheet, createWorkbook(spreadsheetFile));
+    }
+
+    /**
+     * Reloads the Spreadsheet component from the given InputStream.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param inputStream
+     *            Source stream. Stream content be of XLS or XLSX format.
+     * @throws IOException
+     *             If data in the stream has invalid format
+     */
+    static void reloadSpreadsheetComponent(Spreadsheet spreadsheet,
+            final InputStream inputStream) throws IOException {
+        reloadSpreadsheetComponent(spreadsheet, createWorkbook(inputStream));
+    }
+
+    /**
+     * Parses a Workbook from the given file. Does not touch any Spreadsheet,
+     * so this can be called outside of the session lock.
+     *
+     * @param spreadsheetFile
+     *            Source file. Should be of XLS or XLSX format.
+     * @return the parsed Workbook
+     * @throws IOException
+     *             If file has invalid format
+     */
+    static Workbook createWorkbook(final File spreadsheetFile)
+            throws IOException {
         try {
-            Workbook workbook = WorkbookFactory.create(spreadsheetFile);
-            reloadSpreadsheetComponent(spreadsheet, workbook);
+            return WorkbookFactory.create(spreadsheetFile);
         } catch (POIXMLException e) {
             throw new IOException(e);
         } catch (InvalidFormatException e) {
@@ -236,20 +292,19 @@ public class SpreadsheetFactory implements Serializable {
     }
 
     /**
-     * Reloads the Spreadsheet component from the given InputStream.
+     * Parses a Workbook from the given InputStream. Does not touch any
+     * Spreadsheet, so this can be called outside of the session lock.
      *
-     * @param spreadsheet
-     *            Target Spreadsheet
      * @param inputStream
      *            Source stream. Stream content be of XLS or XLSX format.
+     * @return the parsed Workbook
      * @throws IOException
      *             If data in the stream has invalid format
      */
-    static void reloadSpreadsheetComponent(Spreadsheet spreadsheet,
-            final InputStream inputStream) throws IOException {
+    static Workbook createWorkbook(final InputStream inputStream)
+            throws IOException {
         try {
-            reloadSpreadsheetComponent(spreadsheet,
-                    WorkbookFactory.create(inputStream));
+            return WorkbookFactory.create(inputStream);
         } catch (InvalidFormatException e) {
             throw new IOException("Invalid file format.", e);
         }
@@ -266,6 +321,23 @@ public class SpreadsheetFactory implements Serializable {
      */
     static void reloadSpreadsheetComponent(Spreadsheet spreadsheet,
             final Workbook workbook) {
+        reloadSpreadsheetComponentData(spreadsheet, workbook);
+        loadWorkbookStyles(spreadsheet);
+    }
+
+    /**
+     * Reloads the Spreadsheet component using the given Workbook as data
+     * source, without loading the cell styles. The active sheet can be shown
+     * after this, and the styles should be loaded with
+     * {@link #loadWorkbookStyles(Spreadsheet)} next.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param workbook
+     *            Source Workbook
+     */
+    static void reloadSpreadsheetComponentData(Spreadsheet spreadsheet,
+            final Workbook workbook) {
         Workbook oldWorkbook = spreadsheet.getWorkbook();
         if (oldWorkbook != null) {
             spreadsheet.clearSheetServerSide();
@@ -276,12 +348,320 @@ public class SpreadsheetFactory implements Serializable {
         final Sheet sheet = workbook.getSheetAt(workbook.getActiveSheetIndex());
         spreadsheet.setInternalWorkbook(workbook);
         reloadSpreadsheetData(spreadsheet, sheet);
-        loadWorkbookStyles(spreadsheet);
+    }
+
+    /**
+     * Returns the default executor for parsing workbooks in the background,
+     * see {@link Spreadsheet#readAsync(File)}. Virtual threads are used when
+     * the JVM supports them, otherwise a pool of daemon threads.
+     *
+     * @return the shared executor
+     */
+    static Executor getDefaultLoadExecutor() {
+        return LoadExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Creates the executor on first use. Only has static members, so it is not
+     * serializable.
+     */
+    private static class LoadExecutorHolder {
+        private static final Executor EXECUTOR = createLoadExecutor();
+
+        private static Executor createLoadExecutor() {
+            try {
+                return (Executor) Executors.class.getMethod(
+                        "newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // virtual threads are not available in this JVM
+            }
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "spreadsheet-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Reloads the Spreadsheet component in read-only mode from the given XLSX
+     * file. The sheets are parsed with the streaming (SAX) model into
+     * {@link ReadOnlyCellStore}s, and the Spreadsheet is given a workbook with
+     * empty, protected sheets of the same names. The cell values are served
+     * from the stores, so the POI object graph of the file is never built.
+     * <p>
+     * Only the active sheet of the file is parsed here. The other sheets are
+     * parsed from the file when they are first shown, see
+     * {@link #loadReadOnlySheet(Spreadsheet, Sheet)}.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param spreadsheetFile
+     *            Source file. Should be of XLSX format.
+     * @throws IOException
+     *             If file has invalid format
+     */
+    static void reloadSpreadsheetComponentReadOnly(Spreadsheet spreadsheet,
+            final File spreadsheetFile) throws IOException {
+        reloadSpreadsheetComponentReadOnly(spreadsheet,
+                new ReadOnlyWorkbookSource(spreadsheetFile));
+    }
+
+    /**
+     * Reloads the Spreadsheet component in read-only mode from the given
+     * InputStream, see {@link #reloadSpreadsheetComponentReadOnly(Spreadsheet, File)}
+     * . The compressed content of the stream is kept in memory for parsing
+     * the sheets that have not been shown yet.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param inputStream
+     *            Source stream. Stream content should be of XLSX format.
+     * @throws IOException
+     *             If data in the stream has invalid format
+     */
+    static void reloadSpreadsheetComponentReadOnly(Spreadsheet spreadsheet,
+            final InputStream inputStream) throws IOException {
+        reloadSpreadsheetComponentReadOnly(spreadsheet,
+                new ReadOnlyWorkbookSource(inputStream));
+    }
+
+    private static void reloadSpreadsheetComponentReadOnly(
+            Spreadsheet spreadsheet, ReadOnlyWorkbookSource source)
+            throws IOException {
+        final List<String> sheetNames = new ArrayList<String>();
+        final ReadOnlyCellStore activeStore = loadReadOnlyCellStore(
+                spreadsheet, source, ACTIVE_SHEET, sheetNames);
+        final int activeIndex = activeStore == null ? 0 : sheetNames
+                .indexOf(activeStore.getSheetName());
+
+        final XSSFWorkbook workbook = new XSSFWorkbook();
+        for (String sheetName : sheetNames) {
+            workbook.createSheet(sheetName).enableLocking();
+        }
+        if (sheetNames.isEmpty()) {
+            ((XSSFSheet) createNewSheet(workbook)).enableLocking();
+        } else {
+            workbook.setActiveSheet(activeIndex);
+            if (activeStore != null) {
+                reserveSheetSize(workbook.getSheetAt(activeIndex), activeStore);
+            }
+        }
+        reloadSpreadsheetComponent(spreadsheet, workbook);
+        if (!sheetNames.isEmpty()) {
+            List<ReadOnlyCellStore> stores = new ArrayList<ReadOnlyCellStore>(
+                    Collections.<ReadOnlyCellStore> nCopies(sheetNames.size(),
+                            null));
+            stores.set(activeIndex, activeStore);
+            spreadsheet.setReadOnlyCellStores(stores, source);
+        }
+    }
+
+    /**
+     * Parses the given sheet of a workbook loaded in read-only mode, if it has
+     * not been parsed yet, and reserves the size of its cells in the empty
+     * sheet of the Spreadsheet.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param sheet
+     *            Sheet that is about to be shown
+     * @throws UncheckedIOException
+     *             If the sheet can't be read from the source of the workbook,
+     *             e.g. because the file has been removed
+     */
+    static void loadReadOnlySheet(Spreadsheet spreadsheet, Sheet sheet) {
+        final int sheetIndex = spreadsheet.getWorkbook().getSheetIndex(sheet);
+        if (spreadsheet.getReadOnlyCellStore(sheetIndex) != null) {
+            return;
+        }
+        try {
+            ReadOnlyCellStore store = loadReadOnlyCellStore(spreadsheet,
+                    spreadsheet.getReadOnlyWorkbookSource(), sheetIndex, null);
+            if (store != null) {
+                reserveSheetSize(sheet, store);
+                spreadsheet.setReadOnlyCellStore(sheetIndex, store);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read sheet "
+                    + sheet.getSheetName(), e);
+        }
+    }
+
+    /**
+     * Parses the cell values of one sheet from the given read-only workbook.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet, used for formatting the values
+     * @param source
+     *            Package of the workbook
+     * @param sheetIndex
+     *            Index of the sheet to parse, 0-based, or
+     *            {@link #ACTIVE_SHEET} for the sheet that is active in the file
+     * @param sheetNames
+     *            List to add the names of all sheets to, or <code>null</code>
+     * @return the parsed values, or <code>null</code> if there is no sheet
+     *         with the given index
+     * @throws IOException
+     *             If the package can't be read, or is of an invalid format
+     */
+    private static ReadOnlyCellStore loadReadOnlyCellStore(
+            Spreadsheet spreadsheet, ReadOnlyWorkbookSource source,
+            int sheetIndex, List<String> sheetNames) throws IOException {
+        ReadOnlyCellStore store = null;
+        final OPCPackage pkg = source.open();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            if (sheetIndex == ACTIVE_SHEET) {
+                sheetIndex = readActiveSheetIndex(reader);
+            }
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader
+                    .getSheetsData();
+            int index = 0;
+            while (sheets.hasNext()) {
+                InputStream sheetStream = sheets.next();
+                try {
+                    if (sheetNames != null) {
+                        sheetNames.add(sheets.getSheetName());
+                    }
+                    if (index == sheetIndex) {
+                        store = new ReadOnlyCellStore(sheets.getSheetName());
+                        XMLReader parser = SAXHelper.newXMLReader();
+                        parser.setContentHandler(new XSSFSheetXMLHandler(
+                                reader.getStylesTable(), null,
+                                new ReadOnlySharedStringsTable(pkg),
+                                new CellStoreContentsHandler(store),
+                                spreadsheet.getCellValueManager()
+                                        .getDataFormatter(), false));
+                        parser.parse(new InputSource(sheetStream));
+                        store.trim();
+                        if (sheetNames == null) {
+                            break;
+                        }
+                    }
+                } finally {
+                    sheetStream.close();
+                }
+                index++;
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid file format.", e);
+        } catch (SAXException e) {
+            throw new IOException("Invalid file format.", e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } finally {
+            // read only package, nothing to save
+            pkg.revert();
+        }
+        return store;
+    }
+
+    /**
+     * Reads the index of the active sheet from the workbook part of a
+     * read-only workbook.
+     *
+     * @return the active sheet index, 0-based, or 0 if it is not valid
+     */
+    private static int readActiveSheetIndex(XSSFReader reader)
+            throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        final ActiveSheetHandler handler = new ActiveSheetHandler();
+        final InputStream workbookStream = reader.getWorkbookData();
+        try {
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(workbookStream));
+        } finally {
+            workbookStream.close();
+        }
+        return handler.activeTab < handler.sheetCount ? handler.activeTab : 0;
+    }
+
+    /**
+     * Collects the active tab of the first workbook view and the number of
+     * sheets from the workbook part of an XLSX package.
+     */
+    @SuppressWarnings("serial")
+    private static class ActiveSheetHandler extends DefaultHandler implements
+            Serializable {
+
+        private int activeTab = -1;
+        private int sheetCount;
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            if ("workbookView".equals(localName) && activeTab < 0) {
+                String value = attributes.getValue("activeTab");
+                activeTab = value == null ? 0 : Integer.parseInt(value);
+            } else if ("sheet".equals(localName)) {
+                sheetCount++;
+            }
+        }
+    }
+
+    private static void reserveSheetSize(Sheet sheet, ReadOnlyCellStore store) {
+        if (store.getRowCount() > 0 && store.getColumnCount() > 0) {
+            // reserve the size of the sheet, like for new sheets
+            sheet.createRow(store.getRowCount() - 1).createCell(
+                    store.getColumnCount() - 1);
+        }
+    }
+
+    /**
+     * Collects the formatted cell values of a sheet parsed with the event
+     * model into a {@link ReadOnlyCellStore}.
+     */
+    @SuppressWarnings("serial")
+    private static class CellStoreContentsHandler implements
+            SheetContentsHandler, Serializable {
+
+        private final ReadOnlyCellStore store;
+        private int row;
+        private int col;
+
+        private CellStoreContentsHandler(ReadOnlyCellStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row = rowNum;
+            col = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue,
+                XSSFComment comment) {
+            // the reference is optional in the file format
+            if (cellReference == null) {
+                col++;
+            } else {
+                col = new CellReference(cellReference).getCol();
+            }
+            if (formattedValue != null && !formattedValue.isEmpty()) {
+                store.setValue(row, col, formattedValue);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
     }
 
     /**
      * Writes the current Workbook state from the given Spreadsheet to the given
      * file.
+     * <p>
+     * The Spreadsheet keeps using the same Workbook after writing, so the
+     * server side caches and the client side state stay valid. Only an
+     * {@link SXSSFWorkbook}, which is disposed after writing, is replaced by
+     * reading back the written file.
      *
      * @param spreadsheet
      *            Source Spreadsheet
@@ -320,11 +700,13 @@ public class SpreadsheetFactory implements Serializable {
                 fos.close();
             }
         }
-        try {
-            Workbook wb = WorkbookFactory.create(file);
-            spreadsheet.setInternalWorkbook(wb);
-        } catch (InvalidFormatException e) {
-            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        if (workbook instanceof SXSSFWorkbook) {
+            try {
+                Workbook wb = WorkbookFactory.create(file);
+                spreadsheet.setInternalWorkbook(wb);
+            } catch (InvalidFormatException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            }
         }
         return file;
     }
@@ -401,6 +783,9 @@ public class SpreadsheetFactory implements Serializable {
     static void reloadSpreadsheetData(final Spreadsheet spreadsheet,
             final Sheet sheet) {
         logMemoryUsage();
+        if (spreadsheet.isReadOnlyStreaming()) {
+            loadReadOnlySheet(spreadsheet, sheet);
+        }
         try {
             setDefaultRowHeight(spreadsheet, sheet);
             setDefaultColumnWidth(spreadsheet, sheet);
@@ -416,6 +801,32 @@ public class SpreadsheetFactory implements Serializable {
         logMemoryUsage();
     }
 
+    /**
+     * Reloads the data for the given Sheet within the target Spreadsheet from
+     * a view state that was taken when the sheet was last active. Only the
+     * overlays, tables and freeze pane are loaded from the sheet.
+     *
+     * @param spreadsheet
+     *            Target Spreadsheet
+     * @param sheet
+     *            Target sheet, the active sheet of the Spreadsheet
+     * @param viewState
+     *            View state taken from the sheet
+     */
+    static void reloadSpreadsheetData(final Spreadsheet spreadsheet,
+            final Sheet sheet, final SheetViewState viewState) {
+        logMemoryUsage();
+        try {
+            viewState.restore(spreadsheet);
+            loadSheetOverlays(spreadsheet);
+            loadSheetTables(spreadsheet);
+            loadFreezePane(spreadsheet);
+        } catch (NullPointerException npe) {
+            LOGGER.log(Level.WARNING, npe.getMessage(), npe);
+        }
+        logMemoryUsage();
+    }
+
     /**
      * Load the sheet filter and tables in the given sheet
      *
@@ -479,7 +890,7 @@ public class SpreadsheetFactory implements Serializable {
         final float[] rowHeights = new float[rows];
         int cols = 0;
         int tempRowIndex = -1;
-        final ArrayList<Integer> hiddenRowIndexes = new ArrayList<Integer>();
+        final BitSet hiddenRows = new BitSet();
         for (Row row : sheet) {
             int rIndex = row.getRowNum();
             // set the empty rows to have the default row width
@@ -488,7 +899,7 @@ public class SpreadsheetFactory implements Serializable {
             }
             if (row.getZeroHeight()) {
                 rowHeights[rIndex] = 0.0F;
-                hiddenRowIndexes.add(rIndex + 1);
+                hiddenRows.set(rIndex);
             } else {
                 rowHeights[rIndex] = row.getHeightInPoints();
             }
@@ -513,7 +924,7 @@ public class SpreadsheetFactory implements Serializable {
                 rowHeights[i] = defaultRowHeightInPoints;
             }
         }
-        spreadsheet.getState().hiddenRowIndexes = hiddenRowIndexes;
+        spreadsheet.setHiddenRows(hiddenRows);
         spreadsheet.getState().rowH = rowHeights;
 
         // Always have at least the default amount of columns
@@ -523,17 +934,17 @@ public class SpreadsheetFactory implements Serializable {
         spreadsheet.getState().cols = cols;
 
         final int[] colWidths = new int[cols];
-        final ArrayList<Integer> hiddenColumnIndexes = new ArrayList<Integer>();
+        final BitSet hiddenColumns = new BitSet();
         for (int i = 0; i < cols; i++) {
             if (sheet.isColumnHidden(i)) {
                 colWidths[i] = 0;
-                hiddenColumnIndexes.add(i + 1);
+                hiddenColumns.set(i);
             } else {
                 colWidths[i] = ExcelToHtmlUtils.getColumnWidthInPx(sheet
                         .getColumnWidth(i));
             }
         }
-        spreadsheet.getState().hiddenColumnIndexes = hiddenColumnIndexes;
+        spreadsheet.setHiddenColumns(hiddenColumns);
         spreadsheet.getState().colW = colWidths;
     }
 
@@ -990,6 +1401,7 @@ public class SpreadsheetFactory implements Serializable {
                 spreadsheet.getState().mergedRegions.add(mergedRegion);
             }
         }
+        spreadsheet.mergedRegionsChanged();
     }
 
     /**
@@ -1022,11 +1434,11 @@ public class SpreadsheetFactory implements Serializable {
              * invisible frozen rows/columns are effectively hidden in Excel. We
              * mimic this behavior here.
              */
-            for (int col = 0; col < sheet.getLeftCol(); col++) {
-                spreadsheet.setColumnHidden(col, true);
+            if (sheet.getLeftCol() > 0) {
+                spreadsheet.setColumnsHidden(0, sheet.getLeftCol() - 1, true);
             }
-            for (int row = 0; row < sheet.getTopRow(); row++) {
-                spreadsheet.setRowHidden(row, true);
+            if (sheet.getTopRow() > 0) {
+                spreadsheet.setRowsHidden(0, sheet.getTopRow() - 1, true);
             }
         } else {
             spreadsheet.getState().verticalSplitPosition = 0;
@@ -18,6 +18,7 @@ package com.vaadin.addon.spreadsheet;
  */
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Set;
 
 /**
@@ -50,4 +51,22 @@ public interface SpreadsheetFilter extends Serializable {
      * @return Row indexes of the filtered rows, 0-based
      */
     public Set<Integer> getFilteredRows();
+
+    /**
+     * Returns the rows that should be filtered by this filter as a bit set,
+     * see {@link #getFilteredRows()}. The filter table combines the filters
+     * with this method. The default implementation converts the set returned
+     * by {@link #getFilteredRows()}; filters that keep their rows in a bit
+     * set should override this and return it directly.
+     * 
+     * @return Row indexes of the filtered rows, 0-based. The caller does not
+     *         modify the returned bit set.
+     */
+    public default BitSet getFilteredRowBits() {
+        BitSet rows = new BitSet();
+        for (Integer row : getFilteredRows()) {
+            rows.set(row);
+        }
+        return rows;
+    }
 }
@@ -17,12 +17,16 @@ package com.vaadin.addon.spreadsheet;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 
@@ -30,6 +34,8 @@ import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.Notification.Type;
 import com.vaadin.ui.VerticalLayout;
 
 /**
@@ -43,6 +49,8 @@ import com.vaadin.ui.VerticalLayout;
  * <p>
  * Has a "Clear Filters" button inside the {@link PopupButton}s pop-up, that
  * clears all the filters for that column (contained within the same pop-up).
+ * Buttons for sorting the table by the column can be added to the pop-ups
+ * with {@link #setSortButtonsEnabled(boolean)}.
  * 
  * @author Vaadin Ltd.
  */
@@ -50,10 +58,15 @@ import com.vaadin.ui.VerticalLayout;
 public class SpreadsheetFilterTable extends SpreadsheetTable implements
         Button.ClickListener {
     public static final String CLEAR_FILTERS_BUTTON_CLASSNAME = "clear-filters-button";
+    public static final String SORT_ASCENDING_BUTTON_CLASSNAME = "sort-ascending-button";
+    public static final String SORT_DESCENDING_BUTTON_CLASSNAME = "sort-descending-button";
 
     protected final Map<PopupButton, HashSet<SpreadsheetFilter>> popupButtonToFiltersMap;
     protected final Map<PopupButton, Button> popupButtonToClearButtonMap;
     protected CellRangeAddress filteringRegion;
+    private FilterValueIndex valueIndex;
+    private boolean sortButtonsEnabled;
+    private final List<Button> sortButtons = new ArrayList<Button>();
 
     /**
      * Creates a new filter table for the given spreadsheet component, its
@@ -115,6 +128,9 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
             }
             if (popupButtonToClearButtonMap.isEmpty()) {
                 initClearAllButtons();
+                if (sortButtonsEnabled) {
+                    initSortButtons();
+                }
             }
         }
     }
@@ -130,6 +146,43 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
         super.clear();
         popupButtonToClearButtonMap.clear();
         popupButtonToFiltersMap.clear();
+        sortButtons.clear();
+        if (valueIndex != null) {
+            getSpreadsheet().removeCellValueChangeListener(valueIndex);
+            getSpreadsheet().removeFormulaValueChangeListener(valueIndex);
+            valueIndex = null;
+        }
+    }
+
+    /**
+     * Gets the index of the formatted values in the filtering region. The
+     * index is created when first needed and kept up to date with the cell
+     * value change events until this table is cleared.
+     * 
+     * @return value index of the filtering region
+     */
+    FilterValueIndex getValueIndex() {
+        if (valueIndex == null) {
+            valueIndex = new FilterValueIndex(getSpreadsheet(), getSheet(),
+                    filteringRegion);
+            getSpreadsheet().addCellValueChangeListener(valueIndex);
+            getSpreadsheet().addFormulaValueChangeListener(valueIndex);
+        }
+        return valueIndex;
+    }
+
+    /**
+     * Called when the values of the given cells have been changed without a
+     * value change event, e.g. with {@link Spreadsheet#refreshCells(Cell...)}.
+     * 
+     * @param cells
+     *            Changed cells, or <code>null</code> if any cell may have
+     *            changed
+     */
+    void cellValuesChanged(Collection<Cell> cells) {
+        if (valueIndex != null) {
+            valueIndex.cellsChanged(cells);
+        }
     }
 
     /**
@@ -147,11 +200,8 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
             popupButtonToClearButtonMap.get(popupButton).setEnabled(false);
             popupButton.markActive(false);
         }
-        Spreadsheet spreadsheet = getSpreadsheet();
-        for (int r = filteringRegion.getFirstRow(); r <= filteringRegion
-                .getLastRow(); r++) {
-            spreadsheet.setRowHidden(r, false);
-        }
+        getSpreadsheet().setRowsHidden(filteringRegion.getFirstRow(),
+                filteringRegion.getLastRow(), false);
     }
 
     /**
@@ -165,6 +215,103 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
         }
     }
 
+    /**
+     * Sets whether the pop-ups have buttons for sorting this table by the
+     * column of the pop-up. The buttons are not shown by default.
+     * 
+     * @param enabled
+     *            <code>true</code> to show the sort buttons,
+     *            <code>false</code> to remove them
+     */
+    public void setSortButtonsEnabled(boolean enabled) {
+        if (enabled == sortButtonsEnabled) {
+            return;
+        }
+        sortButtonsEnabled = enabled;
+        if (enabled) {
+            if (!popupButtonToClearButtonMap.isEmpty()) {
+                initSortButtons();
+            }
+        } else {
+            for (Button button : sortButtons) {
+                if (button.getParent() instanceof VerticalLayout) {
+                    ((VerticalLayout) button.getParent())
+                            .removeComponent(button);
+                }
+            }
+            sortButtons.clear();
+        }
+    }
+
+    /**
+     * Returns whether the pop-ups have buttons for sorting this table.
+     * 
+     * @return <code>true</code> if the sort buttons are shown
+     * @see #setSortButtonsEnabled(boolean)
+     */
+    public boolean isSortButtonsEnabled() {
+        return sortButtonsEnabled;
+    }
+
+    /**
+     * Creates the ascending and descending sort buttons at the top of the
+     * pop-ups. Called only when the sort buttons are enabled.
+     */
+    protected void initSortButtons() {
+        for (PopupButton popupButton : getPopupButtons()) {
+            Button ascending = createSortButton(popupButton, true);
+            Button descending = createSortButton(popupButton, false);
+            addComponentToPopup(popupButton, ascending, 0);
+            addComponentToPopup(popupButton, descending, 1);
+            sortButtons.add(ascending);
+            sortButtons.add(descending);
+        }
+    }
+
+    /**
+     * Creates a button that sorts this table by the column of the given pop-up
+     * button. It has the {@value #SORT_ASCENDING_BUTTON_CLASSNAME} or
+     * {@value #SORT_DESCENDING_BUTTON_CLASSNAME} class name and the caption
+     * returned by {@link #getSortButtonCaption(boolean)}. If the table cannot
+     * be sorted because it contains merged cells, a warning notification is
+     * shown.
+     * 
+     * @param popupButton
+     *            The pop-up button of the column to sort by
+     * @param ascending
+     *            <code>true</code> for ascending order
+     * @return Button for sorting the table
+     */
+    protected Button createSortButton(final PopupButton popupButton,
+            final boolean ascending) {
+        final Button button = new Button(getSortButtonCaption(ascending));
+        button.addStyleName(ascending ? SORT_ASCENDING_BUTTON_CLASSNAME
+                : SORT_DESCENDING_BUTTON_CLASSNAME);
+        button.addClickListener(event -> {
+            try {
+                sort(popupButton.getColumn(), ascending);
+            } catch (IllegalStateException e) {
+                new Notification(e.getMessage(), Type.WARNING_MESSAGE)
+                        .show(button.getUI().getPage());
+            }
+            popupButton.closePopup();
+        });
+        return button;
+    }
+
+    /**
+     * Gets the caption of a sort button. Override this for localized
+     * captions.
+     * 
+     * @param ascending
+     *            <code>true</code> for the ascending sort button
+     * @return "Sort A to Z" for the ascending and "Sort Z to A" for the
+     *         descending button
+     */
+    protected String getSortButtonCaption(boolean ascending) {
+        return ascending ? "Sort A to Z" : "Sort Z to A";
+    }
+
     /**
      * Creates all filters for this table. Override this in an extending class
      * for adding filters on class construction.
@@ -191,13 +338,23 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
 
     private void addComponentToPopup(PopupButton popupButton,
             Component component) {
+        addComponentToPopup(popupButton, component, -1);
+    }
+
+    private void addComponentToPopup(PopupButton popupButton,
+            Component component, int index) {
         if (popupButton.getContent() == null) {
             VerticalLayout content = new VerticalLayout();
             content.setMargin(false);
             popupButton.setContent(content);
         }
 
-        ((VerticalLayout) popupButton.getContent()).addComponent(component);
+        VerticalLayout content = (VerticalLayout) popupButton.getContent();
+        if (index < 0 || index > content.getComponentCount()) {
+            content.addComponent(component);
+        } else {
+            content.addComponent(component, index);
+        }
     }
 
     /**
@@ -224,6 +381,27 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
         return filteringRegion;
     }
 
+    /**
+     * Called when the rows of this table have been sorted, or a sort has been
+     * undone or redone. The {@link ItemFilter}s are applied again to the
+     * moved rows, and {@link #onFiltersUpdated()} is called.
+     */
+    void rowsSorted() {
+        if (popupButtonToFiltersMap.isEmpty()) {
+            // cleared, the filters are recreated on reload
+            return;
+        }
+        for (HashSet<SpreadsheetFilter> filters : popupButtonToFiltersMap
+                .values()) {
+            for (SpreadsheetFilter filter : filters) {
+                if (filter instanceof ItemFilter) {
+                    ((ItemFilter) filter).reapplyFilter();
+                }
+            }
+        }
+        onFiltersUpdated();
+    }
+
     /**
      * Called when one of the filters ({@link SpreadsheetFilter}) has been
      * updated, and the sheet ({@link #getSheet()}) and component (
@@ -235,25 +413,22 @@ public class SpreadsheetFilterTable extends SpreadsheetTable implements
      * added your own SpreadsheetFilter.
      */
     public void onFiltersUpdated() {
-        Set<Integer> filteredRows = new HashSet<Integer>();
+        BitSet filteredRows = new BitSet();
         for (Entry<PopupButton, HashSet<SpreadsheetFilter>> entry : popupButtonToFiltersMap
                 .entrySet()) {
             PopupButton popupButton = entry.getKey();
             HashSet<SpreadsheetFilter> filters = entry.getValue();
-            HashSet<Integer> temp = new HashSet<Integer>();
+            BitSet temp = new BitSet();
             for (SpreadsheetFilter filter : filters) {
-                temp.addAll(filter.getFilteredRows());
+                temp.or(filter.getFilteredRowBits());
             }
             popupButtonToClearButtonMap.get(popupButton).setEnabled(
                     !temp.isEmpty());
             popupButton.markActive(!temp.isEmpty());
-            filteredRows.addAll(temp);
-        }
-        Spreadsheet spreadsheet = getSpreadsheet();
-        for (int r = filteringRegion.getFirstRow(); r <= filteringRegion
-                .getLastRow(); r++) {
-            spreadsheet.setRowHidden(r, filteredRows.contains(r));
+            filteredRows.or(temp);
         }
+        getSpreadsheet().setRowsHidden(filteringRegion.getFirstRow(),
+                filteringRegion.getLastRow(), filteredRows);
     }
 
     /**
@@ -23,6 +23,8 @@ import com.vaadin.addon.spreadsheet.client.SpreadsheetServerRpc;
 import com.vaadin.addon.spreadsheet.command.CellValueCommand;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -30,14 +32,16 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellReference;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
 
 /**
  * Implementation of the Spreadsheet Server RPC interface.
@@ -45,6 +49,12 @@ import java.util.StringTokenizer;
 @SuppressWarnings("serial")
 public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
 
+    /** Pastes with more cells than this are written in batches of rows */
+    private static final int BULK_PASTE_CELLS = 10000;
+
+    /** Rows written between notifying the formula evaluator */
+    private static final int PASTE_BATCH_ROWS = 1000;
+
     private Spreadsheet spreadsheet;
 
     public SpreadsheetHandlerImpl(Spreadsheet spreadsheet) {
@@ -254,37 +264,19 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
         CellReference selectedCellReference = spreadsheet
                 .getSelectedCellReference();
 
-        String[] lines;
-        if (text.indexOf("\r\n") > -1) {
-            lines = text.split("\r\n");
-        } else if (text.indexOf("\n") > -1) {
-            lines = text.split("\n");
-        } else {
-            lines = text.split("\r");
-        }
-
-        int pasteHeight = lines.length;
-        int pasteWidth = 1;
-        for (String line : lines) {
-            String[] tokens = splitOnTab(line);
-            pasteWidth = Math.max(pasteWidth, tokens.length);
-        }
+        final PasteText paste = new PasteText(text);
+        int pasteHeight = paste.getLineCount();
+        int pasteWidth = paste.getWidth();
 
         int rowIndex = selectedCellReference.getRow();
         int colIndex = selectedCellReference.getCol();
 
         // Check for protected cells at target
-        for (int i = 0; i < pasteHeight; i++) {
-            Row row = activesheet.getRow(rowIndex + i);
-            if (row != null) {
-                for (int j = 0; j < pasteWidth; j++) {
-                    Cell cell = row.getCell(colIndex + j);
-                    if (spreadsheet.isCellLocked(cell)) {
-                        protectedCellWriteAttempted();
-                        return;
-                    }
-                }
-            }
+        if (spreadsheet.isActiveSheetProtected()
+                && isRangeLocked(activesheet, rowIndex, colIndex, pasteHeight,
+                        pasteWidth)) {
+            protectedCellWriteAttempted();
+            return;
         }
 
         CellValueCommand command = new CellValueCommand(spreadsheet);
@@ -292,13 +284,20 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
                 rowIndex + pasteHeight - 1, colIndex, colIndex + pasteWidth - 1);
         command.captureCellRangeValues(affectedRange);
 
+        final CellValueManager valueManager = spreadsheet
+                .getCellValueManager();
+        final FormulaEvaluator evaluator = valueManager.getFormulaEvaluator();
+        final Locale locale = spreadsheet.getLocale();
+        final DataFormatter formatter = new CustomDataFormatter(locale);
+        // for large pastes, the evaluator is notified once per batch of rows
+        final boolean bulk = (long) pasteHeight * pasteWidth > BULK_PASTE_CELLS;
+
         for (int i = 0; i < pasteHeight; i++) {
-            String line = lines[i];
             Row row = activesheet.getRow(rowIndex + i);
             if (row == null) {
                 row = activesheet.createRow(rowIndex + i);
             }
-            String[] tokens = splitOnTab(line);
+            String[] tokens = paste.getTokens(i);
             for (int j = 0; j < pasteWidth; j++) {
                 Cell cell = row.getCell(colIndex + j);
                 if (cell == null) {
@@ -307,7 +306,7 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
                 if (j < tokens.length) {
                     String cellContent = tokens[j];
                     Double numVal = SpreadsheetUtil.parseNumber(cell,
-                            cellContent, spreadsheet.getLocale());
+                            cellContent, locale, formatter);
                     if (numVal != null) {
                         cell.setCellType(Cell.CELL_TYPE_NUMERIC);
                         cell.setCellValue(numVal);
@@ -319,8 +318,15 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
                     spreadsheet.markCellAsDeleted(cell, true);
                 }
 
-                spreadsheet.getCellValueManager().markCellForUpdate(cell);
-                spreadsheet.getCellValueManager().getFormulaEvaluator().notifyUpdateCell(cell);
+                valueManager.markCellForUpdate(cell);
+                if (!bulk) {
+                    evaluator.notifyUpdateCell(cell);
+                }
+            }
+            if (bulk
+                    && ((i + 1) % PASTE_BATCH_ROWS == 0 || i + 1 == pasteHeight)) {
+                evaluator.clearAllCachedResultValues();
+                spreadsheet.firePasteProgressEvent(i + 1, pasteHeight);
             }
         }
 
@@ -333,78 +339,147 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
         fireCellValueChangeEvent(affectedRange);
     }
 
-    private void fireCellValueChangeEvent(CellRangeAddress region) {
-        Set<CellReference> cells = new HashSet<CellReference>();
-        for (int x = region.getFirstColumn(); x <= region.getLastColumn(); x++) {
-            for (int y = region.getFirstRow(); y <= region.getLastRow(); y++) {
-                cells.add(new CellReference(y, x));
+    /**
+     * Checks whether any cell of the existing rows within the given range is
+     * locked. Each cell style other than the default style is checked only
+     * once for the whole range, since its locked state doesn't depend on the
+     * cell. The locked state of cells with the default style depends on the
+     * row and column styles, so those are checked one by one.
+     */
+    private boolean isRangeLocked(Sheet sheet, int rowIndex, int colIndex,
+            int height, int width) {
+        final BitSet unlockedStyles = new BitSet();
+        for (int i = 0; i < height; i++) {
+            Row row = sheet.getRow(rowIndex + i);
+            if (row != null) {
+                for (int j = 0; j < width; j++) {
+                    Cell cell = row.getCell(colIndex + j);
+                    int styleIndex = cell == null ? 0 : cell.getCellStyle()
+                            .getIndex() & 0xFFFF;
+                    if (styleIndex != 0 && unlockedStyles.get(styleIndex)) {
+                        continue;
+                    }
+                    if (spreadsheet.isCellLocked(cell)) {
+                        return true;
+                    }
+                    unlockedStyles.set(styleIndex);
+                }
             }
         }
-        fireCellValueChangeEvent(cells);
-    }
-
-    private void fireCellValueChangeEvent(Set<CellReference> cells) {
-        spreadsheet.fireEvent(new CellValueChangeEvent(spreadsheet, cells));
+        return false;
     }
 
     /**
-     * Splits tab-delimited string into an array of Strings, inserting empty
-     * strings between any tab characters and the beginning and end of the line
-     * if it would be a tab. Length of array will equal number of tabs + 1.
-     * <p>
-     * E.g.<br/>
-     * "1\t2" - {"1","2"}<br/>
-     * "\t\t" - {"","",""}<br/>
-     * 
-     * @param line
-     *            input
-     * @return output string parts split at tabs
+     * Tab and line separated text pasted from the clipboard. The lines are
+     * located with one pass over the text, and each line is split into cell
+     * values only when it is written.
      */
-    private static String[] splitOnTab(String line) {
-
-        List<String> list = new LinkedList<String>();
-        StringTokenizer tokenizer = new StringTokenizer(line, "\t", true);
-
-        // marker for when last token is a tab, meaning we need one
-        // additional empty string
-        boolean lastCharWasTab = false;
+    @SuppressWarnings("serial")
+    private static class PasteText implements Serializable {
+        private final String text;
+        private int[] lineStarts = new int[16];
+        private int[] lineEnds = new int[16];
+        private int lineCount;
+        private int width = 1;
+
+        private PasteText(String text) {
+            this.text = text;
+            final String separator;
+            if (text.indexOf("\r\n") > -1) {
+                separator = "\r\n";
+            } else if (text.indexOf("\n") > -1) {
+                separator = "\n";
+            } else {
+                separator = "\r";
+            }
+            int start = 0;
+            while (true) {
+                int end = text.indexOf(separator, start);
+                if (end < 0) {
+                    end = text.length();
+                }
+                addLine(start, end);
+                if (end == text.length()) {
+                    break;
+                }
+                start = end + separator.length();
+            }
+            // like String.split, ignore trailing empty lines
+            while (lineCount > 1
+                    && lineStarts[lineCount - 1] == lineEnds[lineCount - 1]) {
+                lineCount--;
+            }
+            for (int i = 0; i < lineCount; i++) {
+                width = Math.max(width, getTokenCount(i));
+            }
+        }
 
-        while (tokenizer.hasMoreTokens()) {
+        private void addLine(int start, int end) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+            }
+            lineStarts[lineCount] = start;
+            lineEnds[lineCount] = end;
+            lineCount++;
+        }
 
-            String content = tokenizer.nextToken();
+        private int getLineCount() {
+            return lineCount;
+        }
 
-            if (content.equals("\t")) {
-                // empty content; insert empty string here
-                content = "";
+        private int getWidth() {
+            return width;
+        }
 
-                if (!tokenizer.hasMoreTokens()) {
-                    lastCharWasTab = true;
+        private int getTokenCount(int line) {
+            if (lineStarts[line] == lineEnds[line]) {
+                return 0;
+            }
+            int count = 1;
+            for (int i = lineStarts[line]; i < lineEnds[line]; i++) {
+                if (text.charAt(i) == '\t') {
+                    count++;
                 }
+            }
+            return count;
+        }
 
-            } else {
-                // normal cell content, value in 'content'
-
-                // skip to next content by skipping tab token
-                // (we process 'content\t' on the same loop)
-                if (tokenizer.countTokens() > 1) {
-                    tokenizer.nextToken();
-                } else if (tokenizer.countTokens() == 1) {
-                    // if the tab is the last char we need to mark it
-                    tokenizer.nextToken();
-                    lastCharWasTab = true;
+        /**
+         * Returns the strings between any tab characters and the beginning
+         * and end of the given line, e.g. "1\t2" gives {"1","2"} and "\t\t"
+         * gives {"","",""}. An empty line gives no values.
+         */
+        private String[] getTokens(int line) {
+            String[] tokens = new String[getTokenCount(line)];
+            int start = lineStarts[line];
+            for (int t = 0; t < tokens.length; t++) {
+                int end = text.indexOf('\t', start);
+                if (end < 0 || end > lineEnds[line]) {
+                    end = lineEnds[line];
                 }
+                tokens[t] = text.substring(start, end);
+                start = end + 1;
             }
+            return tokens;
+        }
+    }
 
-            list.add(content);
-
-            if (lastCharWasTab) {
-                list.add("");
+    private void fireCellValueChangeEvent(CellRangeAddress region) {
+        Set<CellReference> cells = new HashSet<CellReference>();
+        for (int x = region.getFirstColumn(); x <= region.getLastColumn(); x++) {
+            for (int y = region.getFirstRow(); y <= region.getLastRow(); y++) {
+                cells.add(new CellReference(y, x));
             }
         }
+        fireCellValueChangeEvent(cells);
+    }
 
-        return list.toArray(new String[list.size()]);
+    private void fireCellValueChangeEvent(Set<CellReference> cells) {
+        spreadsheet.fireEvent(new CellValueChangeEvent(spreadsheet, cells));
     }
 
+
     @Override
     public void clearSelectedCellsOnCut() {
         // clear ranges
@@ -451,7 +526,8 @@ public class SpreadsheetHandlerImpl implements SpreadsheetServerRpc {
             spreadsheet.markCellAsDeleted(targetCell, true);
         }
 
-        fireCellValueChangeEvent(spreadsheet.getSelectedCellReferences());
+        fireCellValueChangeEvent(spreadsheet.getCellSelectionManager()
+                .getSelectedCells());
         spreadsheet.refreshAllCellValues();
     }
 
@@ -39,6 +39,11 @@ public class SpreadsheetHistoryManager implements Serializable {
 
     private int historySize = 20;
 
+    /**
+     * Maximum estimated memory used by the commands in bytes, 0 for no limit
+     */
+    private long historyMemoryLimit;
+
     /**
      * Current index within the history
      */
@@ -88,6 +93,7 @@ public class SpreadsheetHistoryManager implements Serializable {
         } else {
             historyIndex++;
         }
+        discardOverMemoryLimit();
         SpreadsheetFactory.logMemoryUsage();
     }
 
@@ -180,6 +186,33 @@ public class SpreadsheetHistoryManager implements Serializable {
         return historySize;
     }
 
+    /**
+     * Sets the maximum amount of memory the Command history may use, as
+     * estimated by {@link Command#getEstimatedMemoryUsage()}. The oldest
+     * commands are discarded when the limit is exceeded, but the latest
+     * executed command is always kept. If that is not enough, commands that
+     * could be redone are discarded starting from the newest one. Discards
+     * possible commands that won't fit the limit anymore.
+     * 
+     * @param historyMemoryLimit
+     *            Memory limit in bytes, 0 for no limit
+     */
+    public void setHistoryMemoryLimit(long historyMemoryLimit) {
+        this.historyMemoryLimit = historyMemoryLimit;
+        discardOverMemoryLimit();
+    }
+
+    /**
+     * Gets the maximum amount of memory the Command history may use. The
+     * default is 0, which means that the history is only limited by
+     * {@link #getHistorySize()}.
+     * 
+     * @return Memory limit in bytes, 0 for no limit
+     */
+    public long getHistoryMemoryLimit() {
+        return historyMemoryLimit;
+    }
+
     /**
      * Gets the current index within the Command history.
      * 
@@ -241,6 +274,31 @@ public class SpreadsheetHistoryManager implements Serializable {
         }
     }
 
+    /**
+     * Discards commands until the estimated memory usage of the history is
+     * within the memory limit. The oldest undoable commands are discarded
+     * first, keeping the latest executed command. Then the redoable commands
+     * are discarded from the newest one, so that the remaining commands can
+     * still be redone in order.
+     */
+    protected void discardOverMemoryLimit() {
+        if (historyMemoryLimit <= 0) {
+            return;
+        }
+        long usage = 0;
+        for (Command command : commands) {
+            usage += command.getEstimatedMemoryUsage();
+        }
+        while (usage > historyMemoryLimit && historyIndex > 0) {
+            usage -= commands.removeFirst().getEstimatedMemoryUsage();
+            historyIndex--;
+        }
+        while (usage > historyMemoryLimit
+                && commands.size() > historyIndex + 1) {
+            usage -= commands.removeLast().getEstimatedMemoryUsage();
+        }
+    }
+
     /**
      * Clears all history after the given history index NOT including the
      * command at the given index.
@@ -406,6 +406,8 @@ public class SpreadsheetStyleFactory implements Serializable {
      *            true to also update custom borders
      */
     public void cellStyleUpdated(Cell cell, boolean updateCustomBorders) {
+        // the locked and hidden flags of the style may have changed
+        spreadsheet.styleProtectionChanged(cell.getCellStyle());
         final String cssSelector = ".col" + (cell.getColumnIndex() + 1)
                 + ".row" + (cell.getRowIndex() + 1);
         final Integer key = (int) cell.getCellStyle().getIndex();
@@ -141,6 +141,48 @@ public class SpreadsheetTable implements Serializable {
         }
     }
 
+    /**
+     * Sorts the rows of this table, excluding the header row, by the values in
+     * the given column. Numbers and dates are sorted before text, text before
+     * boolean values and boolean values before errors; blank cells are always
+     * last. Rows with equal values keep their order.
+     * <p>
+     * Only the cells within the table region are moved. Relative references
+     * of the moved formulas are moved with them; cell comments and hyperlinks
+     * are not moved. The sort is added to the undo history of the
+     * Spreadsheet, and undoing it moves the rows back to their previous
+     * order.
+     * 
+     * @param column
+     *            Index of the column to sort by, 0-based
+     * @param ascending
+     *            <code>true</code> for ascending order, <code>false</code> for
+     *            descending order
+     * @throws IllegalArgumentException
+     *             if the column is outside of the table region
+     * @throws IllegalStateException
+     *             if the sheet of this table is not active, or the table
+     *             contains merged cells
+     */
+    public void sort(int column, boolean ascending) {
+        if (column < fullTableRegion.getFirstColumn()
+                || column > fullTableRegion.getLastColumn()) {
+            throw new IllegalArgumentException("Column " + column
+                    + " is not inside the table");
+        }
+        if (!isTableSheetCurrentlyActive()) {
+            throw new IllegalStateException(
+                    "Only tables of the active sheet can be sorted");
+        }
+        if (fullTableRegion.getLastRow() > fullTableRegion.getFirstRow()) {
+            spreadsheet.sortRows(new CellRangeAddress(
+                    fullTableRegion.getFirstRow() + 1,
+                    fullTableRegion.getLastRow(),
+                    fullTableRegion.getFirstColumn(),
+                    fullTableRegion.getLastColumn()), column, ascending);
+        }
+    }
+
     /**
      * Gets the {@link Sheet} this table belongs to.
      * 
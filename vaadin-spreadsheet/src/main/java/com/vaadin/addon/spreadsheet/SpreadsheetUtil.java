@@ -25,6 +25,9 @@ import java.text.DecimalFormatSymbols;
 import java.text.Format;
 import java.text.ParsePosition;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +85,69 @@ public class SpreadsheetUtil implements Serializable {
         return toKey(cell.getColumnIndex() + 1, cell.getRowIndex() + 1);
     }
 
+    /**
+     * Translates cell coordinates to a packed cell key, used for identifying
+     * cells on the server side without creating String keys. Use
+     * {@link #toKey(long)} to get the key used in the server-client
+     * communication.
+     *
+     * @param col
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     * @return Packed cell key
+     */
+    public static long toLongKey(int col, int row) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Translates cell coordinates from the given Cell object to a packed cell
+     * key.
+     *
+     * @param cell
+     *            Cell to fetch the coordinates from
+     * @return Packed cell key
+     */
+    public static long toLongKey(Cell cell) {
+        return toLongKey(cell.getColumnIndex() + 1, cell.getRowIndex() + 1);
+    }
+
+    /**
+     * Translates the given packed cell key to the cell key used to identify
+     * cells in the server-client communication.
+     *
+     * @param longKey
+     *            Packed cell key
+     * @return Cell key
+     */
+    public static String toKey(long longKey) {
+        return toKey(getColumnIndexFromLongKey(longKey),
+                getRowFromLongKey(longKey));
+    }
+
+    /**
+     * Returns the column index for the given packed cell key.
+     *
+     * @param longKey
+     *            Packed cell key
+     * @return Column index of cell, 1-based
+     */
+    public static int getColumnIndexFromLongKey(long longKey) {
+        return (int) longKey;
+    }
+
+    /**
+     * Returns the row index for the given packed cell key.
+     *
+     * @param longKey
+     *            Packed cell key
+     * @return Row index of cell, 1-based
+     */
+    public static int getRowFromLongKey(long longKey) {
+        return (int) (longKey >> 32);
+    }
+
     /**
      * Determines whether the given cell contains a date or not.
      * 
@@ -276,13 +342,36 @@ public class SpreadsheetUtil implements Serializable {
         if (value == null || value.trim().isEmpty()) {
             return null;
         }
+        return parseNumber(cell, value, locale, new CustomDataFormatter(locale));
+    }
+
+    /**
+     * Parses the given value as a number in the number format of the given
+     * cell, like {@link #parseNumber(Cell, String, Locale)}, reusing the given
+     * formatter. The formatter caches the parsed number formats, so it should
+     * be reused when parsing many values.
+     * 
+     * @param cell
+     *            Target cell
+     * @param value
+     *            Value to parse
+     * @param locale
+     *            The current locale, used for number parsing
+     * @param formatter
+     *            Formatter for the cell format, created with the same locale
+     * @return the parsed number, or <code>null</code> if the value is not a
+     *         number
+     */
+    static Double parseNumber(Cell cell, String value, Locale locale,
+            DataFormatter formatter) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
         if (cell.getCellStyle().getDataFormatString() != null) {
-            DataFormatter df = new CustomDataFormatter(locale);
             try {
-                Method formatter = df.getClass().getDeclaredMethod("getFormat",
-                        Cell.class);
-                formatter.setAccessible(true);
-                Format format = (Format) formatter.invoke(df, cell);
+                Method getFormat = getFormatMethod(formatter.getClass());
+                Format format = getFormat == null ? null : (Format) getFormat
+                        .invoke(formatter, cell);
                 if (format != null) {
                     ParsePosition parsePosition = new ParsePosition(0);
                     Object parsed = format.parseObject(value, parsePosition);
@@ -294,7 +383,6 @@ public class SpreadsheetUtil implements Serializable {
                         }
                     }
                 }
-            } catch (NoSuchMethodException e) {
             } catch (InvocationTargetException e) {
             } catch (IllegalAccessException e) {
             } catch (UnsupportedOperationException e) {
@@ -304,6 +392,30 @@ public class SpreadsheetUtil implements Serializable {
         return parseNumber(value, locale);
     }
 
+    /** Results of {@link #getFormatMethod(Class)} by formatter class */
+    private static final Map<Class<?>, Optional<Method>> FORMAT_METHODS = new ConcurrentHashMap<Class<?>, Optional<Method>>();
+
+    /**
+     * Returns the getFormat(Cell) method declared by the given formatter
+     * class, or <code>null</code> if the class doesn't declare it. The lookup
+     * is slow, so the result is cached for each class.
+     */
+    private static Method getFormatMethod(Class<?> formatterClass) {
+        return FORMAT_METHODS.computeIfAbsent(formatterClass,
+                SpreadsheetUtil::findFormatMethod).orElse(null);
+    }
+
+    private static Optional<Method> findFormatMethod(Class<?> formatterClass) {
+        try {
+            Method method = formatterClass.getDeclaredMethod("getFormat",
+                    Cell.class);
+            method.setAccessible(true);
+            return Optional.of(method);
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
+
     public static Double parseNumber(String cellContent, Locale locale) {
 
         if (cellContent == null) {
@@ -0,0 +1,40 @@
+package com.vaadin.addon.spreadsheet.client;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ * 
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ * 
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+
+/**
+ * A range of cells whose values have been cleared on the server side. Sent
+ * to the client instead of a separate {@link CellData} for each cell. Indexes
+ * are 1-based.
+ */
+@SuppressWarnings("serial")
+public class CellRangeData implements Serializable {
+
+    public int col1;
+    public int row1;
+    public int col2;
+    public int row2;
+    /** true if the styles of the cells were cleared too */
+    public boolean clearStyles;
+
+    public boolean contains(int col, int row) {
+        return col >= col1 && col <= col2 && row >= row1 && row <= row2;
+    }
+}
@@ -0,0 +1,158 @@
+package com.vaadin.addon.spreadsheet.client;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup index for the merged regions of a sheet, used by the
+ * {@link MergedRegionUtil.MergedRegionContainer} implementations on both the
+ * server and the client side.
+ * <p>
+ * The regions are placed into buckets of consecutive rows, so a lookup only
+ * checks the regions that overlap the bucket of the given row. Regions that
+ * span a very large number of rows are kept in a separate list that is always
+ * checked, so that they don't fill the buckets.
+ * <p>
+ * The index is a snapshot of the given list; it has to be rebuilt when the
+ * merged regions change.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+public class MergedRegionIndex implements Serializable {
+
+    /** Each bucket holds 2^ROW_BUCKET_SHIFT rows */
+    private static final int ROW_BUCKET_SHIFT = 4;
+
+    /** Regions spanning more buckets than this are not bucketed */
+    private static final int MAX_BUCKETS_PER_REGION = 64;
+
+    private final List<MergedRegion> source;
+
+    private final int size;
+
+    private final Map<Integer, List<MergedRegion>> buckets = new HashMap<Integer, List<MergedRegion>>();
+
+    private final List<MergedRegion> tallRegions = new ArrayList<MergedRegion>();
+
+    /**
+     * Creates a new index of the given merged regions.
+     *
+     * @param mergedRegions
+     *            Merged regions to index, may be <code>null</code>
+     */
+    public MergedRegionIndex(List<MergedRegion> mergedRegions) {
+        source = mergedRegions;
+        size = mergedRegions == null ? 0 : mergedRegions.size();
+        if (mergedRegions == null) {
+            return;
+        }
+        for (MergedRegion region : mergedRegions) {
+            int firstBucket = region.row1 >> ROW_BUCKET_SHIFT;
+            int lastBucket = region.row2 >> ROW_BUCKET_SHIFT;
+            if (lastBucket - firstBucket >= MAX_BUCKETS_PER_REGION) {
+                tallRegions.add(region);
+                continue;
+            }
+            for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                List<MergedRegion> regions = buckets.get(bucket);
+                if (regions == null) {
+                    regions = new ArrayList<MergedRegion>(2);
+                    buckets.put(bucket, regions);
+                }
+                regions.add(region);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this index is up to date with the given list of merged
+     * regions. The index is considered up to date if it was built from the
+     * same list instance and the size of the list has not changed since.
+     *
+     * @param mergedRegions
+     *            Current merged regions
+     * @return <code>true</code> if this index can be used for the given list
+     */
+    public boolean isIndexOf(List<MergedRegion> mergedRegions) {
+        return source == mergedRegions
+                && size == (mergedRegions == null ? 0 : mergedRegions.size());
+    }
+
+    /**
+     * Gets the merged region starting at the given coordinates.
+     *
+     * @param column
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     * @return Merged region or null if not found.
+     */
+    public MergedRegion getMergedRegionStartingFrom(int column, int row) {
+        List<MergedRegion> regions = buckets.get(row >> ROW_BUCKET_SHIFT);
+        if (regions != null) {
+            for (MergedRegion region : regions) {
+                if (region.col1 == column && region.row1 == row) {
+                    return region;
+                }
+            }
+        }
+        for (MergedRegion region : tallRegions) {
+            if (region.col1 == column && region.row1 == row) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the merged region overlapping the given coordinates.
+     *
+     * @param column
+     *            Column index, 1-based
+     * @param row
+     *            Row index, 1-based
+     * @return Merged region or null if not found.
+     */
+    public MergedRegion getMergedRegion(int column, int row) {
+        List<MergedRegion> regions = buckets.get(row >> ROW_BUCKET_SHIFT);
+        if (regions != null) {
+            for (MergedRegion region : regions) {
+                if (contains(region, column, row)) {
+                    return region;
+                }
+            }
+        }
+        for (MergedRegion region : tallRegions) {
+            if (contains(region, column, row)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(MergedRegion region, int column, int row) {
+        return region.col1 <= column && region.row1 <= row
+                && region.col2 >= column && region.row2 >= row;
+    }
+}
@@ -4228,6 +4228,63 @@ public class SheetWidget extends Panel {
         updateOverflows(false);
     }
 
+    public void cellRangesCleared(List<CellRangeData> clearedRanges) {
+        // the server sends the cleared cells again when they are needed
+        Iterator<CellData> i = cachedCellData.values().iterator();
+        while (i.hasNext()) {
+            CellData cd = i.next();
+            if (getClearedRange(clearedRanges, cd.col, cd.row) != null) {
+                i.remove();
+            }
+        }
+        for (CellRangeData range : clearedRanges) {
+            // rendered cells in the frozen panes and the scroll pane
+            clearCells(range, 1, verticalSplitPosition, 1,
+                    horizontalSplitPosition);
+            clearCells(range, 1, verticalSplitPosition, firstColumnIndex,
+                    lastColumnIndex);
+            clearCells(range, firstRowIndex, lastRowIndex, 1,
+                    horizontalSplitPosition);
+            clearCells(range, firstRowIndex, lastRowIndex, firstColumnIndex,
+                    lastColumnIndex);
+        }
+        for (MergedCell mergedCell : mergedCells.values()) {
+            CellRangeData range = getClearedRange(clearedRanges,
+                    mergedCell.getCol(), mergedCell.getRow());
+            if (range != null) {
+                mergedCell.setValue(null, range.clearStyles ? "cs0"
+                        : mergedCell.getCellStyle(), false);
+            }
+        }
+
+        // Update cell overflow state
+        updateOverflows(false);
+    }
+
+    private static CellRangeData getClearedRange(
+            List<CellRangeData> clearedRanges, int col, int row) {
+        for (CellRangeData range : clearedRanges) {
+            if (range.contains(col, row)) {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    private void clearCells(CellRangeData range, int r1, int r2, int c1,
+            int c2) {
+        for (int r = Math.max(r1, range.row1); r <= Math.min(r2, range.row2); r++) {
+            for (int c = Math.max(c1, range.col1); c <= Math.min(c2,
+                    range.col2); c++) {
+                Cell cell = getCell(c, r);
+                if (cell != null) {
+                    cell.setValue(null, range.clearStyles ? "cs0"
+                            : cell.getCellStyle(), false);
+                }
+            }
+        }
+    }
+
     /**
      *
      * @param row
@@ -85,6 +85,14 @@ public interface SpreadsheetClientRpc extends ClientRpc {
 
     void cellsUpdated(ArrayList<CellData> updatedCellData);
 
+    /**
+     * Clears the values of all the cells within the given ranges, from the
+     * rendered cells and from the client side cache.
+     * 
+     * @param clearedRanges
+     */
+    void cellRangesCleared(ArrayList<CellRangeData> clearedRanges);
+
     void refreshCellStyles();
 
     void editCellComment(int col, int row);
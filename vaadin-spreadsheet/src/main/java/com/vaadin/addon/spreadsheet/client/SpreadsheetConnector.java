@@ -167,6 +167,11 @@ public class SpreadsheetConnector extends AbstractHasComponentsConnector
             getWidget().cellValuesUpdated(updatedCellData);
         }
 
+        @Override
+        public void cellRangesCleared(ArrayList<CellRangeData> clearedRanges) {
+            getWidget().cellRangesCleared(clearedRanges);
+        }
+
         @Override
         public void refreshCellStyles() {
             getWidget().refreshCellStyles();
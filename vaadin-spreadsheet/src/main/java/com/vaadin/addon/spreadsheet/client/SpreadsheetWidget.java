@@ -139,8 +139,8 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
     private int[] horizontalScrollPositions;
     // private int firstVisibleTab; Not working in POI -> disabled
     private String[] sheetNames;
-    List<Integer> hiddenColumnIndexes;
-    List<Integer> hiddenRowIndexes;
+    Set<Integer> hiddenColumnIndexes;
+    Set<Integer> hiddenRowIndexes;
     private List<MergedRegion> mergedRegions;
     private boolean lockFormatColumns = true;
     private boolean lockFormatRows = true;
@@ -151,32 +151,19 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
      */
     private boolean okToSendCellProtectRpc = true;
 
+    private MergedRegionIndex mergedRegionIndex = new MergedRegionIndex(null);
+
     @SuppressWarnings("serial")
     MergedRegionContainer mergedRegionContainer = new MergedRegionContainer() {
 
         @Override
         public MergedRegion getMergedRegionStartingFrom(int column, int row) {
-            if (mergedRegions != null) {
-                for (MergedRegion region : mergedRegions) {
-                    if (region.col1 == column && region.row1 == row) {
-                        return region;
-                    }
-                }
-            }
-            return null;
+            return mergedRegionIndex.getMergedRegionStartingFrom(column, row);
         }
 
         @Override
         public MergedRegion getMergedRegion(int column, int row) {
-            if (mergedRegions != null) {
-                for (MergedRegion region : mergedRegions) {
-                    if (region.col1 <= column && region.row1 <= row
-                            && region.col2 >= column && region.row2 >= row) {
-                        return region;
-                    }
-                }
-            }
-            return null;
+            return mergedRegionIndex.getMergedRegion(column, row);
         }
     };
     private CommsTrigger commsTrigger;
@@ -513,11 +500,14 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
                     SpreadsheetWidget.this.mergedRegions = new ArrayList<MergedRegion>(
                             mergedRegions);
                 }
+                mergedRegionIndex = new MergedRegionIndex(
+                        SpreadsheetWidget.this.mergedRegions);
             }
         });
     }
 
     private void clearMergedRegions() {
+        mergedRegionIndex = new MergedRegionIndex(null);
         if (mergedRegions != null) {
             while (0 < mergedRegions.size()) {
                 sheetWidget.removeMergedRegion(mergedRegions.remove(0), 0);
@@ -1405,11 +1395,9 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
             float size = entry.getValue();
             if (size == 0.0F) {
                 if (hiddenRowIndexes == null) {
-                    hiddenRowIndexes = new ArrayList<Integer>();
-                    hiddenRowIndexes.add(index);
-                } else if (!hiddenRowIndexes.contains(index)) {
-                    hiddenRowIndexes.add(index);
+                    hiddenRowIndexes = new HashSet<Integer>();
                 }
+                hiddenRowIndexes.add(index);
             }
             rowH[index - 1] = size;
         }
@@ -1431,11 +1419,9 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
             int size = entry.getValue();
             if (size == 0F) {
                 if (hiddenColumnIndexes == null) {
-                    hiddenColumnIndexes = new ArrayList<Integer>();
-                    hiddenColumnIndexes.add(index);
-                } else if (!hiddenColumnIndexes.contains(index)) {
-                    hiddenColumnIndexes.add(index);
+                    hiddenColumnIndexes = new HashSet<Integer>();
                 }
+                hiddenColumnIndexes.add(index);
             }
             colW[index - 1] = size;
         }
@@ -1700,11 +1686,11 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
     }
 
     public void setHiddenColumnIndexes(ArrayList<Integer> hiddenColumnIndexes) {
-        this.hiddenColumnIndexes = new ArrayList<Integer>(hiddenColumnIndexes);
+        this.hiddenColumnIndexes = new HashSet<Integer>(hiddenColumnIndexes);
     }
 
     public void setHiddenRowIndexes(ArrayList<Integer> hiddenRowIndexes) {
-        this.hiddenRowIndexes = new ArrayList<Integer>(hiddenRowIndexes);
+        this.hiddenRowIndexes = new HashSet<Integer>(hiddenRowIndexes);
     }
 
     public void setCellComments(HashMap<String, String> cellComments,
@@ -1878,6 +1864,16 @@ public class SpreadsheetWidget extends Composite implements SheetHandler,
         sheetWidget.cellValuesUpdated(updatedCellData);
     }
 
+    /**
+     * Clears the values of the cells within the given ranges, from all the
+     * panes and from the client side cache.
+     *
+     * @param clearedRanges
+     */
+    public void cellRangesCleared(ArrayList<CellRangeData> clearedRanges) {
+        sheetWidget.cellRangesCleared(clearedRanges);
+    }
+
     @Override
     public void setCellStyleWidthRatios(
             HashMap<Integer, Float> cellStyleWidthRatioMap) {
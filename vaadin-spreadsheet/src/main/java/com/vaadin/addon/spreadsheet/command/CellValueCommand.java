@@ -20,6 +20,7 @@ package com.vaadin.addon.spreadsheet.command;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -57,17 +58,18 @@ public class CellValueCommand extends SpreadsheetCommand implements
     }
 
     /**
-     * Represents the coordinates and values of a range of cells.
+     * Represents the coordinates and values of a range of cells. The values
+     * are in row order.
      */
     class CellRangeValue implements Serializable {
         public final int row1;
         public final int row2;
         public final int col1;
         public final int col2;
-        public final Object[] values;
+        public CompactCellValues values;
 
         public CellRangeValue(int row1, int row2, int col1, int col2,
-                Object[] values) {
+                CompactCellValues values) {
             this.row1 = row1;
             this.row2 = row2;
             this.col1 = col1;
@@ -139,13 +141,13 @@ public class CellValueCommand extends SpreadsheetCommand implements
             if (cra != null) {
                 int h = cra.getLastRow() - cra.getFirstRow() + 1;
                 int w = cra.getLastColumn() - cra.getFirstColumn() + 1;
-                Object[] v = new Object[h * w];
-                int i = 0;
+                CompactCellValues v = new CompactCellValues(h * w);
                 for (int r = cra.getFirstRow(); r <= cra.getLastRow(); r++) {
                     for (int c = cra.getFirstColumn(); c <= cra.getLastColumn(); c++) {
-                        v[i++] = getCellValue(r, c);
+                        v.add(getCellValue(r, c));
                     }
                 }
+                v.trim();
                 values.add(new CellRangeValue(cra.getFirstRow(), cra
                         .getLastRow(), cra.getFirstColumn(), cra
                         .getLastColumn(), v));
@@ -180,14 +182,17 @@ public class CellValueCommand extends SpreadsheetCommand implements
                         cellValue.value, cellsToUpdate);
             } else {
                 CellRangeValue cellRangeValue = (CellRangeValue) o;
-                int i = 0;
+                Iterator<Object> newValues = cellRangeValue.values.iterator();
+                CompactCellValues oldValues = new CompactCellValues(
+                        cellRangeValue.values.size());
                 for (int r = cellRangeValue.row1; r <= cellRangeValue.row2; r++) {
                     for (int c = cellRangeValue.col1; c <= cellRangeValue.col2; c++) {
-                        cellRangeValue.values[i] = updateCellValue(r, c,
-                                cellRangeValue.values[i], cellsToUpdate);
-                        i++;
+                        oldValues.add(updateCellValue(r, c, newValues.next(),
+                                cellsToUpdate));
                     }
                 }
+                oldValues.trim();
+                cellRangeValue.values = oldValues;
             }
         }
         if (!spreadsheet.isRerenderPending()) {
@@ -339,6 +344,28 @@ public class CellValueCommand extends SpreadsheetCommand implements
         }
     }
 
+    /**
+     * Returns an estimate of the heap memory held by the values captured by
+     * this command.
+     * 
+     * @return estimated size in bytes
+     */
+    @Override
+    public long getEstimatedMemoryUsage() {
+        long size = 64;
+        for (Object o : values) {
+            if (o instanceof CellValue) {
+                Object value = ((CellValue) o).value;
+                size += 48 + (value instanceof String ? 40 + 2 * ((String) value)
+                        .length() : 0);
+            } else {
+                size += 48 + ((CellRangeValue) o).values
+                        .getEstimatedMemoryUsage();
+            }
+        }
+        return size;
+    }
+
     @Override
     public Set<CellReference> getChangedCells() {
         Set<CellReference> changedCells = new HashSet<CellReference>();
@@ -65,4 +65,15 @@ public interface Command extends Serializable {
      * @return the painted range or <code>null</code>
      */
     public CellRangeAddress getPaintedCellRange();
+
+    /**
+     * Returns an estimate of the heap memory held by this command, used for
+     * limiting the memory used by the undo history. The default
+     * implementation returns 0.
+     * 
+     * @return estimated size in bytes
+     */
+    public default long getEstimatedMemoryUsage() {
+        return 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.vaadin.addon.spreadsheet.command;
+
+/*
+ * #%L
+ * Vaadin Spreadsheet
+ * %%
+ * Copyright (C) 2013 - 2015 Vaadin Ltd
+ * %%
+ * This program is available under Commercial Vaadin Add-On License 3.0
+ * (CVALv3).
+ *
+ * See the file license.html distributed with this software for more
+ * information about licensing.
+ *
+ * You should have received a copy of the CVALv3 along with this program.
+ * If not, see <http://vaadin.com/license/cval-3>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact storage for a sequence of captured cell values, as returned by
+ * {@link CellValueCommand#getCellValue(org.apache.poi.ss.usermodel.Cell)}.
+ * Instead of one boxed object per cell, the type of each cell is kept in a
+ * byte array and the numbers, strings and error codes in separate arrays, so
+ * that large mostly empty or numeric ranges take little memory.
+ *
+ * @author Vaadin Ltd.
+ */
+@SuppressWarnings("serial")
+class CompactCellValues implements Serializable, Iterable<Object> {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte TRUE = 3;
+    private static final byte FALSE = 4;
+    private static final byte ERROR = 5;
+
+    private byte[] types;
+    private double[] numbers = new double[0];
+    private String[] strings = new String[0];
+    private byte[] errors = new byte[0];
+
+    private int size;
+    private int numberCount;
+    private int stringCount;
+    private int errorCount;
+
+    private long stringBytes;
+
+    /**
+     * Creates a new empty sequence with room for the given amount of values.
+     *
+     * @param capacity
+     *            Expected amount of values
+     */
+    CompactCellValues(int capacity) {
+        types = new byte[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a value to the end of this sequence.
+     *
+     * @param value
+     *            A String, Double, Boolean or Byte (error code), or
+     *            <code>null</code>
+     */
+    void add(Object value) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+        }
+        if (value == null) {
+            types[size] = NULL;
+        } else if (value instanceof String) {
+            types[size] = STRING;
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, Math.max(stringCount * 2, 8));
+            }
+            strings[stringCount++] = (String) value;
+            stringBytes += 40 + 2 * ((String) value).length();
+        } else if (value instanceof Double) {
+            types[size] = NUMBER;
+            if (numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, Math.max(numberCount * 2, 8));
+            }
+            numbers[numberCount++] = (Double) value;
+        } else if (value instanceof Boolean) {
+            types[size] = ((Boolean) value) ? TRUE : FALSE;
+        } else if (value instanceof Byte) {
+            types[size] = ERROR;
+            if (errorCount == errors.length) {
+                errors = Arrays.copyOf(errors, Math.max(errorCount * 2, 8));
+            }
+            errors[errorCount++] = (Byte) value;
+        } else {
+            throw new IllegalArgumentException("Unsupported cell value: "
+                    + value.getClass());
+        }
+        size++;
+    }
+
+    /**
+     * Releases the unused capacity once all values have been added.
+     */
+    void trim() {
+        types = Arrays.copyOf(types, size);
+        numbers = Arrays.copyOf(numbers, numberCount);
+        strings = Arrays.copyOf(strings, stringCount);
+        errors = Arrays.copyOf(errors, errorCount);
+    }
+
+    /**
+     * Returns the amount of values in this sequence.
+     *
+     * @return amount of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this sequence.
+     *
+     * @return estimated size in bytes
+     */
+    long getEstimatedMemoryUsage() {
+        return 64 + types.length + 8L * numbers.length + 4L * strings.length
+                + errors.length + stringBytes;
+    }
+
+    /**
+     * Returns the values in the order they were added, boxed like they were
+     * given to {@link #add(Object)}.
+     */
+    @Override
+    public Iterator<Object> iterator() {
+        return new ValueIterator();
+    }
+
+    private class ValueIterator implements Iterator<Object>, Serializable {
+        private int index;
+        private int numberIndex;
+        private int stringIndex;
+        private int errorIndex;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public Object next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            switch (types[index++]) {
+            case STRING:
+                return strings[stringIndex++];
+            case NUMBER:
+                return numbers[numberIndex++];
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case ERROR:
+                return errors[errorIndex++];
+            default:
+                return null;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
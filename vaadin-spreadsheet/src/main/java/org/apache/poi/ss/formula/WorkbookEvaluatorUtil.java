@@ -17,6 +17,13 @@ package org.apache.poi.ss.formula;
  * #L%
  */
 
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.ss.usermodel.Cell;
@@ -31,25 +38,147 @@ import com.vaadin.addon.spreadsheet.Spreadsheet;
  */
 public class WorkbookEvaluatorUtil {
 
+    private static final Logger LOGGER = Logger
+            .getLogger(WorkbookEvaluatorUtil.class.getName());
+
+    /**
+     * Caches used when the cache of the workbook evaluator is not shared.
+     * These are not notified of cell updates, so they are cleared with
+     * {@link #resetEvaluationCache(Spreadsheet)} before each evaluation pass.
+     */
+    private static final Map<WorkbookEvaluator, EvaluationCache> fallbackCaches = Collections
+            .synchronizedMap(new WeakHashMap<WorkbookEvaluator, EvaluationCache>());
+
+    private static volatile boolean sharedCacheUnavailable;
+
+    private static volatile boolean sharedCacheEnabled = true;
+
+    private static volatile Field cacheField;
+
     /**
      * Evaluate formula Ptg[] tokens
+     * <p>
+     * The evaluation cache of the formula evaluator of the spreadsheet is
+     * reused (see POI #57840), so cell values already evaluated for the sheet
+     * or by earlier calls are not evaluated again. The cache is kept up to
+     * date through {@link org.apache.poi.ss.usermodel.FormulaEvaluator#notifyUpdateCell(Cell)}
+     * and {@link org.apache.poi.ss.usermodel.FormulaEvaluator#notifySetFormula(Cell)}.
+     * <p>
+     * This means that every change to a cell must be notified to the formula
+     * evaluator, or its cache cleared with
+     * {@link org.apache.poi.ss.usermodel.FormulaEvaluator#clearAllCachedResultValues()}.
+     * The Spreadsheet component does this for the changes made through it. If
+     * the POI model is changed directly without notifying the evaluator, the
+     * results of the earlier evaluations are returned. In that case, disable
+     * the shared cache with {@link #setSharedEvaluationCacheEnabled(boolean)}.
      */
     public static ValueEval evaluate(Spreadsheet spreadsheet, Ptg[] ptgs,
         Cell cell) {
-        // allow for reuse of evaluation caches for performance - see POI #57840
-        // for an example
         final WorkbookEvaluator workbookEvaluator = ((BaseXSSFFormulaEvaluator) spreadsheet.getFormulaEvaluator())._getWorkbookEvaluator();
         final OperationEvaluationContext ec = new OperationEvaluationContext(
             workbookEvaluator, workbookEvaluator.getWorkbook(),
             getSheetIndex(cell), cell.getRowIndex(), cell.getColumnIndex(),
-            new EvaluationTracker(new EvaluationCache(null)));
+            new EvaluationTracker(getEvaluationCache(workbookEvaluator)));
         return workbookEvaluator.evaluateFormula(ec, ptgs);
     }
 
+    /**
+     * Clears the evaluation cache used by
+     * {@link #evaluate(Spreadsheet, Ptg[], Cell)}, if it is not the cache of
+     * the formula evaluator. Should be called before evaluating a batch of
+     * formulas, e.g. all conditional formatting rules of a sheet.
+     *
+     * @param spreadsheet
+     *            Target spreadsheet
+     */
+    public static void resetEvaluationCache(Spreadsheet spreadsheet) {
+        if (!isSharedEvaluationCacheEnabled()
+                && spreadsheet.getFormulaEvaluator() instanceof BaseXSSFFormulaEvaluator) {
+            fallbackCaches.remove(((BaseXSSFFormulaEvaluator) spreadsheet
+                    .getFormulaEvaluator())._getWorkbookEvaluator());
+            // the dependencies of the cached formula results were recorded
+            // in the removed cache, the results can't be trusted either
+            spreadsheet.getFormulaEvaluator().clearAllCachedResultValues();
+        }
+    }
+
+    /**
+     * Sets whether {@link #evaluate(Spreadsheet, Ptg[], Cell)} shares the
+     * evaluation cache of the formula evaluator of the spreadsheet. Enabled by
+     * default. When disabled, a separate cache is used and both caches are
+     * cleared by {@link #resetEvaluationCache(Spreadsheet)} before each
+     * evaluation pass, so changes made directly to the POI model are seen
+     * without notifying the formula evaluator.
+     *
+     * @param enabled
+     *            <code>true</code> to share the cache of the formula evaluator
+     */
+    public static void setSharedEvaluationCacheEnabled(boolean enabled) {
+        sharedCacheEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the evaluation cache of the formula evaluator is shared.
+     * It is not shared if disabled with
+     * {@link #setSharedEvaluationCacheEnabled(boolean)}, or if the cache can't
+     * be accessed in the POI version in use.
+     *
+     * @return <code>true</code> if the cache of the formula evaluator is used
+     */
+    public static boolean isSharedEvaluationCacheEnabled() {
+        return sharedCacheEnabled && !sharedCacheUnavailable;
+    }
+
     public static BaseXSSFEvaluationWorkbook getEvaluationWorkbook(Spreadsheet spreadsheet) {
         return (BaseXSSFEvaluationWorkbook) ((BaseXSSFFormulaEvaluator) spreadsheet.getFormulaEvaluator())._getWorkbookEvaluator().getWorkbook();
     }
 
+    private static EvaluationCache getEvaluationCache(
+            WorkbookEvaluator workbookEvaluator) {
+        if (isSharedEvaluationCacheEnabled()) {
+            try {
+                return (EvaluationCache) getCacheField().get(workbookEvaluator);
+            } catch (NoSuchFieldException e) {
+                handleCacheUnavailable(e);
+            } catch (SecurityException e) {
+                handleCacheUnavailable(e);
+            } catch (IllegalAccessException e) {
+                handleCacheUnavailable(e);
+            } catch (ClassCastException e) {
+                handleCacheUnavailable(e);
+            }
+        }
+        synchronized (fallbackCaches) {
+            EvaluationCache cache = fallbackCaches.get(workbookEvaluator);
+            if (cache == null) {
+                cache = new EvaluationCache(null);
+                fallbackCaches.put(workbookEvaluator, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * No POI API for the cache of the evaluator. The field is looked up once
+     * and kept accessible, since this is called for every evaluated formula.
+     */
+    private static Field getCacheField() throws NoSuchFieldException {
+        Field field = cacheField;
+        if (field == null) {
+            field = WorkbookEvaluator.class.getDeclaredField("_cache");
+            field.setAccessible(true);
+            cacheField = field;
+        }
+        return field;
+    }
+
+    private static void handleCacheUnavailable(Exception e) {
+        sharedCacheUnavailable = true;
+        LOGGER.log(Level.WARNING,
+                "Incompatible POI implementation, evaluation cache can not be shared",
+                e);
+    }
+
     private static int getSheetIndex(Cell cell) {
         Sheet sheet = cell.getSheet();
         return sheet.getWorkbook().getSheetIndex(sheet);
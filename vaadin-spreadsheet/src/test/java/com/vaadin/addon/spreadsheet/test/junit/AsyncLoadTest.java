@@ -0,0 +1,130 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.Spreadsheet.LoadPhase;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.communication.PushMode;
+import com.vaadin.ui.PushConfiguration;
+
+/**
+ * Tests for reading a workbook with {@link Spreadsheet#readAsync}.
+ */
+public class AsyncLoadTest {
+
+    /** Runs the background parsing on the calling thread. */
+    private static final Executor SAME_THREAD = Runnable::run;
+
+    private Spreadsheet spreadsheet;
+    private List<LoadPhase> phases;
+    private byte[] file;
+
+    @Before
+    public void setup() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Loaded");
+        sheet.createRow(0).createCell(0).setCellValue("loaded");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        file = out.toByteArray();
+
+        spreadsheet = new Spreadsheet();
+        attach(new TestableUI(spreadsheet));
+
+        phases = new ArrayList<LoadPhase>();
+        spreadsheet.addLoadProgressListener(event -> phases.add(event
+                .getPhase()));
+    }
+
+    private static void attach(TestableUI ui) {
+        // the session locking of the background access is not under test
+        ui.setSession(new VaadinSession(ui.getSession().getService()) {
+            @Override
+            public boolean hasLock() {
+                return true;
+            }
+
+            @Override
+            public void lock() {
+            }
+
+            @Override
+            public void unlock() {
+            }
+        });
+    }
+
+    @Test
+    public void readAsync_phasesAreFiredInOrder() {
+        InputStream in = new ByteArrayInputStream(file);
+        CompletableFuture<Void> result = spreadsheet.readAsync(in,
+                SAME_THREAD);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isCompletedExceptionally());
+        assertEquals(Arrays.asList(LoadPhase.ACTIVE_SHEET_LOADED,
+                LoadPhase.COMPLETED), phases);
+        assertEquals("Loaded", spreadsheet.getActiveSheet().getSheetName());
+        assertEquals("loaded", spreadsheet.getCell(0, 0).getStringCellValue());
+    }
+
+    @Test
+    public void readAsync_manualPush_pushedAfterEachPhase() {
+        final PushConfiguration manualPush = (PushConfiguration) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] { PushConfiguration.class },
+                        (proxy, method, args) -> "getPushMode".equals(method
+                                .getName()) ? PushMode.MANUAL : null);
+        final List<Integer> pushedPhaseCounts = new ArrayList<Integer>();
+        attach(new TestableUI(spreadsheet) {
+            @Override
+            public PushConfiguration getPushConfiguration() {
+                return manualPush;
+            }
+
+            @Override
+            public void push() {
+                pushedPhaseCounts.add(phases.size());
+            }
+        });
+
+        spreadsheet.readAsync(new ByteArrayInputStream(file), SAME_THREAD);
+
+        assertEquals(Arrays.asList(1, 2), pushedPhaseCounts);
+    }
+
+    @Test
+    public void readAsync_invalidData_completedExceptionallyWithoutPhases() {
+        InputStream in = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+        CompletableFuture<Void> result = spreadsheet.readAsync(in,
+                SAME_THREAD);
+
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(phases.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readAsync_detached_throws() {
+        new Spreadsheet().readAsync(new ByteArrayInputStream(file),
+                SAME_THREAD);
+    }
+}
@@ -0,0 +1,274 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellKeyMap;
+import com.vaadin.addon.spreadsheet.CellKeySet;
+import com.vaadin.addon.spreadsheet.SpreadsheetUtil;
+
+/**
+ * Tests for the open addressing collections of packed cell keys,
+ * {@link CellKeySet} and {@link CellKeyMap}.
+ */
+public class CellKeySetTest {
+
+    /** Slot count of a new collection */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Mirrors the hash of the collections, used only for picking keys that
+     * collide in the last slots of the table. If the hash changes, the tests
+     * still pass but no longer target the wrap-around.
+     */
+    private static int slotOf(long key, int capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /**
+     * Returns keys that all hash to the last slot of a table with the
+     * default capacity, so that their probe sequence wraps around to the
+     * start of the table.
+     */
+    private static long[] keysInLastSlot(int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (int row = 1; found < count; row++) {
+            long key = SpreadsheetUtil.toLongKey(1, row);
+            if (slotOf(key, DEFAULT_CAPACITY) == DEFAULT_CAPACITY - 1) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    private static void assertSameKeys(Set<Long> expected, long[] actual) {
+        Set<Long> actualSet = new HashSet<Long>();
+        for (long key : actual) {
+            assertTrue("Duplicate key " + key, actualSet.add(key));
+        }
+        assertEquals(expected, actualSet);
+    }
+
+    @Test
+    public void longKey_roundTrip() {
+        int[] columns = { 1, 2, 16384, Integer.MAX_VALUE, -1,
+                Integer.MIN_VALUE };
+        int[] rows = { 1, 2, 1048576, Integer.MAX_VALUE, -1,
+                Integer.MIN_VALUE };
+        Set<Long> keys = new HashSet<Long>();
+        for (int col : columns) {
+            for (int row : rows) {
+                long key = SpreadsheetUtil.toLongKey(col, row);
+                assertEquals(col, SpreadsheetUtil.getColumnIndexFromLongKey(key));
+                assertEquals(row, SpreadsheetUtil.getRowFromLongKey(key));
+                keys.add(key);
+            }
+        }
+        assertEquals("Every cell should have its own key",
+                columns.length * rows.length, keys.size());
+    }
+
+    @Test
+    public void negativeAndLargeColumns_areDistinctKeys() {
+        CellKeySet set = new CellKeySet();
+        long negative = SpreadsheetUtil.toLongKey(-1, 5);
+        long large = SpreadsheetUtil.toLongKey(Integer.MAX_VALUE, 5);
+        long nextRow = SpreadsheetUtil.toLongKey(0, 6);
+
+        assertTrue(set.add(negative));
+        assertTrue(set.add(large));
+
+        assertFalse("A negative column must not spill over to the row",
+                set.contains(nextRow));
+        assertTrue(set.contains(negative));
+        assertTrue(set.contains(large));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void zeroKey_isStoredSeparately() {
+        CellKeySet set = new CellKeySet();
+        long zero = SpreadsheetUtil.toLongKey(0, 0);
+        assertFalse(set.contains(zero));
+        assertTrue(set.add(zero));
+        assertFalse(set.add(zero));
+        assertTrue(set.contains(zero));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[] { zero }, set.toArray());
+        assertTrue(set.remove(zero));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void collidingKeys_wrapAroundTheTable() {
+        long[] keys = keysInLastSlot(4);
+        CellKeySet set = new CellKeySet();
+        for (long key : keys) {
+            assertTrue(set.add(key));
+        }
+        for (long key : keys) {
+            assertTrue(set.contains(key));
+        }
+        assertEquals(keys.length, set.size());
+    }
+
+    @Test
+    public void removeAndReinsert_collidingKeysStayReachable() {
+        long[] keys = keysInLastSlot(5);
+        CellKeySet set = new CellKeySet();
+        for (long key : keys) {
+            set.add(key);
+        }
+
+        // removing from the start of the chain shifts the wrapped keys back
+        assertTrue(set.remove(keys[0]));
+        assertFalse(set.remove(keys[0]));
+        assertTrue(set.remove(keys[2]));
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i != 0 && i != 2, set.contains(keys[i]));
+        }
+
+        assertTrue(set.add(keys[0]));
+        assertTrue(set.add(keys[2]));
+        for (long key : keys) {
+            assertTrue(set.contains(key));
+            assertFalse(set.add(key));
+        }
+        assertEquals(keys.length, set.size());
+    }
+
+    @Test
+    public void resize_keepsAllKeys() {
+        CellKeySet set = new CellKeySet();
+        Set<Long> expected = new HashSet<Long>();
+        for (int row = 1; row <= 100; row++) {
+            for (int col = 1; col <= 50; col++) {
+                long key = SpreadsheetUtil.toLongKey(col, row);
+                set.add(key);
+                expected.add(key);
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key : expected) {
+            assertTrue(set.contains(key));
+        }
+        assertSameKeys(expected, set.toArray());
+
+        CellKeySet copy = new CellKeySet(set);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(SpreadsheetUtil.toLongKey(1, 1)));
+        assertSameKeys(expected, copy.toArray());
+    }
+
+    @Test
+    public void removeIf_removesMatchingKeys() {
+        CellKeySet set = new CellKeySet();
+        for (int row = 1; row <= 200; row++) {
+            set.add(SpreadsheetUtil.toLongKey(1, row));
+        }
+        assertTrue(set.removeIf(key -> SpreadsheetUtil
+                .getRowFromLongKey(key) % 2 == 0));
+        assertFalse(set.removeIf(key -> SpreadsheetUtil
+                .getRowFromLongKey(key) % 2 == 0));
+
+        assertEquals(100, set.size());
+        for (int row = 1; row <= 200; row++) {
+            assertEquals(row % 2 != 0,
+                    set.contains(SpreadsheetUtil.toLongKey(1, row)));
+        }
+    }
+
+    @Test
+    public void randomOperations_matchHashSet() {
+        Random random = new Random(42);
+        CellKeySet set = new CellKeySet();
+        Set<Long> expected = new HashSet<Long>();
+        // a small pool of cells makes collisions and re-inserts common
+        List<Long> pool = new ArrayList<Long>();
+        for (int row = 0; row < 30; row++) {
+            for (int col = -2; col < 10; col++) {
+                pool.add(SpreadsheetUtil.toLongKey(col, row));
+            }
+        }
+        for (int i = 0; i < 20000; i++) {
+            long key = pool.get(random.nextInt(pool.size()));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long key : pool) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+        assertSameKeys(expected, set.toArray());
+    }
+
+    @Test
+    public void map_putGetRemoveWithCollidingKeys() {
+        long[] keys = keysInLastSlot(5);
+        CellKeyMap<String> map = new CellKeyMap<String>();
+        for (int i = 0; i < keys.length; i++) {
+            assertNull(map.put(keys[i], "v" + i));
+        }
+        assertEquals("v3", map.put(keys[3], "w3"));
+
+        assertEquals("v0", map.remove(keys[0]));
+        assertNull(map.remove(keys[0]));
+        assertNull(map.get(keys[0]));
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals(i == 3 ? "w3" : "v" + i, map.get(keys[i]));
+        }
+
+        assertNull(map.put(keys[0], "x0"));
+        assertEquals("x0", map.get(keys[0]));
+        assertEquals(keys.length, map.size());
+    }
+
+    @Test
+    public void map_randomOperations_matchHashMap() {
+        Random random = new Random(7);
+        CellKeyMap<Integer> map = new CellKeyMap<Integer>();
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            long key = SpreadsheetUtil.toLongKey(random.nextInt(12) - 2,
+                    random.nextInt(40));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertSameKeys(expected.keySet(), keys);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellRangeSet;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.Spreadsheet.SelectionChangeEvent;
+
+public class CellRangeSetTest {
+
+    @Test
+    public void overlappingRanges_sizeAndIterationDoNotContainDuplicates() {
+        CellRangeSet cells = new CellRangeSet(new CellReference("B2"),
+                Arrays.asList(new CellReference("A1"), new CellReference("J10")),
+                Arrays.asList(CellRangeAddress.valueOf("A1:C3"),
+                        CellRangeAddress.valueOf("B2:D4")));
+
+        Set<CellReference> expanded = new HashSet<CellReference>();
+        int iterated = 0;
+        for (CellReference cell : cells) {
+            expanded.add(cell);
+            iterated++;
+        }
+
+        // 9 + 9 - 4 overlapping + J10
+        assertEquals(15, cells.size());
+        assertEquals(15, iterated);
+        assertEquals(15, expanded.size());
+        assertTrue(cells.contains(new CellReference("D4")));
+        assertTrue(cells.contains(new CellReference("J10")));
+        assertFalse(cells.contains(new CellReference("D1")));
+    }
+
+    @Test
+    public void wholeColumns_sizeIsComputedWithoutExpansion() {
+        CellRangeSet cells = new CellRangeSet(Arrays.asList(
+                CellRangeAddress.valueOf("A1:B1048576"),
+                CellRangeAddress.valueOf("B1:C1048576")));
+
+        assertEquals(3L * 1048576, cells.getCellCount());
+        assertTrue(cells.contains(1048575, 2));
+    }
+
+    @Test
+    public void manyIndividualCells_duplicatesAreDropped() {
+        List<CellReference> individual = new ArrayList<CellReference>();
+        for (int i = 0; i < 2; i++) {
+            for (int row = 0; row < 20000; row++) {
+                individual.add(new CellReference(row, 5));
+            }
+        }
+        individual.add(new CellReference("B2"));
+        CellRangeSet cells = new CellRangeSet(new CellReference("F1"),
+                individual, Arrays.asList(CellRangeAddress.valueOf("A1:C3")));
+
+        // A1:C3 and one single cell range for each row of column F
+        assertEquals(1 + 20000, cells.getRanges().size());
+        assertEquals(9 + 20000, cells.size());
+        int iterated = 0;
+        for (Iterator<CellReference> i = cells.iterator(); i.hasNext(); i
+                .next()) {
+            iterated++;
+        }
+        assertEquals(9 + 20000, iterated);
+    }
+
+    @Test
+    public void legacySelectionGetters_returnModifiableCopies() {
+        Spreadsheet spreadsheet = new Spreadsheet(new XSSFWorkbook());
+        List<SelectionChangeEvent> events = new ArrayList<SelectionChangeEvent>();
+        spreadsheet.addSelectionChangeListener(events::add);
+
+        spreadsheet.setSelection("A1:B2");
+
+        Set<CellReference> selected = spreadsheet.getSelectedCellReferences();
+        assertEquals(4, selected.size());
+        assertTrue(selected.add(new CellReference("J10")));
+        assertEquals(4, spreadsheet.getSelectedCellReferences().size());
+
+        SelectionChangeEvent event = events.get(events.size() - 1);
+        Set<CellReference> all = event.getAllSelectedCells();
+        assertEquals(4, all.size());
+        all.clear();
+        assertEquals(4, event.getAllSelectedCells().size());
+        assertEquals(4, event.getSelectedCells().size());
+    }
+}
@@ -0,0 +1,90 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.command.CellValueCommand;
+
+/**
+ * Tests that the values captured by a {@link CellValueCommand} are restored
+ * as they were, for every kind of cell value.
+ */
+public class CellValueCommandTest {
+
+    private Spreadsheet spreadsheet;
+    private Sheet sheet;
+
+    @Before
+    public void setup() {
+        Workbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("text");
+        row.createCell(1).setCellValue(1.5);
+        row.createCell(2).setCellValue(true);
+        row.createCell(3).setCellValue(false);
+        row.createCell(4).setCellErrorValue(FormulaError.DIV0.getCode());
+        // F1 is left without a cell
+        row.createCell(6).setCellFormula("B1*2");
+
+        spreadsheet = new Spreadsheet(workbook);
+        spreadsheet.setSelection("A1");
+    }
+
+    @Test
+    public void captureRange_execute_valuesAreRestored() {
+        CellValueCommand command = new CellValueCommand(spreadsheet);
+        command.captureCellRangeValues(CellRangeAddress.valueOf("A1:G1"));
+        Row row = sheet.getRow(0);
+        for (int c = 0; c <= 6; c++) {
+            Cell cell = row.getCell(c);
+            if (cell == null) {
+                cell = row.createCell(c);
+            }
+            cell.setCellType(Cell.CELL_TYPE_BLANK);
+            cell.setCellValue(c);
+        }
+
+        command.execute();
+
+        assertEquals("text", row.getCell(0).getStringCellValue());
+        assertEquals(1.5, row.getCell(1).getNumericCellValue(), 0);
+        assertEquals(true, row.getCell(2).getBooleanCellValue());
+        assertEquals(false, row.getCell(3).getBooleanCellValue());
+        assertEquals(Cell.CELL_TYPE_ERROR, row.getCell(4).getCellType());
+        assertEquals(FormulaError.DIV0.getCode(), row.getCell(4)
+                .getErrorCellValue());
+        assertNull(row.getCell(5));
+        assertEquals("B1*2", row.getCell(6).getCellFormula());
+    }
+
+    @Test
+    public void captureRange_executeTwice_changedValuesAreRestored() {
+        CellValueCommand command = new CellValueCommand(spreadsheet);
+        command.captureCellRangeValues(CellRangeAddress.valueOf("A1:G1"));
+        Row row = sheet.getRow(0);
+        row.getCell(0).setCellValue("changed");
+        row.getCell(4).setCellValue(7);
+        row.createCell(5).setCellValue(true);
+
+        // undo, then redo
+        command.execute();
+        command.execute();
+
+        assertEquals("changed", row.getCell(0).getStringCellValue());
+        assertEquals(7, row.getCell(4).getNumericCellValue(), 0);
+        assertEquals(true, row.getCell(5).getBooleanCellValue());
+        assertEquals(1.5, row.getCell(1).getNumericCellValue(), 0);
+    }
+}
@@ -0,0 +1,176 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellKeySet;
+import com.vaadin.addon.spreadsheet.ConditionalFormatter;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetUtil;
+
+/**
+ * Tests for re-evaluating conditional formatting only for the formattings
+ * affected by changed cells.
+ */
+public class ConditionalFormattingUpdateTest {
+
+    private static final String SPREADSHEET = "spreadsheet";
+    private static final String WORKBOOK = "workbook";
+
+    /**
+     * Writes the component and its workbook as placeholders, since POI
+     * workbooks are not serializable.
+     */
+    private class PlaceholderOutputStream extends ObjectOutputStream {
+        PlaceholderOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj == spreadsheet) {
+                return SPREADSHEET;
+            } else if (obj instanceof Workbook) {
+                return WORKBOOK;
+            }
+            return obj;
+        }
+    }
+
+    private class PlaceholderInputStream extends ObjectInputStream {
+        PlaceholderInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (SPREADSHEET.equals(obj)) {
+                return spreadsheet;
+            } else if (WORKBOOK.equals(obj)) {
+                return workbook;
+            }
+            return obj;
+        }
+    }
+
+    private XSSFWorkbook workbook;
+    private Sheet sheet;
+    private Spreadsheet spreadsheet;
+    private ConditionalFormatter formatter;
+
+    @Before
+    public void setup() {
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        for (int r = 0; r < 3; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r == 1 ? 2 : 1);
+            row.createCell(2).setCellValue(0);
+        }
+        SheetConditionalFormatting cfs = sheet
+                .getSheetConditionalFormatting();
+        ConditionalFormattingRule rule = cfs
+                .createConditionalFormattingRule("A1>1");
+        rule.createPatternFormatting().setFillBackgroundColor(
+                IndexedColors.RED.getIndex());
+        cfs.addConditionalFormatting(
+                new CellRangeAddress[] { CellRangeAddress.valueOf("A1:A3") },
+                rule);
+
+        spreadsheet = new Spreadsheet(workbook);
+        formatter = new ConditionalFormatter(spreadsheet);
+        formatter.createConditionalFormatterRules();
+    }
+
+    /**
+     * Changes A3 so that it matches the rule, without reporting the change.
+     * The formatting of A3 changes only if the rule is evaluated again.
+     */
+    private void changeA3Silently() {
+        sheet.getRow(2).getCell(0).setCellValue(5);
+    }
+
+    private CellKeySet keysOf(String cell) {
+        CellRangeAddress address = CellRangeAddress.valueOf(cell);
+        CellKeySet keys = new CellKeySet();
+        keys.add(SpreadsheetUtil.toLongKey(address.getFirstColumn() + 1,
+                address.getFirstRow() + 1));
+        return keys;
+    }
+
+    private ConditionalFormatter serializeAndDeserialize(
+            ConditionalFormatter original) throws IOException,
+            ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new PlaceholderOutputStream(bytes);
+        out.writeObject(original);
+        out.close();
+        ObjectInputStream in = new PlaceholderInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        return (ConditionalFormatter) in.readObject();
+    }
+
+    @Test
+    public void fullPass_matchingCellsAreFormatted() {
+        assertNull(formatter.getCellFormattingIndex(sheet.getRow(0)
+                .getCell(0)));
+        assertNotNull(formatter.getCellFormattingIndex(sheet.getRow(1)
+                .getCell(0)));
+    }
+
+    @Test
+    public void changedCellOutsideFormattings_ruleIsNotEvaluated() {
+        changeA3Silently();
+
+        formatter.updateConditionalFormatterRules(keysOf("C3"));
+
+        assertNull(formatter.getCellFormattingIndex(sheet.getRow(2)
+                .getCell(0)));
+    }
+
+    @Test
+    public void changedCellInsideFormatting_ruleIsEvaluated() {
+        changeA3Silently();
+
+        formatter.updateConditionalFormatterRules(keysOf("A3"));
+
+        assertNotNull(formatter.getCellFormattingIndex(sheet.getRow(2)
+                .getCell(0)));
+    }
+
+    @Test
+    public void serialized_matchesAreKeptAndNextUpdateIsFullPass()
+            throws IOException, ClassNotFoundException {
+        ConditionalFormatter copy = serializeAndDeserialize(formatter);
+        assertNotNull(copy.getCellFormattingIndex(sheet.getRow(1)
+                .getCell(0)));
+
+        changeA3Silently();
+        copy.updateConditionalFormatterRules(keysOf("C3"));
+
+        assertNotNull("The evaluated rules are not serialized, all rules "
+                + "should be evaluated again", copy
+                .getCellFormattingIndex(sheet.getRow(2).getCell(0)));
+    }
+}
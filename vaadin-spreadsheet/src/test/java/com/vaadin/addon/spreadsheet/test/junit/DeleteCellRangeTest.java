@@ -0,0 +1,128 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.client.CellRangeData;
+import com.vaadin.server.ClientMethodInvocation;
+
+/**
+ * Tests that deleting a selected cell range clears the range at once, both
+ * in the formula evaluator and on the client side.
+ */
+public class DeleteCellRangeTest {
+
+    private static class CountingEvaluator extends HSSFFormulaEvaluator {
+        private int cacheClears;
+        private int cellNotifications;
+
+        CountingEvaluator(HSSFWorkbook workbook) {
+            super(workbook);
+        }
+
+        @Override
+        public void clearAllCachedResultValues() {
+            cacheClears++;
+            super.clearAllCachedResultValues();
+        }
+
+        @Override
+        public void notifyUpdateCell(Cell cell) {
+            cellNotifications++;
+            super.notifyUpdateCell(cell);
+        }
+
+        @Override
+        public void notifyDeleteCell(Cell cell) {
+            cellNotifications++;
+            super.notifyDeleteCell(cell);
+        }
+    }
+
+    private static class CountingSpreadsheet extends Spreadsheet {
+        private CountingEvaluator evaluator;
+
+        CountingSpreadsheet(HSSFWorkbook workbook) {
+            super(workbook);
+            evaluator = new CountingEvaluator(workbook);
+        }
+
+        @Override
+        public FormulaEvaluator getFormulaEvaluator() {
+            // called by the super constructor before the field is set
+            return evaluator == null ? super.getFormulaEvaluator()
+                    : evaluator;
+        }
+    }
+
+    private CountingSpreadsheet spreadsheet;
+    private Sheet sheet;
+
+    @Before
+    public void setup() {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        sheet = workbook.createSheet();
+        for (int r = 0; r < 3; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < 3; c++) {
+                row.createCell(c).setCellValue(r * 3 + c);
+            }
+        }
+        sheet.getRow(0).createCell(3).setCellFormula("SUM(A1:C3)");
+
+        spreadsheet = new CountingSpreadsheet(workbook);
+        spreadsheet.setSelection("A1:C3");
+        spreadsheet.retrievePendingRpcCalls();
+    }
+
+    @Test
+    public void deleteRange_oneRangeIsQueuedAndEvaluatorClearedOnce() {
+        spreadsheet.getCellValueManager().onDeleteSelectedCells();
+
+        List<CellRangeData> clearedRanges = new ArrayList<CellRangeData>();
+        int calls = 0;
+        for (ClientMethodInvocation invocation : spreadsheet
+                .retrievePendingRpcCalls()) {
+            if ("cellRangesCleared".equals(invocation.getMethodName())) {
+                calls++;
+                for (Object range : (List<?>) invocation.getParameters()[0]) {
+                    clearedRanges.add((CellRangeData) range);
+                }
+            }
+        }
+        assertEquals(1, calls);
+        assertEquals(1, clearedRanges.size());
+        CellRangeData range = clearedRanges.get(0);
+        assertEquals(1, range.row1);
+        assertEquals(1, range.col1);
+        assertEquals(3, range.row2);
+        assertEquals(3, range.col2);
+
+        assertEquals(1, spreadsheet.evaluator.cacheClears);
+        assertEquals(0, spreadsheet.evaluator.cellNotifications);
+    }
+
+    @Test
+    public void deleteRange_dependentFormulaIsEvaluatedAgain() {
+        Cell sum = sheet.getRow(0).getCell(3);
+        assertEquals(36, spreadsheet.getFormulaEvaluator().evaluate(sum)
+                .getNumberValue(), 0);
+
+        spreadsheet.getCellValueManager().onDeleteSelectedCells();
+
+        assertEquals(0, spreadsheet.getFormulaEvaluator().evaluate(sum)
+                .getNumberValue(), 0);
+    }
+}
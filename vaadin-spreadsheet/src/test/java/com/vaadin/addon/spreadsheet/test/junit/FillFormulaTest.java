@@ -0,0 +1,151 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellSelectionShifter;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+
+/**
+ * Tests that the formulas of a drag fill are shifted like the formula text
+ * was shifted before the formulas were parsed once per source cell.
+ */
+public class FillFormulaTest {
+
+    private static class CountingEvaluator extends HSSFFormulaEvaluator {
+        private int cacheClears;
+        private int formulaNotifications;
+
+        CountingEvaluator(HSSFWorkbook workbook) {
+            super(workbook);
+        }
+
+        @Override
+        public void clearAllCachedResultValues() {
+            cacheClears++;
+            super.clearAllCachedResultValues();
+        }
+
+        @Override
+        public void notifySetFormula(Cell cell) {
+            formulaNotifications++;
+            super.notifySetFormula(cell);
+        }
+    }
+
+    private static class FillSpreadsheet extends Spreadsheet {
+        private CountingEvaluator evaluator;
+
+        FillSpreadsheet(Workbook workbook) {
+            super(workbook);
+            if (workbook instanceof HSSFWorkbook) {
+                evaluator = new CountingEvaluator((HSSFWorkbook) workbook);
+            }
+        }
+
+        @Override
+        public FormulaEvaluator getFormulaEvaluator() {
+            // called by the super constructor before the field is set
+            return evaluator == null ? super.getFormulaEvaluator()
+                    : evaluator;
+        }
+
+        @Override
+        public CellSelectionShifter getCellShifter() {
+            return super.getCellShifter();
+        }
+    }
+
+    private Sheet sheet;
+
+    private FillSpreadsheet createSpreadsheet(Workbook workbook,
+            String... formulas) {
+        sheet = workbook.createSheet();
+        Row row = sheet.createRow(0);
+        for (int c = 0; c < formulas.length; c++) {
+            row.createCell(c).setCellFormula(formulas[c]);
+        }
+        return new FillSpreadsheet(workbook);
+    }
+
+    private String getFormula(int row, int column) {
+        return sheet.getRow(row).getCell(column).getCellFormula();
+    }
+
+    @Test
+    public void fillDown_referencesAreShiftedLikeTheFormulaText() {
+        FillSpreadsheet spreadsheet = createSpreadsheet(new XSSFWorkbook(),
+                "B1+1", "$B$1*2", "B$1*$C1", "SUM(B1:C2)", "SUM($B$1:C2)",
+                "SUM(B:B)", "B1/SUM(B:B)");
+        spreadsheet.setSelection("A1:G1");
+        spreadsheet.getCellShifter().onSelectionIncreasePainted(1, 1, 3, 7);
+
+        assertEquals("B3+1", getFormula(2, 0));
+        assertEquals("$B$1*2", getFormula(2, 1));
+        assertEquals("B$1*$C3", getFormula(2, 2));
+        assertEquals("SUM(B3:C4)", getFormula(2, 3));
+        assertEquals("SUM($B$1:C4)", getFormula(2, 4));
+        assertEquals("SUM(B:B)", getFormula(2, 5));
+        assertEquals("B3/SUM(B:B)", getFormula(2, 6));
+    }
+
+    @Test
+    public void fillRight_referencesAreShiftedLikeTheFormulaText() {
+        FillSpreadsheet spreadsheet = createSpreadsheet(new XSSFWorkbook(),
+                "B1+$B1+B$1+$B$1");
+        spreadsheet.setSelection("A1");
+        spreadsheet.getCellShifter().onSelectionIncreasePainted(1, 1, 1, 3);
+
+        assertEquals("C1+$B1+C$1+$B$1", getFormula(0, 1));
+        assertEquals("D1+$B1+D$1+$B$1", getFormula(0, 2));
+    }
+
+    @Test
+    public void fillUp_referenceOutsideSheet_sourceFormulaIsCopied() {
+        Workbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        sheet.createRow(2).createCell(0).setCellFormula("B2+1");
+        FillSpreadsheet spreadsheet = new FillSpreadsheet(workbook);
+        spreadsheet.setSelection("A3");
+        spreadsheet.getCellShifter().onSelectionIncreasePainted(1, 1, 3, 1);
+
+        assertEquals("B1+1", getFormula(1, 0));
+        // B0 is not a valid reference, so the source formula is kept
+        assertEquals("B2+1", getFormula(0, 0));
+    }
+
+    @Test
+    public void smallFill_evaluatorIsNotifiedPerCell() {
+        FillSpreadsheet spreadsheet = createSpreadsheet(new HSSFWorkbook(),
+                "B1+1");
+        spreadsheet.setSelection("A1");
+        spreadsheet.getCellShifter().onSelectionIncreasePainted(1, 1, 4, 1);
+
+        assertEquals("B4+1", getFormula(3, 0));
+        assertEquals(3, spreadsheet.evaluator.formulaNotifications);
+        assertEquals(0, spreadsheet.evaluator.cacheClears);
+    }
+
+    @Test
+    public void bulkFill_evaluatorCacheIsClearedOnce() {
+        FillSpreadsheet spreadsheet = createSpreadsheet(new HSSFWorkbook(),
+                "B1+1");
+        spreadsheet.setSelection("A1");
+        // more than 10000 target cells
+        spreadsheet.getCellShifter().onSelectionIncreasePainted(1, 1, 10002,
+                1);
+
+        assertEquals("B10002+1", getFormula(10001, 0));
+        assertEquals(0, spreadsheet.evaluator.formulaNotifications);
+        assertEquals(1, spreadsheet.evaluator.cacheClears);
+    }
+}
@@ -0,0 +1,85 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.ItemFilter;
+import com.vaadin.addon.spreadsheet.PopupButton;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetFilterTable;
+
+/**
+ * Tests that the values listed by the item filters of a filter table follow
+ * the cell value changes.
+ */
+public class FilterValueIndexTest {
+
+    private static final int LAST_ROW = 499;
+
+    private static class ValuesItemFilter extends ItemFilter {
+        ValuesItemFilter(CellRangeAddress filterRange,
+                Spreadsheet spreadsheet, SpreadsheetFilterTable filterTable) {
+            super(filterRange, spreadsheet, new PopupButton(), filterTable);
+        }
+
+        Set<String> getValues() {
+            return getAllValues();
+        }
+    }
+
+    private Spreadsheet spreadsheet;
+    private ValuesItemFilter filter;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Input");
+        header.createCell(1).setCellValue("Result");
+        for (int r = 1; r <= LAST_ROW; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(1);
+            row.createCell(1).setCellValue("text");
+        }
+        // far outside the visible area, no formula value event is fired
+        sheet.getRow(LAST_ROW).getCell(1).setCellFormula("A2*10");
+
+        spreadsheet = new Spreadsheet(workbook);
+        SpreadsheetFilterTable table = new SpreadsheetFilterTable(
+                spreadsheet, new CellRangeAddress(0, LAST_ROW, 0, 1));
+        filter = new ValuesItemFilter(new CellRangeAddress(1, LAST_ROW, 1,
+                1), spreadsheet, table);
+    }
+
+    @Test
+    public void editedCell_offScreenDependentFormulaIsFormattedAgain() {
+        assertTrue(filter.getValues().contains("10"));
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 2, "5");
+
+        Set<String> values = filter.getValues();
+        assertTrue(values.contains("50"));
+        assertFalse(values.contains("10"));
+        assertEquals(2, values.size());
+    }
+
+    @Test
+    public void editedCell_newValueIsListed() {
+        spreadsheet.getCellValueManager().onCellValueChange(2, 3, "other");
+
+        Set<String> values = filter.getValues();
+        assertTrue(values.contains("other"));
+        assertTrue(values.contains("text"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetHandlerImpl;
+
+/**
+ * Verifies that formulas depending on an edited cell are re-evaluated when
+ * only the dependent cells are recalculated, and that the other formulas are
+ * skipped unless their references can't be tracked.
+ */
+public class FormulaDependencyUpdateTest {
+
+    private Spreadsheet spreadsheet;
+    private Sheet sheet;
+    private Sheet otherSheet;
+    private Set<CellReference> changedFormulaCells;
+
+    @Before
+    public void setup() {
+        Workbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet("Main");
+        otherSheet = workbook.createSheet("Other");
+        otherSheet.createRow(0).createCell(0).setCellValue(1);
+        Name input = workbook.createName();
+        input.setNameName("Input");
+        input.setRefersToFormula("Main!$A$5");
+
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue(1);
+        row.createCell(1).setCellFormula("A1*2");
+        row.createCell(2).setCellFormula("B1+1");
+        row.createCell(3).setCellFormula("SUM(A1:A3)");
+        // not depending on A1
+        row.createCell(4).setCellFormula("A5*3");
+        row.createCell(5).setCellFormula("INDIRECT(\"A5\")*3");
+        row.createCell(6).setCellFormula("Other!A1*3");
+        row.createCell(7).setCellFormula("Input*3");
+        sheet.createRow(1).createCell(0).setCellValue(2);
+        sheet.createRow(4).createCell(0).setCellValue(1);
+
+        spreadsheet = new Spreadsheet();
+        spreadsheet.setWorkbook(workbook);
+
+        changedFormulaCells = new HashSet<>();
+        spreadsheet.addFormulaValueChangeListener(
+                event -> changedFormulaCells.addAll(event.getChangedCells()));
+        // the first update goes through the whole sheet
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "3");
+        changedFormulaCells.clear();
+    }
+
+    /**
+     * Changes the value in the POI model and the formula evaluator only, so
+     * that the change shows up only in the formulas that are evaluated again.
+     */
+    private void changeWithoutMarking(Cell cell, double value) {
+        cell.setCellValue(value);
+        spreadsheet.getFormulaEvaluator().notifyUpdateCell(cell);
+    }
+
+    @Test
+    public void editCell_independentFormulaIsSkipped() {
+        changeWithoutMarking(sheet.getRow(4).getCell(0), 4);
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "5");
+
+        assertTrue("B1 should have changed",
+                changedFormulaCells.contains(new CellReference("B1")));
+        assertFalse("E1 does not depend on A1",
+                changedFormulaCells.contains(new CellReference("E1")));
+        assertEquals("E1 should not have been evaluated", 3, sheet.getRow(0)
+                .getCell(4).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void editCell_volatileFunctionIsEvaluated() {
+        changeWithoutMarking(sheet.getRow(4).getCell(0), 4);
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "5");
+
+        assertTrue("F1 uses INDIRECT and is always evaluated",
+                changedFormulaCells.contains(new CellReference("F1")));
+        assertEquals(12, sheet.getRow(0).getCell(5).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void editCell_otherSheetReferenceIsEvaluated() {
+        changeWithoutMarking(otherSheet.getRow(0).getCell(0), 2);
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "5");
+
+        assertTrue("G1 refers to another sheet and is always evaluated",
+                changedFormulaCells.contains(new CellReference("G1")));
+        assertEquals(6, sheet.getRow(0).getCell(6).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void editCell_nameReferenceIsEvaluated() {
+        changeWithoutMarking(sheet.getRow(4).getCell(0), 4);
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "5");
+
+        assertTrue("H1 refers to a name and is always evaluated",
+                changedFormulaCells.contains(new CellReference("H1")));
+        assertEquals(12, sheet.getRow(0).getCell(7).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void editCell_transitiveDependentsAreUpdated() {
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "5");
+
+        assertTrue("B1 should have changed",
+                changedFormulaCells.contains(new CellReference("B1")));
+        assertTrue("C1 should have changed",
+                changedFormulaCells.contains(new CellReference("C1")));
+        assertTrue("D1 should have changed",
+                changedFormulaCells.contains(new CellReference("D1")));
+    }
+
+    @Test
+    public void editCellInArea_areaDependentIsUpdated() {
+        spreadsheet.getCellValueManager().onCellValueChange(1, 3, "10");
+
+        assertTrue("D1 should have changed",
+                changedFormulaCells.contains(new CellReference("D1")));
+    }
+
+    @Test
+    public void lazyFormulaEvaluation_unsentFormulasAreNotEvaluated() {
+        spreadsheet.setLazyFormulaEvaluation(true);
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "7");
+
+        assertTrue("No formula cell has been sent to the client",
+                changedFormulaCells.isEmpty());
+    }
+
+    @Test
+    public void lazyFormulaEvaluation_sentFormulasAreEvaluated() {
+        // B1 and C1 are sent to the client, D1 is not
+        new SpreadsheetHandlerImpl(spreadsheet).onSheetScroll(1, 1, 1, 3);
+        spreadsheet.setLazyFormulaEvaluation(true);
+
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "7");
+
+        assertEquals(new HashSet<CellReference>(Arrays.asList(
+                new CellReference("B1"), new CellReference("C1"))),
+                changedFormulaCells);
+    }
+
+    @Test
+    public void lazyFormulaEvaluation_eventIsFiredOnUpdateAfterLoading() {
+        SpreadsheetHandlerImpl handler = new SpreadsheetHandlerImpl(
+                spreadsheet);
+        spreadsheet.setLazyFormulaEvaluation(true);
+        spreadsheet.getCellValueManager().onCellValueChange(1, 1, "7");
+        assertTrue(changedFormulaCells.isEmpty());
+
+        handler.onSheetScroll(1, 1, 1, 4);
+        assertTrue("The change of D1 is held until the next update",
+                changedFormulaCells.isEmpty());
+
+        // unrelated change
+        spreadsheet.getCellValueManager().onCellValueChange(26, 10, "1");
+        assertTrue("D1 should have changed when loaded",
+                changedFormulaCells.contains(new CellReference("D1")));
+        assertEquals(9, sheet.getRow(0).getCell(3).getNumericCellValue(), 0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.shared.SpreadsheetState;
+
+/**
+ * Tests for hiding and showing several rows and columns at once, and for
+ * keeping the 1-based index lists of the shared state in sync.
+ */
+public class HiddenRowsColumnsTest {
+
+    private static class PublicSpreadsheet extends Spreadsheet {
+        PublicSpreadsheet(Workbook wb) {
+            super(wb);
+        }
+
+        @Override
+        public SpreadsheetState getState() {
+            return super.getState();
+        }
+    }
+
+    private PublicSpreadsheet spreadsheet;
+    private Sheet sheet;
+
+    @Before
+    public void setup() {
+        Workbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        for (int r = 0; r < 10; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < 10; c++) {
+                row.createCell(c).setCellValue(r * 10 + c);
+            }
+        }
+        spreadsheet = new PublicSpreadsheet(workbook);
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int i : indexes) {
+            bits.set(i);
+        }
+        return bits;
+    }
+
+    private void assertHiddenRows(Integer... headerIndexes) {
+        assertEquals(Arrays.asList(headerIndexes),
+                spreadsheet.getState().hiddenRowIndexes);
+        for (int r = 0; r < 10; r++) {
+            boolean hidden = Arrays.asList(headerIndexes).contains(r + 1);
+            assertEquals("Row " + r, hidden, spreadsheet.isRowHidden(r));
+            assertEquals("Height of row " + r, hidden,
+                    spreadsheet.getState().rowH[r] == 0.0F);
+        }
+    }
+
+    private void assertHiddenColumns(Integer... headerIndexes) {
+        assertEquals(Arrays.asList(headerIndexes),
+                spreadsheet.getState().hiddenColumnIndexes);
+        for (int c = 0; c < 10; c++) {
+            boolean hidden = Arrays.asList(headerIndexes).contains(c + 1);
+            assertEquals("Column " + c, hidden, spreadsheet.isColumnHidden(c));
+            assertEquals("Width of column " + c, hidden,
+                    spreadsheet.getState().colW[c] == 0);
+        }
+    }
+
+    @Test
+    public void setRowsHidden_bitSet_onlyGivenRowsChange() {
+        spreadsheet.setRowsHidden(bits(1, 4, 7), true);
+        assertHiddenRows(2, 5, 8);
+
+        spreadsheet.setRowsHidden(bits(4, 5), false);
+        assertHiddenRows(2, 8);
+    }
+
+    @Test
+    public void setRowsHidden_rangeAndBitSet_restOfRangeIsShown() {
+        spreadsheet.setRowsHidden(bits(2, 4, 8), true);
+
+        spreadsheet.setRowsHidden(0, 5, bits(1, 3));
+
+        assertHiddenRows(2, 4, 9);
+    }
+
+    @Test
+    public void setRowsHidden_missingRow_rowIsCreatedAndHidden() {
+        spreadsheet.setRowsHidden(12, 12, true);
+
+        assertTrue(sheet.getRow(12).getZeroHeight());
+        assertEquals(Arrays.asList(13),
+                spreadsheet.getState().hiddenRowIndexes);
+    }
+
+    @Test
+    public void setRowHidden_singleRows_stateStaysSorted() {
+        spreadsheet.setRowHidden(5, true);
+        spreadsheet.setRowHidden(0, true);
+        spreadsheet.setRowHidden(9, true);
+        spreadsheet.setRowHidden(5, true);
+        assertHiddenRows(1, 6, 10);
+
+        spreadsheet.setRowHidden(5, false);
+        assertHiddenRows(1, 10);
+
+        spreadsheet.setRowHeight(9, 20);
+        assertHiddenRows(1);
+    }
+
+    @Test
+    public void setColumnsHidden_bitSet_onlyGivenColumnsChange() {
+        spreadsheet.setColumnsHidden(bits(0, 3, 9), true);
+        assertHiddenColumns(1, 4, 10);
+
+        spreadsheet.setColumnsHidden(bits(3, 4), false);
+        assertHiddenColumns(1, 10);
+        assertFalse(spreadsheet.getState().colW[3] == 0);
+    }
+
+    @Test
+    public void setColumnsHidden_rangeAndBitSet_restOfRangeIsShown() {
+        spreadsheet.setColumnsHidden(bits(2, 4, 8), true);
+
+        spreadsheet.setColumnsHidden(0, 5, bits(1, 3));
+
+        assertHiddenColumns(2, 4, 9);
+    }
+
+    @Test
+    public void setColumnHidden_singleColumns_stateStaysSorted() {
+        spreadsheet.setColumnHidden(7, true);
+        spreadsheet.setColumnHidden(2, true);
+        spreadsheet.setColumnHidden(7, true);
+        assertHiddenColumns(3, 8);
+
+        spreadsheet.setColumnHidden(2, false);
+        assertHiddenColumns(8);
+
+        spreadsheet.setColumnWidth(7, 50);
+        assertHiddenColumns();
+    }
+}
@@ -0,0 +1,134 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetHistoryManager;
+import com.vaadin.addon.spreadsheet.command.Command;
+
+/**
+ * Tests for limiting the undo history by the estimated memory usage of the
+ * commands.
+ */
+public class HistoryMemoryLimitTest {
+
+    private static class SizedCommand implements Command {
+        private final String name;
+        private final List<String> executed;
+
+        SizedCommand(String name, List<String> executed) {
+            this.name = name;
+            this.executed = executed;
+        }
+
+        @Override
+        public void execute() {
+            executed.add(name);
+        }
+
+        @Override
+        public int getActiveSheetIndex() {
+            return 0;
+        }
+
+        @Override
+        public void setActiveSheetIndex(int index) {
+        }
+
+        @Override
+        public CellReference getSelectedCellReference() {
+            return null;
+        }
+
+        @Override
+        public CellRangeAddress getPaintedCellRange() {
+            return null;
+        }
+
+        @Override
+        public long getEstimatedMemoryUsage() {
+            return 100;
+        }
+    }
+
+    private SpreadsheetHistoryManager history;
+    private List<String> executed;
+    private Command first;
+    private Command second;
+    private Command third;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        workbook.createSheet();
+        Spreadsheet spreadsheet = new Spreadsheet(workbook);
+        history = spreadsheet.getSpreadsheetHistoryManager();
+        executed = new ArrayList<String>();
+        first = new SizedCommand("first", executed);
+        second = new SizedCommand("second", executed);
+        third = new SizedCommand("third", executed);
+        history.addCommand(first);
+        history.addCommand(second);
+        history.addCommand(third);
+    }
+
+    @Test
+    public void addCommandOverLimit_oldestCommandsAreDiscarded() {
+        history.setHistoryMemoryLimit(250);
+
+        assertEquals(1, history.getHistoryIndex());
+        assertSame(second, history.getCommand(0));
+        assertSame(third, history.getCommand(1));
+    }
+
+    @Test
+    public void latestCommandAloneOverLimit_isKept() {
+        history.setHistoryMemoryLimit(50);
+
+        assertEquals(0, history.getHistoryIndex());
+        assertSame(third, history.getCommand(0));
+        assertTrue(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void allUndone_setLimit_redoStartsFromOldestCommand() {
+        history.undo();
+        history.undo();
+        history.undo();
+        executed.clear();
+
+        history.setHistoryMemoryLimit(150);
+
+        assertFalse(history.canUndo());
+        assertTrue(history.canRedo());
+        assertSame(first, history.getCommand(0));
+        history.redo();
+        assertFalse(history.canRedo());
+        assertEquals("[first]", executed.toString());
+    }
+
+    @Test
+    public void partlyUndone_setLimit_newestRedoCommandsAreDiscarded() {
+        history.undo();
+
+        history.setHistoryMemoryLimit(150);
+
+        assertEquals(0, history.getHistoryIndex());
+        assertSame(second, history.getCommand(0));
+        assertTrue(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+}
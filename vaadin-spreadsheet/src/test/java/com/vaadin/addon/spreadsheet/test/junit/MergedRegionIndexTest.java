@@ -0,0 +1,156 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.client.MergedRegion;
+import com.vaadin.addon.spreadsheet.client.MergedRegionIndex;
+import com.vaadin.addon.spreadsheet.client.MergedRegionUtil.MergedRegionContainer;
+
+/**
+ * Tests for looking up merged regions with a {@link MergedRegionIndex}.
+ */
+public class MergedRegionIndexTest {
+
+    @SuppressWarnings("serial")
+    private static class MergingSpreadsheet extends Spreadsheet {
+        MergingSpreadsheet() {
+            super(new XSSFWorkbook());
+        }
+
+        @Override
+        public MergedRegionContainer getMergedRegionContainer() {
+            return super.getMergedRegionContainer();
+        }
+    }
+
+    /** Rows per bucket of the index */
+    private static final int BUCKET_ROWS = 16;
+
+    /** Bucket span at which regions are no longer bucketed */
+    private static final int TALL_BUCKETS = 64;
+
+    private static MergedRegionIndex index(MergedRegion... regions) {
+        List<MergedRegion> list = new ArrayList<MergedRegion>();
+        for (MergedRegion region : regions) {
+            list.add(region);
+        }
+        return new MergedRegionIndex(list);
+    }
+
+    /**
+     * Checks that the region is found from all of its corners and not from
+     * the cells just outside of it.
+     */
+    private static void assertFoundWithin(MergedRegionIndex index,
+            MergedRegion region) {
+        assertSame(region, index.getMergedRegion(region.col1, region.row1));
+        assertSame(region, index.getMergedRegion(region.col2, region.row1));
+        assertSame(region, index.getMergedRegion(region.col1, region.row2));
+        assertSame(region, index.getMergedRegion(region.col2, region.row2));
+        assertSame(region,
+                index.getMergedRegionStartingFrom(region.col1, region.row1));
+
+        assertNull(index.getMergedRegion(region.col1, region.row1 - 1));
+        assertNull(index.getMergedRegion(region.col1, region.row2 + 1));
+        assertNull(index.getMergedRegion(region.col1 - 1, region.row1));
+        assertNull(index.getMergedRegion(region.col2 + 1, region.row2));
+        assertNull(index.getMergedRegionStartingFrom(region.col2, region.row2));
+    }
+
+    @Test
+    public void nullList_nothingIsFound() {
+        MergedRegionIndex index = new MergedRegionIndex(null);
+        assertNull(index.getMergedRegion(1, 1));
+        assertNull(index.getMergedRegionStartingFrom(1, 1));
+        assertTrue(index.isIndexOf(null));
+        assertFalse(index.isIndexOf(new ArrayList<MergedRegion>()));
+    }
+
+    @Test
+    public void regionsWithinAndAcrossBuckets_areFound() {
+        MergedRegion inBucket = new MergedRegion(2, 2, 3, 4);
+        MergedRegion acrossBuckets = new MergedRegion(2, BUCKET_ROWS - 1, 2,
+                BUCKET_ROWS + 1);
+        MergedRegion sameRows = new MergedRegion(5, BUCKET_ROWS - 1, 6,
+                BUCKET_ROWS + 1);
+        MergedRegionIndex index = index(inBucket, acrossBuckets, sameRows);
+
+        assertFoundWithin(index, inBucket);
+        assertFoundWithin(index, acrossBuckets);
+        assertFoundWithin(index, sameRows);
+        assertNull(index.getMergedRegion(4, BUCKET_ROWS));
+    }
+
+    @Test
+    public void regionsAtTallThreshold_areFound() {
+        // the first spans one bucket less than the threshold, the second
+        // spans exactly the threshold and is kept outside the buckets
+        MergedRegion bucketed = new MergedRegion(2, 1, 2, TALL_BUCKETS
+                * BUCKET_ROWS - 1);
+        MergedRegion tall = new MergedRegion(4, 1, 4, TALL_BUCKETS
+                * BUCKET_ROWS);
+        MergedRegion wholeColumn = new MergedRegion(8, 1, 9, 1048576);
+        MergedRegion small = new MergedRegion(4, TALL_BUCKETS * BUCKET_ROWS
+                + 2, 5, TALL_BUCKETS * BUCKET_ROWS + 3);
+        MergedRegionIndex index = index(bucketed, tall, wholeColumn, small);
+
+        assertFoundWithin(index, bucketed);
+        assertFoundWithin(index, tall);
+        assertFoundWithin(index, small);
+        assertSame(wholeColumn, index.getMergedRegion(9, 500000));
+        assertSame(wholeColumn, index.getMergedRegionStartingFrom(8, 1));
+        assertSame(tall, index.getMergedRegion(4, BUCKET_ROWS * 30));
+    }
+
+    @Test
+    public void isIndexOf_detectsChangedList() {
+        List<MergedRegion> regions = new ArrayList<MergedRegion>();
+        regions.add(new MergedRegion(1, 1, 2, 2));
+        MergedRegionIndex index = new MergedRegionIndex(regions);
+        assertTrue(index.isIndexOf(regions));
+
+        assertFalse("A different list is not indexed",
+                index.isIndexOf(new ArrayList<MergedRegion>(regions)));
+
+        regions.add(new MergedRegion(3, 3, 4, 4));
+        assertFalse("The index of a grown list is stale",
+                index.isIndexOf(regions));
+        regions.remove(0);
+        regions.remove(0);
+        assertFalse("The index of a shrunk list is stale",
+                index.isIndexOf(regions));
+    }
+
+    @Test
+    public void spreadsheet_replacedRegionIsFound() {
+        MergingSpreadsheet spreadsheet = new MergingSpreadsheet();
+        MergedRegionContainer container = spreadsheet
+                .getMergedRegionContainer();
+        spreadsheet.addMergedRegion(0, 0, 1, 1);
+        assertNotNull(container.getMergedRegion(1, 1));
+        assertSame(container.getMergedRegion(1, 1),
+                container.getMergedRegion(2, 2));
+
+        // same number of regions, so only the invalidation on change keeps
+        // the index from going stale
+        spreadsheet.removeMergedRegion(0);
+        spreadsheet.addMergedRegion(4, 4, 5, 5);
+
+        assertNull(container.getMergedRegion(1, 1));
+        assertNull(container.getMergedRegionStartingFrom(1, 1));
+        MergedRegion region = container.getMergedRegion(6, 6);
+        assertNotNull(region);
+        assertSame(region, container.getMergedRegionStartingFrom(5, 5));
+    }
+}
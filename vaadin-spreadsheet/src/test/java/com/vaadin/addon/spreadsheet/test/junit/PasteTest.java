@@ -0,0 +1,152 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.Spreadsheet.ProtectedEditEvent;
+import com.vaadin.addon.spreadsheet.SpreadsheetHandlerImpl;
+
+/**
+ * Tests that pasted text is split into rows and cells like the clipboard
+ * contents of Excel: one row per line, one cell per tab separated value.
+ */
+public class PasteTest {
+
+    private Spreadsheet spreadsheet;
+    private SpreadsheetHandlerImpl handler;
+    private Sheet sheet;
+    private Set<CellReference> changedCells;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        spreadsheet = new Spreadsheet(workbook);
+        spreadsheet.setSelection("A1");
+        handler = new SpreadsheetHandlerImpl(spreadsheet);
+        changedCells = new HashSet<CellReference>();
+        spreadsheet.addCellValueChangeListener(event -> changedCells
+                .addAll(event.getChangedCells()));
+    }
+
+    private void assertPastedRange(String range) {
+        CellRangeAddress expected = CellRangeAddress.valueOf(range);
+        assertEquals(expected.getNumberOfCells(), changedCells.size());
+        assertTrue(changedCells.contains(new CellReference(expected
+                .getLastRow(), expected.getLastColumn())));
+    }
+
+    private String getString(int row, int col) {
+        return sheet.getRow(row).getCell(col).getStringCellValue();
+    }
+
+    @Test
+    public void tabsOnly_emptyValueOnEachSideOfTabs() {
+        handler.onPaste("\t\t");
+
+        assertPastedRange("A1:C1");
+        assertEquals("", getString(0, 0));
+        assertEquals("", getString(0, 2));
+    }
+
+    @Test
+    public void trailingTab_emptyLastValue() {
+        handler.onPaste("1\ttext\t");
+
+        assertPastedRange("A1:C1");
+        assertEquals(1, sheet.getRow(0).getCell(0).getNumericCellValue(), 0);
+        assertEquals("text", getString(0, 1));
+        assertEquals("", getString(0, 2));
+    }
+
+    @Test
+    public void crlfLines_shorterLineIsPaddedWithBlanks() {
+        handler.onPaste("a\tb\r\nc");
+
+        assertPastedRange("A1:B2");
+        assertEquals("b", getString(0, 1));
+        assertEquals("c", getString(1, 0));
+        assertEquals(Cell.CELL_TYPE_BLANK, sheet.getRow(1).getCell(1)
+                .getCellType());
+    }
+
+    @Test
+    public void trailingEmptyLines_areIgnored() {
+        handler.onPaste("x\n\n\n");
+
+        assertPastedRange("A1:A1");
+        assertEquals("x", getString(0, 0));
+        assertNull(sheet.getRow(1));
+    }
+
+    /**
+     * Creates the cells of A1:B2 with an unlocked style, except for the given
+     * cell which keeps a locked style, and protects the sheet.
+     */
+    private void protectWithUnlockedCells(String lockedCell) {
+        CellStyle unlocked = sheet.getWorkbook().createCellStyle();
+        unlocked.setLocked(false);
+        CellStyle locked = sheet.getWorkbook().createCellStyle();
+        for (int r = 0; r < 2; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < 2; c++) {
+                Cell cell = row.createCell(c);
+                cell.setCellValue("old");
+                cell.setCellStyle(new CellReference(r, c).formatAsString()
+                        .equals(lockedCell) ? locked : unlocked);
+            }
+        }
+        spreadsheet.setSheetProtected(0, "secret");
+    }
+
+    @Test
+    public void protectedSheet_unlockedCells_isPasted() {
+        protectWithUnlockedCells(null);
+
+        handler.onPaste("a\tb\nc\td");
+
+        assertPastedRange("A1:B2");
+        assertEquals("d", getString(1, 1));
+    }
+
+    @Test
+    public void protectedSheet_lockedCellInRange_isNotPasted() {
+        protectWithUnlockedCells("B2");
+        List<ProtectedEditEvent> protectedEdits = new ArrayList<ProtectedEditEvent>();
+        spreadsheet.addProtectedEditListener(protectedEdits::add);
+
+        handler.onPaste("a\tb\nc\td");
+
+        assertEquals(1, protectedEdits.size());
+        assertTrue(changedCells.isEmpty());
+        assertEquals("old", getString(0, 0));
+        assertEquals("old", getString(1, 1));
+    }
+
+    @Test
+    public void emptyLineInMiddle_isPastedAsBlankRow() {
+        handler.onPaste("x\r\n\r\ny\r\n");
+
+        assertPastedRange("A1:A3");
+        assertEquals(Cell.CELL_TYPE_BLANK, sheet.getRow(1).getCell(0)
+                .getCellType());
+        assertEquals("y", getString(2, 0));
+    }
+}
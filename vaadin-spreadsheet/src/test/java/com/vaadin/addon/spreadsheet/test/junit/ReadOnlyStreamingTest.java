@@ -0,0 +1,155 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+
+/**
+ * Tests for loading XLSX files in read-only streaming mode.
+ */
+public class ReadOnlyStreamingTest {
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Data");
+        for (int r = 0; r < 500; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue("row " + r);
+            row.createCell(1).setCellValue(r);
+        }
+        workbook.createSheet("Empty");
+        file = File.createTempFile("streaming", ".xlsx");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readStreaming_sheetsHaveSizeAndNamesOfFile()
+            throws IOException {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.readStreaming(file);
+
+        assertTrue(spreadsheet.isReadOnlyStreaming());
+        assertEquals(2, spreadsheet.getNumberOfSheets());
+        assertEquals("Data", spreadsheet.getWorkbook().getSheetName(0));
+        assertEquals(500, spreadsheet.getRows());
+        assertTrue("Read-only sheets should be protected", spreadsheet
+                .getActiveSheet().getProtect());
+    }
+
+    @Test
+    public void readStreaming_otherSheetShown_sheetIsParsed()
+            throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        workbook.createSheet("First");
+        Sheet second = workbook.createSheet("Second");
+        for (int r = 0; r < 300; r++) {
+            second.createRow(r).createCell(2).setCellValue(r);
+        }
+        File twoSheets = File.createTempFile("streaming", ".xlsx");
+        FileOutputStream out = new FileOutputStream(twoSheets);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.readStreaming(twoSheets);
+        spreadsheet.setActiveSheetIndex(1);
+        twoSheets.delete();
+
+        assertEquals(300, spreadsheet.getRows());
+    }
+
+    @Test
+    public void readStreaming_activeSheetOfFileIsShown() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet first = workbook.createSheet("First");
+        for (int r = 0; r < 400; r++) {
+            first.createRow(r).createCell(0).setCellValue(r);
+        }
+        Sheet second = workbook.createSheet("Second");
+        for (int r = 0; r < 300; r++) {
+            second.createRow(r).createCell(2).setCellValue(r);
+        }
+        workbook.setActiveSheet(1);
+        File activeSecond = File.createTempFile("streaming", ".xlsx");
+        FileOutputStream out = new FileOutputStream(activeSecond);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.readStreaming(activeSecond);
+
+        assertEquals("Second", spreadsheet.getActiveSheet().getSheetName());
+        assertEquals(300, spreadsheet.getRows());
+
+        spreadsheet.setActiveSheetIndex(0);
+        activeSecond.delete();
+
+        assertEquals("First", spreadsheet.getActiveSheet().getSheetName());
+        assertEquals(400, spreadsheet.getRows());
+    }
+
+    @Test
+    public void readStreaming_fileRemoved_sheetChangeFails()
+            throws IOException {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.readStreaming(file);
+        file.delete();
+
+        try {
+            spreadsheet.setActiveSheetIndex(1);
+            fail("The sheet can't be read after the file is removed");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+
+        assertEquals("The current sheet should stay active", "Data",
+                spreadsheet.getActiveSheet().getSheetName());
+        assertEquals(500, spreadsheet.getRows());
+    }
+
+    @Test
+    public void setWorkbook_afterReadStreaming_readOnlyModeCleared()
+            throws IOException {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.readStreaming(file);
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        workbook.createSheet();
+        spreadsheet.setWorkbook(workbook);
+
+        assertFalse(spreadsheet.isReadOnlyStreaming());
+    }
+}
@@ -0,0 +1,148 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellValueManager;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetUtil;
+import com.vaadin.addon.spreadsheet.client.CellData;
+
+/**
+ * Tests for the tracking of the cells that have been sent to the client: a
+ * cell is loaded only once, until its cached value is cleared.
+ */
+public class SentCellTrackingTest {
+
+    /**
+     * Exposes the protected cache methods of the value manager.
+     */
+    @SuppressWarnings("serial")
+    private static class TrackingCellValueManager extends CellValueManager {
+
+        TrackingCellValueManager(Spreadsheet spreadsheet) {
+            super(spreadsheet);
+        }
+
+        Set<String> load(String range) {
+            CellRangeAddress address = CellRangeAddress.valueOf(range);
+            Set<String> loaded = new HashSet<String>();
+            for (CellData cd : loadCellDataForRowAndColumnRange(
+                    address.getFirstRow() + 1, address.getFirstColumn() + 1,
+                    address.getLastRow() + 1, address.getLastColumn() + 1)) {
+                assertTrue("Cell sent twice in one load",
+                        loaded.add(new CellReference(cd.row - 1, cd.col - 1)
+                                .formatAsString()));
+            }
+            return loaded;
+        }
+
+        void clearCell(String cell) {
+            CellReference ref = new CellReference(cell);
+            clearCellCache(SpreadsheetUtil.toLongKey(ref.getCol() + 1,
+                    ref.getRow() + 1));
+        }
+
+        void changeRange(String range) {
+            CellRangeAddress address = CellRangeAddress.valueOf(range);
+            rangeChanged(address.getFirstRow() + 1,
+                    address.getFirstColumn() + 1, address.getLastRow() + 1,
+                    address.getLastColumn() + 1);
+        }
+
+        void deleteRows(int firstRow, int lastRow) {
+            updateDeletedRowsInClientCache(firstRow, lastRow);
+        }
+    }
+
+    /** Range covering all the cells of the sheet */
+    private static final String ALL = "A1:XFD2000";
+
+    private TrackingCellValueManager manager;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        Row first = sheet.createRow(0);
+        first.createCell(0).setCellValue(1);
+        first.createCell(1).setCellValue(2);
+        sheet.createRow(1).createCell(2).setCellFormula("A1+B1");
+        // beyond the initial row table and at the last column of the sheet
+        sheet.createRow(999).createCell(0).setCellValue(3);
+        sheet.createRow(4).createCell(16383).setCellValue(4);
+
+        manager = new TrackingCellValueManager(new Spreadsheet(workbook));
+    }
+
+    private static Set<String> cells(String... cells) {
+        return new HashSet<String>(Arrays.asList(cells));
+    }
+
+    @Test
+    public void load_cellsAreSentOnce() {
+        assertEquals(cells("A1", "B1", "C2", "A1000", "XFD5"),
+                manager.load(ALL));
+        assertEquals(cells(), manager.load(ALL));
+    }
+
+    @Test
+    public void clearCellCache_onlyThatCellIsSentAgain() {
+        manager.load(ALL);
+
+        manager.clearCell("B1");
+        manager.clearCell("C2");
+        manager.clearCell("XFD5");
+
+        assertEquals(cells("B1", "C2", "XFD5"), manager.load(ALL));
+    }
+
+    @Test
+    public void rangeChanged_cellsInRangeAreSentAgain() {
+        manager.load(ALL);
+
+        manager.changeRange("B1:C1000");
+
+        assertEquals(cells("B1", "C2"), manager.load(ALL));
+    }
+
+    @Test
+    public void clearCacheForColumn_columnIsSentAgain() {
+        manager.load(ALL);
+
+        manager.clearCacheForColumn(1);
+
+        assertEquals(cells("A1", "A1000"), manager.load(ALL));
+    }
+
+    @Test
+    public void deletedRows_rowsAreSentAgain() {
+        manager.load(ALL);
+
+        manager.deleteRows(2, 5);
+
+        assertEquals(cells("C2", "XFD5"), manager.load(ALL));
+    }
+
+    @Test
+    public void clearCachedContent_allCellsAreSentAgain() {
+        manager.load(ALL);
+
+        manager.clearCachedContent();
+
+        assertEquals(cells("A1", "B1", "C2", "A1000", "XFD5"),
+                manager.load(ALL));
+    }
+}
@@ -0,0 +1,111 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.shared.SpreadsheetState;
+
+/**
+ * Tests for keeping the view state of inactive sheets, see
+ * {@link Spreadsheet#setSheetViewStateCacheSize(int)}.
+ */
+public class SheetViewStateCacheTest {
+
+    private static class PublicSpreadsheet extends Spreadsheet {
+        PublicSpreadsheet(Workbook wb) {
+            super(wb);
+        }
+
+        @Override
+        public SpreadsheetState getState() {
+            return super.getState();
+        }
+    }
+
+    private PublicSpreadsheet spreadsheet;
+    private Sheet first;
+
+    @Before
+    public void setup() {
+        Workbook workbook = new XSSFWorkbook();
+        first = workbook.createSheet("First");
+        for (int r = 0; r < 10; r++) {
+            first.createRow(r).createCell(0).setCellValue(r);
+        }
+        workbook.createSheet("Second").createRow(0).createCell(0);
+
+        spreadsheet = new PublicSpreadsheet(workbook);
+        spreadsheet.setSheetViewStateCacheSize(2);
+    }
+
+    @Test
+    public void switchAwayAndBack_changesThroughComponentAreKept() {
+        spreadsheet.setRowHidden(2, true);
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertEquals("First", spreadsheet.getActiveSheet().getSheetName());
+        assertTrue(spreadsheet.getState().hiddenRowIndexes.contains(3));
+        assertEquals(10, spreadsheet.getState().rows);
+    }
+
+    @Test
+    public void directPoiChange_cachedViewStateIsUsed() {
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        first.getRow(4).setZeroHeight(true);
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertFalse("The view state should come from the cache",
+                spreadsheet.getState().hiddenRowIndexes.contains(5));
+    }
+
+    @Test
+    public void directPoiChange_clearSheetViewState_changeIsShown() {
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        first.getRow(4).setZeroHeight(true);
+        spreadsheet.clearSheetViewState(first);
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertTrue(spreadsheet.getState().hiddenRowIndexes.contains(5));
+    }
+
+    @Test
+    public void directPoiChange_refreshCells_changeIsShown() {
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        first.getRow(4).setZeroHeight(true);
+        spreadsheet.refreshCells(first.getRow(4).getCell(0));
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertTrue(spreadsheet.getState().hiddenRowIndexes.contains(5));
+    }
+
+    @Test
+    public void directPoiChange_refreshAllCellValues_changeIsShown() {
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        first.getRow(4).setZeroHeight(true);
+        spreadsheet.refreshAllCellValues();
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertTrue(spreadsheet.getState().hiddenRowIndexes.contains(5));
+    }
+
+    @Test
+    public void protectInactiveSheet_viewStateIsDropped() {
+        spreadsheet.setActiveSheetWithPOIIndex(1);
+        ((XSSFSheet) first).lockFormatColumns(false);
+        spreadsheet.setSheetProtected(0, "secret");
+        spreadsheet.setActiveSheetWithPOIIndex(0);
+
+        assertTrue(spreadsheet.isActiveSheetProtected());
+        assertFalse(spreadsheet.getState().lockFormatColumns);
+    }
+}
@@ -0,0 +1,125 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.CellValueManager;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.client.CellData;
+
+/**
+ * Tests that loading the cells of a range larger than the populated part of
+ * the sheet, where the existing rows and cells are iterated instead of looked
+ * up by index, loads the same cells as looking up every cell.
+ */
+public class SparseCellLoadingTest {
+
+    @SuppressWarnings("serial")
+    private static class LoadingCellValueManager extends CellValueManager {
+
+        LoadingCellValueManager(Spreadsheet spreadsheet) {
+            super(spreadsheet);
+        }
+
+        Set<String> load(int firstRow, int firstColumn, int lastRow,
+                int lastColumn) {
+            Set<String> loaded = new HashSet<String>();
+            for (CellData cd : loadCellDataForRowAndColumnRange(firstRow,
+                    firstColumn, lastRow, lastColumn)) {
+                loaded.add(new CellReference(cd.row - 1, cd.col - 1)
+                        .formatAsString());
+            }
+            return loaded;
+        }
+
+        Set<String> load(String range) {
+            CellRangeAddress address = CellRangeAddress.valueOf(range);
+            return load(address.getFirstRow() + 1,
+                    address.getFirstColumn() + 1, address.getLastRow() + 1,
+                    address.getLastColumn() + 1);
+        }
+    }
+
+    private static final String[] CELLS = { "A1", "D1", "AY1", "B5", "C5",
+            "A100", "K100", "H5001" };
+
+    private static LoadingCellValueManager createManager(Workbook workbook) {
+        Sheet sheet = workbook.createSheet();
+        for (String cell : CELLS) {
+            CellReference ref = new CellReference(cell);
+            Row row = sheet.getRow(ref.getRow());
+            if (row == null) {
+                row = sheet.createRow(ref.getRow());
+            }
+            row.createCell(ref.getCol()).setCellValue(cell);
+        }
+        return new LoadingCellValueManager(new Spreadsheet(workbook));
+    }
+
+    private static Set<String> cells(String... cells) {
+        return new HashSet<String>(Arrays.asList(cells));
+    }
+
+    /**
+     * Loads the range one cell at a time, so that every cell is looked up by
+     * index.
+     */
+    private static Set<String> loadCellByCell(Workbook workbook, String range) {
+        LoadingCellValueManager manager = createManager(workbook);
+        CellRangeAddress address = CellRangeAddress.valueOf(range);
+        Set<String> loaded = new HashSet<String>();
+        for (int r = address.getFirstRow(); r <= address.getLastRow(); r++) {
+            for (int c = address.getFirstColumn(); c <= address
+                    .getLastColumn(); c++) {
+                loaded.addAll(manager.load(r + 1, c + 1, r + 1, c + 1));
+            }
+        }
+        return loaded;
+    }
+
+    private void assertSparseLoad(Workbook workbook, Workbook reference) {
+        LoadingCellValueManager manager = createManager(workbook);
+        Set<String> expected = cells("D1", "B5", "C5", "K100");
+        assertEquals(expected, loadCellByCell(reference, "B1:K100"));
+        assertEquals(expected, manager.load("B1:K100"));
+        assertEquals(cells("H5001"), manager.load("A101:Z10000"));
+        assertEquals(cells(), manager.load("A5002:Z10000"));
+    }
+
+    @Test
+    public void sparseXssfSheet_existingCellsInRangeAreLoaded() {
+        assertSparseLoad(new XSSFWorkbook(), new XSSFWorkbook());
+    }
+
+    @Test
+    public void sparseHssfSheet_existingCellsInRangeAreLoaded() {
+        assertSparseLoad(new HSSFWorkbook(), new HSSFWorkbook());
+    }
+
+    @Test
+    public void rangeBoundaries_areInclusive() {
+        LoadingCellValueManager manager = createManager(new XSSFWorkbook());
+        assertEquals(cells("A1", "D1", "AY1"), manager.load("A1:AY1"));
+        assertEquals(cells("B5", "C5", "A100", "K100"),
+                manager.load("A2:XFD100"));
+    }
+
+    @Test
+    public void columnsOutsideRows_nothingIsLoaded() {
+        LoadingCellValueManager manager = createManager(new XSSFWorkbook());
+        assertEquals(cells(), manager.load("E1:AX1"));
+        assertEquals(cells(), manager.load("AZ1:XFD5001"));
+    }
+}
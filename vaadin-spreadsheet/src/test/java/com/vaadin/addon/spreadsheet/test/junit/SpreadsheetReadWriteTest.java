@@ -1,6 +1,7 @@
 package com.vaadin.addon.spreadsheet.test.junit;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -12,6 +13,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
@@ -59,6 +61,23 @@ public class SpreadsheetReadWriteTest {
         // no exceptions, everything ok
     }
 
+    @Test
+    public void saveToFile_emptyXLSXFile_workbookIsNotReloaded()
+            throws URISyntaxException, IOException {
+        URL testSheetResource = this.getClass().getClassLoader()
+                .getResource("test_sheets/empty.xlsx");
+        File testSheetFIle = new File(testSheetResource.toURI());
+        Spreadsheet sheet = new Spreadsheet(testSheetFIle);
+        Workbook workbook = sheet.getWorkbook();
+
+        File tempFile = File.createTempFile("resultEmptyFile", "");
+        File written = sheet.write(tempFile.getAbsolutePath());
+        tempFile.delete();
+        written.delete();
+
+        assertSame(workbook, sheet.getWorkbook());
+    }
+
     @Test
     public void openAndSaveFile_emptyXLSXFile_FileDoesNotContainAdditionalDrawing()
             throws URISyntaxException, IOException {
@@ -0,0 +1,81 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+
+/**
+ * Tests for the cached locked and hidden flags of the cell styles of a
+ * protected sheet, see {@link Spreadsheet#isCellLocked(Cell)} and
+ * {@link Spreadsheet#isCellHidden(Cell)}.
+ */
+public class StyleProtectionCacheTest {
+
+    private Spreadsheet spreadsheet;
+    private CellStyle style;
+    private Cell a1;
+    private Cell b1;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        style = workbook.createCellStyle();
+        Row row = sheet.createRow(0);
+        a1 = row.createCell(0);
+        a1.setCellStyle(style);
+        b1 = row.createCell(1);
+        b1.setCellStyle(style);
+
+        spreadsheet = new Spreadsheet(workbook);
+        spreadsheet.setSheetProtected(0, "secret");
+        assertTrue(spreadsheet.isCellLocked(a1));
+        assertFalse(spreadsheet.isCellHidden(a1));
+    }
+
+    @Test
+    public void lockedFlagToggled_styleUpdated_allCellsOfStyleChange() {
+        style.setLocked(false);
+        spreadsheet.getSpreadsheetStyleFactory().cellStyleUpdated(a1, true);
+
+        assertFalse(spreadsheet.isCellLocked(a1));
+        assertFalse(spreadsheet.isCellLocked(b1));
+
+        style.setLocked(true);
+        spreadsheet.getSpreadsheetStyleFactory().cellStyleUpdated(b1, true);
+
+        assertTrue(spreadsheet.isCellLocked(a1));
+    }
+
+    @Test
+    public void lockedFlagToggled_cellsRefreshed_cellIsUnlocked() {
+        style.setLocked(false);
+        spreadsheet.refreshCells(a1);
+
+        assertFalse(spreadsheet.isCellLocked(a1));
+    }
+
+    @Test
+    public void hiddenFlagToggled_allCellValuesRefreshed_cellIsHidden() {
+        style.setHidden(true);
+        spreadsheet.refreshAllCellValues();
+
+        assertTrue(spreadsheet.isCellHidden(b1));
+    }
+
+    @Test
+    public void protectionRemoved_cellIsNotLocked() {
+        spreadsheet.setSheetProtected(0, null);
+
+        assertFalse(spreadsheet.isCellLocked(a1));
+    }
+}
@@ -0,0 +1,194 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.PopupButton;
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+import com.vaadin.addon.spreadsheet.SpreadsheetFilterTable;
+import com.vaadin.addon.spreadsheet.SpreadsheetHistoryManager;
+import com.vaadin.addon.spreadsheet.SpreadsheetTable;
+import com.vaadin.addon.spreadsheet.command.CellValueCommand;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Tests for sorting the rows of a {@link SpreadsheetTable}.
+ */
+public class TableSortTest {
+
+    private Spreadsheet spreadsheet;
+    private Sheet sheet;
+    private SpreadsheetTable table;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Key");
+        header.createCell(1).setCellValue("Marker");
+        header.createCell(2).setCellValue("Formula");
+        // the key of the third row is blank
+        Object[] keys = { 3.0, "b", null, 1.0, "a", 3.0 };
+        for (int i = 0; i < keys.length; i++) {
+            Row row = sheet.createRow(i + 1);
+            if (keys[i] instanceof Double) {
+                row.createCell(0).setCellValue((Double) keys[i]);
+            } else if (keys[i] != null) {
+                row.createCell(0).setCellValue((String) keys[i]);
+            }
+            row.createCell(1).setCellValue("r" + (i + 1));
+            row.createCell(2).setCellFormula("B" + (i + 2));
+        }
+
+        spreadsheet = new Spreadsheet(workbook);
+        spreadsheet.setSelection("A1");
+        table = new SpreadsheetTable(spreadsheet, new CellRangeAddress(0,
+                keys.length, 0, 2));
+    }
+
+    private void assertMarkers(String... markers) {
+        for (int i = 0; i < markers.length; i++) {
+            assertEquals(markers[i], sheet.getRow(i + 1).getCell(1)
+                    .getStringCellValue());
+        }
+    }
+
+    @Test
+    public void sortAscending_numbersBeforeTextBlanksLast_equalKeysKeepOrder() {
+        table.sort(0, true);
+
+        assertMarkers("r4", "r1", "r6", "r5", "r2", "r3");
+    }
+
+    @Test
+    public void sortDescending_textBeforeNumbersBlanksLast_equalKeysKeepOrder() {
+        table.sort(0, false);
+
+        assertMarkers("r2", "r5", "r1", "r6", "r4", "r3");
+    }
+
+    @Test
+    public void sort_relativeFormulaReferencesAreRebased() {
+        table.sort(0, true);
+
+        for (int r = 1; r <= 6; r++) {
+            Cell formulaCell = sheet.getRow(r).getCell(2);
+            assertEquals("B" + (r + 1), formulaCell.getCellFormula());
+            assertEquals(sheet.getRow(r).getCell(1).getStringCellValue(),
+                    spreadsheet.getCellValue(formulaCell));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sort_mergedCells_throws() {
+        sheet.addMergedRegion(new CellRangeAddress(2, 2, 1, 2));
+
+        table.sort(0, true);
+    }
+
+    @Test
+    public void sort_undoRestoresOrderAndRedoSortsAgain() {
+        SpreadsheetHistoryManager history = spreadsheet
+                .getSpreadsheetHistoryManager();
+        table.sort(0, true);
+        assertTrue(history.canUndo());
+
+        history.undo();
+        assertMarkers("r1", "r2", "r3", "r4", "r5", "r6");
+        for (int r = 1; r <= 6; r++) {
+            assertEquals("B" + (r + 1), sheet.getRow(r).getCell(2)
+                    .getCellFormula());
+        }
+        assertTrue(history.canRedo());
+
+        history.redo();
+        assertMarkers("r4", "r1", "r6", "r5", "r2", "r3");
+    }
+
+    @Test
+    public void sort_earlierCommandsAreKept() {
+        SpreadsheetHistoryManager history = spreadsheet
+                .getSpreadsheetHistoryManager();
+        CellValueCommand command = new CellValueCommand(spreadsheet);
+        command.captureCellRangeValues(CellRangeAddress.valueOf("B2"));
+        history.addCommand(command);
+        sheet.getRow(1).getCell(1).setCellValue("changed");
+
+        table.sort(0, true);
+        assertEquals("changed", sheet.getRow(2).getCell(1)
+                .getStringCellValue());
+
+        history.undo();
+        assertEquals("changed", sheet.getRow(1).getCell(1)
+                .getStringCellValue());
+        assertTrue(history.canUndo());
+
+        history.undo();
+        assertMarkers("r1", "r2", "r3", "r4", "r5", "r6");
+        assertFalse(history.canUndo());
+    }
+
+    private static Button findButton(PopupButton popupButton,
+            String styleName) {
+        for (Component component : (VerticalLayout) popupButton.getContent()) {
+            if (component instanceof Button
+                    && component.getStyleName().contains(styleName)) {
+                return (Button) component;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void filterTable_sortButtonsAreOptIn() {
+        SpreadsheetFilterTable filterTable = new SpreadsheetFilterTable(
+                spreadsheet, table.getFullTableRegion());
+        PopupButton popupButton = filterTable.getPopupButton(0);
+        assertFalse(filterTable.isSortButtonsEnabled());
+        assertNull(findButton(popupButton,
+                SpreadsheetFilterTable.SORT_ASCENDING_BUTTON_CLASSNAME));
+
+        filterTable.setSortButtonsEnabled(true);
+        assertNotNull(findButton(popupButton,
+                SpreadsheetFilterTable.SORT_ASCENDING_BUTTON_CLASSNAME));
+        assertNotNull(findButton(popupButton,
+                SpreadsheetFilterTable.SORT_DESCENDING_BUTTON_CLASSNAME));
+
+        filterTable.setSortButtonsEnabled(false);
+        assertNull(findButton(popupButton,
+                SpreadsheetFilterTable.SORT_ASCENDING_BUTTON_CLASSNAME));
+    }
+
+    @Test
+    public void sortButton_sortsAndMergedCellsDoNotThrow() {
+        new TestableUI(spreadsheet);
+        SpreadsheetFilterTable filterTable = new SpreadsheetFilterTable(
+                spreadsheet, table.getFullTableRegion());
+        filterTable.setSortButtonsEnabled(true);
+        Button descending = findButton(filterTable.getPopupButton(0),
+                SpreadsheetFilterTable.SORT_DESCENDING_BUTTON_CLASSNAME);
+
+        descending.click();
+        assertMarkers("r2", "r5", "r1", "r6", "r4", "r3");
+
+        sheet.addMergedRegion(new CellRangeAddress(2, 2, 1, 2));
+        findButton(filterTable.getPopupButton(0),
+                SpreadsheetFilterTable.SORT_ASCENDING_BUTTON_CLASSNAME)
+                .click();
+        assertMarkers("r2", "r5", "r1", "r6", "r4", "r3");
+    }
+}
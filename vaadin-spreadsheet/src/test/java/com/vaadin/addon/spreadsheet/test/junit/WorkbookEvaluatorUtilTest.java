@@ -0,0 +1,93 @@
+package com.vaadin.addon.spreadsheet.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.WorkbookEvaluatorUtil;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.addon.spreadsheet.Spreadsheet;
+
+/**
+ * Tests for evaluating parsed formulas with
+ * {@link WorkbookEvaluatorUtil#evaluate(Spreadsheet, Ptg[], Cell)}, both with
+ * the evaluation cache of the formula evaluator and with a separate cache.
+ */
+public class WorkbookEvaluatorUtilTest {
+
+    private Spreadsheet spreadsheet;
+    private Cell input;
+    private Cell target;
+    private Ptg[] formula;
+
+    @Before
+    public void setup() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        Row row = sheet.createRow(0);
+        input = row.createCell(0);
+        input.setCellValue(1);
+        row.createCell(1).setCellFormula("A1*2");
+        target = row.createCell(2);
+
+        spreadsheet = new Spreadsheet(workbook);
+        formula = FormulaParser.parse("B1+1",
+                WorkbookEvaluatorUtil.getEvaluationWorkbook(spreadsheet),
+                FormulaType.CELL, 0);
+    }
+
+    @After
+    public void tearDown() {
+        WorkbookEvaluatorUtil.setSharedEvaluationCacheEnabled(true);
+    }
+
+    private double evaluate() {
+        return ((NumberEval) WorkbookEvaluatorUtil.evaluate(spreadsheet,
+                formula, target)).getNumberValue();
+    }
+
+    @Test
+    public void sharedCache_notifiedChangeIsSeen() {
+        assertTrue(WorkbookEvaluatorUtil.isSharedEvaluationCacheEnabled());
+        assertEquals(3, evaluate(), 0);
+
+        input.setCellValue(5);
+        spreadsheet.getFormulaEvaluator().notifyUpdateCell(input);
+
+        assertEquals(11, evaluate(), 0);
+    }
+
+    @Test
+    public void sharedCache_resultIsCachedUntilNotified() {
+        assertEquals(3, evaluate(), 0);
+
+        input.setCellValue(5);
+        WorkbookEvaluatorUtil.resetEvaluationCache(spreadsheet);
+
+        assertEquals("B1 should come from the cache of the evaluator", 3,
+                evaluate(), 0);
+    }
+
+    @Test
+    public void separateCache_directChangeIsSeenAfterReset() {
+        WorkbookEvaluatorUtil.setSharedEvaluationCacheEnabled(false);
+        assertFalse(WorkbookEvaluatorUtil.isSharedEvaluationCacheEnabled());
+        assertEquals(3, evaluate(), 0);
+
+        input.setCellValue(5);
+        WorkbookEvaluatorUtil.resetEvaluationCache(spreadsheet);
+
+        assertEquals(11, evaluate(), 0);
+    }
+}